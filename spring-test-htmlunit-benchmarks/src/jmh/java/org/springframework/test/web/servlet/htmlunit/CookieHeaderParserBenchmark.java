@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import javax.servlet.http.Cookie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link CookieHeaderParser} with the StringTokenizer based parsing it
+ * replaced using a Cookie header of about 4 KB. The values do not contain "=" since
+ * the StringTokenizer based parsing cannot handle them.
+ */
+@State(Scope.Thread)
+public class CookieHeaderParserBenchmark {
+	private static final String VALUE_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_.";
+
+	private static final int HEADER_LENGTH = 4 * 1024;
+
+	private String header;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		StringBuilder result = new StringBuilder("JSESSIONID=7C2F1D9A3B8E4C6F0A5D2E9B1C7F3A8D; theme=dark");
+		int cookie = 0;
+		while (result.length() < HEADER_LENGTH) {
+			result.append("; _pref").append(cookie++).append('=');
+			int valueLength = 16 + random.nextInt(240);
+			for (int i = 0; i < valueLength; i++) {
+				result.append(VALUE_CHARS.charAt(random.nextInt(VALUE_CHARS.length())));
+			}
+		}
+		header = result.toString();
+	}
+
+	@Benchmark
+	public List<Cookie> cookieHeaderParser() {
+		return CookieHeaderParser.parse(header);
+	}
+
+	@Benchmark
+	public List<Cookie> stringTokenizer() {
+		List<Cookie> cookies = new ArrayList<Cookie>();
+		StringTokenizer tokens = new StringTokenizer(header, "=;");
+		while (tokens.hasMoreTokens()) {
+			String cookieName = tokens.nextToken().trim();
+			if (!tokens.hasMoreTokens()) {
+				throw new IllegalArgumentException("Expected value for cookie name " + cookieName
+						+ ". Full cookie was " + header);
+			}
+			String cookieValue = tokens.nextToken().trim();
+			cookies.add(new Cookie(cookieName, cookieValue));
+		}
+		return cookies;
+	}
+}
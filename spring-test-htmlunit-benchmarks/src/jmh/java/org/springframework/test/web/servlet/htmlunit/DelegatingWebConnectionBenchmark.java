@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.test.web.servlet.htmlunit.DelegatingWebConnection.DelegateWebConnection;
+import org.springframework.test.web.servlet.htmlunit.matchers.HostRequestMatcher;
+import org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher;
+
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Measures how long {@link DelegatingWebConnection} takes to route a request when
+ * it is configured with a realistic number of host and URL matchers.
+ */
+@State(Scope.Thread)
+public class DelegatingWebConnectionBenchmark {
+	@Param({ "http://localhost/messages/", "http://cdn10.example.com/app.js", "http://code.jquery.com/jquery.js",
+			"http://unmatched.example.org/" })
+	private String url;
+
+	@Param({ "false", "true" })
+	private boolean originCacheEnabled;
+
+	private DelegatingWebConnection connection;
+
+	private WebRequest webRequest;
+
+	@Setup
+	public void setup() throws Exception {
+		WebConnection delegate = new StubWebConnection();
+		List<DelegateWebConnection> delegates = new ArrayList<DelegateWebConnection>();
+		delegates.add(new DelegateWebConnection(new HostRequestMatcher("localhost"), delegate));
+		for (int i = 0; i < 20; i++) {
+			delegates.add(new DelegateWebConnection(new HostRequestMatcher("cdn" + i + ".example.com",
+					"cdn" + i + ".example.com:8080"), delegate));
+		}
+		for (int i = 0; i < 20; i++) {
+			delegates.add(new DelegateWebConnection(new UrlRegexRequestMatcher(".*?//assets" + i
+					+ "\\.example\\.com/.*"), delegate));
+		}
+		delegates.add(new DelegateWebConnection(new UrlRegexRequestMatcher(".*?//code.jquery.com/.*"), delegate));
+
+		connection = new DelegatingWebConnection(delegate, delegates);
+		connection.setOriginCacheEnabled(originCacheEnabled);
+		webRequest = new WebRequest(new URL(url));
+	}
+
+	@Benchmark
+	public WebResponse route() throws Exception {
+		return connection.getResponse(webRequest);
+	}
+
+	private static final class StubWebConnection implements WebConnection {
+		@Override
+		public WebResponse getResponse(WebRequest request) throws IOException {
+			WebResponseData data = new WebResponseData(new byte[0], 200, "OK",
+					Collections.<NameValuePair> emptyList());
+			return new WebResponse(data, request, 0L);
+		}
+	}
+}
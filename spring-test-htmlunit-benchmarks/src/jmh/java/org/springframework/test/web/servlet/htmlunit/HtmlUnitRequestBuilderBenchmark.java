@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.net.URL;
+import java.util.ArrayList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * Measures turning a typical browser {@link WebRequest} into a
+ * {@link MockHttpServletRequest}.
+ */
+@State(Scope.Thread)
+public class HtmlUnitRequestBuilderBenchmark {
+	private MockServletContext servletContext;
+
+	private MockHttpSessionStore sessions;
+
+	private CookieManager cookieManager;
+
+	private WebRequest webRequest;
+
+	@Setup
+	public void setup() throws Exception {
+		servletContext = new MockServletContext();
+		sessions = new ConcurrentMockHttpSessionStore();
+		cookieManager = new CookieManager();
+
+		webRequest = new WebRequest(new URL("http://localhost/messages/search?q=spring&page=2&size=20"));
+		webRequest.setHttpMethod(HttpMethod.GET);
+		webRequest.setRequestParameters(new ArrayList<NameValuePair>());
+		webRequest.setAdditionalHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+		webRequest.setAdditionalHeader("Accept-Language", "en-US, en;q=0.8");
+		webRequest.setAdditionalHeader("Accept-Encoding", "gzip, deflate");
+		webRequest.setAdditionalHeader("User-Agent", "Mozilla/5.0 (Windows NT 6.1) AppleWebKit/537.36 (KHTML, like Gecko)");
+		webRequest.setAdditionalHeader("Cookie", "JSESSIONID=benchmark; theme=dark; tracking=abc123");
+	}
+
+	@Benchmark
+	public MockHttpServletRequest buildRequest() {
+		HtmlUnitRequestBuilder requestBuilder = new HtmlUnitRequestBuilder(sessions, cookieManager, webRequest);
+		requestBuilder.setContextPath("");
+		return requestBuilder.buildRequest(servletContext);
+	}
+}
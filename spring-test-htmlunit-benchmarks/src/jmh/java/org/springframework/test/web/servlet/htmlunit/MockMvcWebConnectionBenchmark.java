@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.net.URL;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * Measures the full MockMvc round trip, both directly through
+ * {@link MockMvcWebConnection#getResponse(WebRequest)} and through
+ * {@link WebClient#getPage(String)}.
+ */
+@State(Scope.Thread)
+public class MockMvcWebConnectionBenchmark {
+	private MockMvcWebConnection connection;
+
+	private WebClient webClient;
+
+	private WebRequest webRequest;
+
+	@Setup
+	public void setup() throws Exception {
+		MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new MessageController()).build();
+		connection = new MockMvcWebConnection(mockMvc);
+
+		webClient = new WebClient();
+		webClient.getOptions().setJavaScriptEnabled(false);
+		webClient.getOptions().setCssEnabled(false);
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc));
+
+		webRequest = new WebRequest(new URL("http://localhost/messages/?page=1"));
+	}
+
+	@TearDown
+	public void tearDown() {
+		webClient.closeAllWindows();
+	}
+
+	@Benchmark
+	public WebResponse getResponse() throws Exception {
+		return connection.getResponse(webRequest);
+	}
+
+	@Benchmark
+	public Page getPage() throws Exception {
+		return webClient.getPage("http://localhost/messages/?page=1");
+	}
+
+	@Controller
+	static class MessageController {
+		private static final String PAGE = "<html><head><title>Messages</title></head><body>"
+				+ "<table><tr><td>1</td><td>Hello</td></tr><tr><td>2</td><td>World</td></tr></table>"
+				+ "<form action='/messages/' method='post'><input name='summary'/></form></body></html>";
+
+		@RequestMapping(value = "/messages/", produces = "text/html")
+		@ResponseBody
+		public String list(HttpServletRequest request) {
+			request.getSession();
+			return PAGE;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * Measures turning a {@link MockHttpServletResponse} into a {@link WebResponse} for
+ * different body sizes, keeping the body in memory or writing it to a temporary file.
+ */
+@State(Scope.Thread)
+public class MockWebResponseBuilderBenchmark {
+	@Param({ "1024", "65536", "1048576" })
+	private int contentLength;
+
+	@Param({ "0", "524288" })
+	private int maxInMemory;
+
+	private WebRequest webRequest;
+
+	private MockHttpServletResponse response;
+
+	@Setup
+	public void setup() throws Exception {
+		webRequest = new WebRequest(new URL("http://localhost/messages/"));
+
+		byte[] content = new byte[contentLength];
+		Arrays.fill(content, (byte) 'a');
+
+		response = new MockHttpServletResponse();
+		response.setContentType("text/html;charset=UTF-8");
+		response.addHeader("Cache-Control", "no-cache");
+		response.addHeader("X-Frame-Options", "DENY");
+		response.getOutputStream().write(content);
+	}
+
+	@Benchmark
+	public WebResponse build() throws Exception {
+		MockWebResponseBuilder responseBuilder = new MockWebResponseBuilder(System.currentTimeMillis(), webRequest, response);
+		responseBuilder.setMaxInMemory(maxInMemory);
+		WebResponse webResponse = responseBuilder.build();
+		webResponse.cleanUp();
+		return webResponse;
+	}
+}
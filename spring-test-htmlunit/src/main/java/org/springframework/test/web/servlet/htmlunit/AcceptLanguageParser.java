@@ -0,0 +1,212 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Parses the value of an Accept-Language request header into {@link Locale} instances
+ * ordered by their quality value. Entries with the same quality value keep the order
+ * of the header.
+ * </p>
+ * <p>
+ * Each language range is decomposed into a language of two or three letters, an
+ * optional script that is ignored since {@link Locale} cannot hold it on Java 6, and an
+ * optional region. Further subtags are ignored. When a quality value is specified, it is
+ * used as the variant of the {@link Locale}. The wildcard "*", entries with a quality
+ * value of 0, and entries that are not valid language ranges are skipped.
+ * </p>
+ * <p>
+ * Since the same few header values are sent for every request, the results are cached.
+ * The cache is bounded, so values that are not cached are parsed every time.
+ * </p>
+ */
+final class AcceptLanguageParser {
+	private static final int MAX_CACHED_HEADERS = 256;
+
+	private static final ConcurrentMap<String, List<Locale>> cache = new ConcurrentHashMap<String, List<Locale>>();
+
+	private static final Comparator<Entry> QUALITY_COMPARATOR = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			return Double.compare(e2.quality, e1.quality);
+		}
+	};
+
+	/**
+	 * Parses the value of an Accept-Language header.
+	 *
+	 * @param header the value of the Accept-Language header. Cannot be null.
+	 * @return an unmodifiable List of the locales with the most preferred first. The
+	 * List is empty if the header has no usable entries.
+	 */
+	static List<Locale> parse(String header) {
+		List<Locale> result = cache.get(header);
+		if (result == null) {
+			result = parseLocales(header);
+			if (cache.size() < MAX_CACHED_HEADERS) {
+				cache.putIfAbsent(header, result);
+			}
+		}
+		return result;
+	}
+
+	private static List<Locale> parseLocales(String header) {
+		List<Entry> entries = new ArrayList<Entry>();
+		int length = header.length();
+		int start = 0;
+		while (start < length) {
+			int end = header.indexOf(',', start);
+			if (end == -1) {
+				end = length;
+			}
+			Entry entry = parseEntry(header, start, end);
+			if (entry != null) {
+				entries.add(entry);
+			}
+			start = end + 1;
+		}
+		// Collections.sort is stable, so entries of the same quality keep their order
+		Collections.sort(entries, QUALITY_COMPARATOR);
+		List<Locale> locales = new ArrayList<Locale>(entries.size());
+		for (Entry entry : entries) {
+			locales.add(entry.locale);
+		}
+		return Collections.unmodifiableList(locales);
+	}
+
+	/**
+	 * Parses a single entry of the header such as "en-US;q=0.8".
+	 *
+	 * @return the parsed entry or null if the entry should be skipped
+	 */
+	private static Entry parseEntry(String header, int start, int end) {
+		int rangeEnd = header.indexOf(';', start);
+		if (rangeEnd == -1 || rangeEnd > end) {
+			rangeEnd = end;
+		}
+		start = skipWhitespace(header, start, rangeEnd);
+		int rangeLimit = trimEnd(header, start, rangeEnd);
+
+		String qualifier = "";
+		double quality = 1;
+		int param = rangeEnd;
+		while (param < end) {
+			int paramStart = skipWhitespace(header, param + 1, end);
+			int paramEnd = header.indexOf(';', paramStart);
+			if (paramEnd == -1 || paramEnd > end) {
+				paramEnd = end;
+			}
+			if (paramEnd - paramStart > 2 && (header.charAt(paramStart) == 'q' || header.charAt(paramStart) == 'Q')
+					&& header.charAt(paramStart + 1) == '=') {
+				qualifier = header.substring(paramStart + 2, trimEnd(header, paramStart + 2, paramEnd));
+				try {
+					quality = Double.parseDouble(qualifier);
+				}
+				catch (NumberFormatException e) {
+					return null;
+				}
+			}
+			param = paramEnd;
+		}
+		if (quality <= 0) {
+			return null;
+		}
+
+		int languageEnd = subtagEnd(header, start, rangeLimit);
+		int languageLength = languageEnd - start;
+		if ((languageLength != 2 && languageLength != 3) || !isAlpha(header, start, languageEnd)) {
+			return null;
+		}
+		String language = header.substring(start, languageEnd);
+		String country = "";
+		int subtagStart = languageEnd + 1;
+		while (subtagStart < rangeLimit) {
+			int subtagEnd = subtagEnd(header, subtagStart, rangeLimit);
+			int subtagLength = subtagEnd - subtagStart;
+			if (subtagLength == 4 && isAlpha(header, subtagStart, subtagEnd)) {
+				// a script such as Hant which Locale cannot hold
+				subtagStart = subtagEnd + 1;
+				continue;
+			}
+			if ((subtagLength == 2 && isAlpha(header, subtagStart, subtagEnd))
+					|| (subtagLength == 3 && isDigit(header, subtagStart, subtagEnd))) {
+				country = header.substring(subtagStart, subtagEnd);
+			}
+			break;
+		}
+		return new Entry(new Locale(language, country, qualifier), quality);
+	}
+
+	private static int subtagEnd(String header, int start, int end) {
+		int result = header.indexOf('-', start);
+		return result == -1 || result > end ? end : result;
+	}
+
+	private static boolean isAlpha(String header, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = header.charAt(i);
+			if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigit(String header, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = header.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(String header, int index, int end) {
+		while (index < end && Character.isWhitespace(header.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private static int trimEnd(String header, int start, int end) {
+		while (end > start && Character.isWhitespace(header.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	private static final class Entry {
+		private final Locale locale;
+
+		private final double quality;
+
+		private Entry(Locale locale, double quality) {
+			this.locale = locale;
+			this.quality = quality;
+		}
+	}
+
+	private AcceptLanguageParser() {
+	}
+}
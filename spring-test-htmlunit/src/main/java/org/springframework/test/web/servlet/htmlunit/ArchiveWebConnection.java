@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+
+/**
+ * <p>
+ * A {@link WebConnection} that records the responses of a delegate {@link WebConnection}
+ * to a {@link WebResponseArchive}, or replays them from it. It is intended for the
+ * requests that are not processed by {@link org.springframework.test.web.servlet.MockMvc},
+ * such as requests for resources of a CDN, so that the tests do not depend on the network.
+ * </p>
+ * <p>
+ * If the archive is recording, each request is passed to the delegate and its response is
+ * appended to the archive. If the archive is replaying, the delegate is never used and a
+ * request that was not recorded fails with an {@link IOException}, rather than silently
+ * going to the network.
+ * </p>
+ *
+ * @see MockMvcWebConnectionBuilderSupport#archiveResponses(WebResponseArchive)
+ */
+public final class ArchiveWebConnection implements WebConnection {
+	private final WebConnection delegate;
+
+	private final WebResponseArchive archive;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param delegate the {@link WebConnection} to record the responses of. Cannot be null.
+	 * @param archive the {@link WebResponseArchive} to record to or replay from. Cannot be
+	 * null.
+	 */
+	public ArchiveWebConnection(WebConnection delegate, WebResponseArchive archive) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.notNull(archive, "archive cannot be null");
+		this.delegate = delegate;
+		this.archive = archive;
+	}
+
+	@Override
+	public WebResponse getResponse(WebRequest request) throws IOException {
+		if (archive.isRecording()) {
+			WebResponse response = delegate.getResponse(request);
+			archive.record(request, response);
+			return response;
+		}
+		long startTime = System.currentTimeMillis();
+		WebResponseData data = archive.replay(request);
+		if (data == null) {
+			throw new IOException("No response recorded for " + request.getHttpMethod() + " " + request.getUrl()
+					+ " in " + archive.getFile());
+		}
+		return new WebResponse(data, request, System.currentTimeMillis() - startTime);
+	}
+}
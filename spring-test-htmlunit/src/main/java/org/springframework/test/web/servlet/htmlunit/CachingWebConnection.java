@@ -0,0 +1,350 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.htmlunit.matchers.WebRequestMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.StringUtils;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * <p>
+ * A {@link WebConnection} that caches the responses of another {@link WebConnection} in
+ * memory. This avoids processing a request with
+ * {@link org.springframework.test.web.servlet.MockMvc} when the same shared fragment or JSON
+ * endpoint is requested repeatedly.
+ * </p>
+ * <p>
+ * Only GET requests that match one of the specified {@link WebRequestMatcher} instances are
+ * cached. A response is only stored if it has a 200 status, no Vary header, and is fresh
+ * according to the max-age of its Cache-Control header or its Expires header. Responses
+ * with a Cache-Control of no-store or no-cache are not stored. A request with a
+ * Cache-Control or Pragma of no-cache bypasses the cache.
+ * </p>
+ * <p>
+ * While a response is fresh, a request with an If-None-Match header that matches its ETag,
+ * or an If-Modified-Since header that is not before its Last-Modified header, is answered
+ * with a 304 (Not Modified) without invoking the delegate.
+ * </p>
+ * <p>
+ * The least recently used responses are evicted once more than the maximum number of
+ * entries are cached.
+ * </p>
+ *
+ * @see MockMvcWebConnectionBuilderSupport#cacheResponses(int, WebRequestMatcher...)
+ */
+public final class CachingWebConnection implements WebConnection {
+	private final WebConnection delegate;
+
+	private final List<WebRequestMatcher> matchers;
+
+	private final Map<String, CachedResponse> cache;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param delegate the {@link WebConnection} whose responses are cached. Cannot be null.
+	 * @param maxEntries the maximum number of responses to cache. Must be positive.
+	 * @param matchers the {@link WebRequestMatcher} instances that select the requests
+	 * that are cached. Cannot be empty.
+	 */
+	public CachingWebConnection(WebConnection delegate, int maxEntries, WebRequestMatcher... matchers) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		Assert.notEmpty(matchers, "matchers cannot be empty");
+		this.delegate = delegate;
+		this.matchers = Arrays.asList(matchers);
+		this.cache = new LruCache(maxEntries);
+	}
+
+	/**
+	 * The number of requests that were answered from the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of cacheable requests that were passed to the delegate.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * The number of responses that are currently cached, including those that are no
+	 * longer fresh.
+	 *
+	 * @return the number of cached responses
+	 */
+	public int getSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Removes all the cached responses.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	@Override
+	public WebResponse getResponse(WebRequest request) throws IOException {
+		if (request.getHttpMethod() != HttpMethod.GET || !matches(request)) {
+			return delegate.getResponse(request);
+		}
+		String key = request.getUrl().toExternalForm();
+		long now = System.currentTimeMillis();
+		if (!isNoCache(request)) {
+			CachedResponse cached;
+			synchronized (cache) {
+				cached = cache.get(key);
+			}
+			if (cached != null && cached.expires > now) {
+				hitCount.incrementAndGet();
+				if (isNotModified(request, cached)) {
+					return new WebResponse(cached.notModified(), request, 0L);
+				}
+				return new WebResponse(cached.data, request, 0L);
+			}
+		}
+		missCount.incrementAndGet();
+		WebResponse response = delegate.getResponse(request);
+		CachedResponse cached = cachedResponse(response, now);
+		synchronized (cache) {
+			if (cached == null) {
+				cache.remove(key);
+			}
+			else {
+				cache.put(key, cached);
+			}
+		}
+		return response;
+	}
+
+	private boolean matches(WebRequest request) {
+		for (WebRequestMatcher matcher : matchers) {
+			if (matcher.matches(request)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNoCache(WebRequest request) {
+		String cacheControl = requestHeader(request, "Cache-Control");
+		if (cacheControl != null && cacheControl.toLowerCase(Locale.ENGLISH).contains("no-cache")) {
+			return true;
+		}
+		String pragma = requestHeader(request, "Pragma");
+		return pragma != null && pragma.toLowerCase(Locale.ENGLISH).contains("no-cache");
+	}
+
+	private static boolean isNotModified(WebRequest request, CachedResponse cached) {
+		String ifNoneMatch = requestHeader(request, "If-None-Match");
+		if (ifNoneMatch != null) {
+			if (cached.etag == null) {
+				return false;
+			}
+			for (String etag : StringUtils.commaDelimitedListToStringArray(ifNoneMatch)) {
+				etag = etag.trim();
+				if ("*".equals(etag) || etag.equals(cached.etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		String ifModifiedSince = requestHeader(request, "If-Modified-Since");
+		if (ifModifiedSince == null || cached.lastModified == -1) {
+			return false;
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.IF_MODIFIED_SINCE, ifModifiedSince);
+		try {
+			long since = headers.getIfModifiedSince();
+			return since != -1 && cached.lastModified <= since;
+		}
+		catch (IllegalArgumentException invalid) {
+			return false;
+		}
+	}
+
+	private static String requestHeader(WebRequest request, String name) {
+		for (Map.Entry<String, String> header : request.getAdditionalHeaders().entrySet()) {
+			if (name.equalsIgnoreCase(header.getKey())) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the {@link CachedResponse} for a {@link WebResponse}.
+	 *
+	 * @param response the {@link WebResponse} to cache
+	 * @param now the time the request was made
+	 * @return the {@link CachedResponse} or null if the {@link WebResponse} cannot be cached
+	 * @throws IOException if the content cannot be read
+	 */
+	private static CachedResponse cachedResponse(WebResponse response, long now) throws IOException {
+		if (response == null || response.getStatusCode() != 200 || response.getResponseHeaderValue("Vary") != null) {
+			return null;
+		}
+		long expires = expires(response, now);
+		if (expires <= now) {
+			return null;
+		}
+		byte[] content = FileCopyUtils.copyToByteArray(response.getContentAsStream());
+		List<NameValuePair> headers = new ArrayList<NameValuePair>(response.getResponseHeaders());
+		WebResponseData data = new WebResponseData(content, response.getStatusCode(), response.getStatusMessage(),
+				headers);
+		return new CachedResponse(data, expires, response.getResponseHeaderValue("ETag"), lastModified(response));
+	}
+
+	/**
+	 * Determines when the resource of a {@link WebResponse} was last modified.
+	 *
+	 * @param response the {@link WebResponse}
+	 * @return the time the resource was last modified or -1 if it is not known
+	 */
+	private static long lastModified(WebResponse response) {
+		String lastModified = response.getResponseHeaderValue("Last-Modified");
+		if (lastModified == null) {
+			return -1;
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.LAST_MODIFIED, lastModified);
+		try {
+			return headers.getLastModified();
+		}
+		catch (IllegalArgumentException invalid) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Determines when a {@link WebResponse} is no longer fresh.
+	 *
+	 * @param response the {@link WebResponse}
+	 * @param now the time the request was made
+	 * @return the time the {@link WebResponse} is no longer fresh, which is not after now
+	 * if it must not be cached
+	 */
+	private static long expires(WebResponse response, long now) {
+		String cacheControl = response.getResponseHeaderValue("Cache-Control");
+		if (cacheControl != null) {
+			for (String directive : StringUtils.commaDelimitedListToStringArray(cacheControl)) {
+				directive = directive.trim().toLowerCase(Locale.ENGLISH);
+				if ("no-store".equals(directive) || "no-cache".equals(directive)) {
+					return now;
+				}
+			}
+			for (String directive : StringUtils.commaDelimitedListToStringArray(cacheControl)) {
+				directive = directive.trim().toLowerCase(Locale.ENGLISH);
+				if (directive.startsWith("max-age=")) {
+					try {
+						return now + Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000L;
+					}
+					catch (NumberFormatException invalid) {
+						return now;
+					}
+				}
+			}
+		}
+		String expires = response.getResponseHeaderValue("Expires");
+		if (expires != null) {
+			HttpHeaders headers = new HttpHeaders();
+			headers.set(HttpHeaders.EXPIRES, expires);
+			// an invalid date, such as "0", is -1 and means already expired
+			long date = headers.getExpires();
+			return date == -1 ? now : date;
+		}
+		return now;
+	}
+
+	private static final class CachedResponse {
+		private final WebResponseData data;
+
+		private final long expires;
+
+		private final String etag;
+
+		private final long lastModified;
+
+		private CachedResponse(WebResponseData data, long expires, String etag, long lastModified) {
+			this.data = data;
+			this.expires = expires;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		private WebResponseData notModified() {
+			List<NameValuePair> headers = new ArrayList<NameValuePair>();
+			for (NameValuePair header : data.getResponseHeaders()) {
+				String name = header.getName();
+				if ("ETag".equalsIgnoreCase(name) || "Last-Modified".equalsIgnoreCase(name)
+						|| "Cache-Control".equalsIgnoreCase(name) || "Expires".equalsIgnoreCase(name)) {
+					headers.add(header);
+				}
+			}
+			return new WebResponseData(new byte[0], 304, "Not Modified", headers);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class LruCache extends LinkedHashMap<String, CachedResponse> {
+		private final int maxEntries;
+
+		private LruCache(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+			return size() > maxEntries;
+		}
+	}
+}
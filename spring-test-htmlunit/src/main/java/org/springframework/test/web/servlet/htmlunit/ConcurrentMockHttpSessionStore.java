@@ -0,0 +1,284 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.util.Assert;
+
+/**
+ * <p>
+ * The default {@link MockHttpSessionStore} which is backed by a {@link ConcurrentHashMap}.
+ * Lookups do not lock and creating a session only contends with requests that try to
+ * create a session with the same id.
+ * </p>
+ * <p>
+ * The store keeps counters that make contention measurable. For example, a high
+ * {@link #getCreateConflictCount()} means many threads raced to create the same session.
+ * </p>
+ * <p>
+ * By default sessions are only removed when they are invalidated. To bound the memory
+ * used by long running tests, sessions can also be evicted once they have not been
+ * accessed for {@link #setMaxInactiveInterval(int)} seconds, and the least recently
+ * accessed sessions are evicted in batches when more than {@link #setMaxSessions(int)}
+ * sessions are stored. Evicted sessions are invalidated.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class ConcurrentMockHttpSessionStore implements MockHttpSessionStore {
+	private final ConcurrentMap<String, MockHttpSession> sessions;
+
+	private final AtomicLong createCount = new AtomicLong();
+
+	private final AtomicLong createConflictCount = new AtomicLong();
+
+	private final AtomicLong removeCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private volatile int maxInactiveInterval = -1;
+
+	private volatile int maxSessions = -1;
+
+	private volatile MockHttpSessionEvictionListener evictionListener;
+
+	private final Object evictionMonitor = new Object();
+
+	/**
+	 * Creates a new instance with the default concurrency level.
+	 */
+	public ConcurrentMockHttpSessionStore() {
+		this.sessions = new ConcurrentHashMap<String, MockHttpSession>();
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param concurrencyLevel the estimated number of threads that concurrently create or
+	 * remove sessions. Must be greater than 0.
+	 */
+	public ConcurrentMockHttpSessionStore(int concurrencyLevel) {
+		Assert.isTrue(concurrencyLevel > 0, "concurrencyLevel must be greater than 0");
+		this.sessions = new ConcurrentHashMap<String, MockHttpSession>(16, 0.75f, concurrencyLevel);
+	}
+
+	@Override
+	public MockHttpSession getSession(String sessionId) {
+		MockHttpSession session = sessions.get(sessionId);
+		if (session != null && isExpired(session, System.currentTimeMillis())) {
+			evict(session);
+			return null;
+		}
+		return session;
+	}
+
+	@Override
+	public MockHttpSession putSessionIfAbsent(MockHttpSession session) {
+		Assert.notNull(session, "session cannot be null");
+		MockHttpSession existing = sessions.putIfAbsent(session.getId(), session);
+		if (existing == null) {
+			createCount.incrementAndGet();
+			evictExpiredSessions();
+			evictLeastRecentlyAccessedSessions(session);
+		}
+		else {
+			createConflictCount.incrementAndGet();
+		}
+		return existing;
+	}
+
+	@Override
+	public boolean removeSession(MockHttpSession session) {
+		Assert.notNull(session, "session cannot be null");
+		boolean removed = sessions.remove(session.getId(), session);
+		if (removed) {
+			removeCount.incrementAndGet();
+		}
+		return removed;
+	}
+
+	@Override
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Sets the number of seconds a session may go without being accessed before it is
+	 * evicted. The default is -1 which means sessions are never evicted for being idle.
+	 *
+	 * @param maxInactiveInterval the number of seconds. A value of 0 or less disables
+	 * idle eviction.
+	 */
+	public void setMaxInactiveInterval(int maxInactiveInterval) {
+		this.maxInactiveInterval = maxInactiveInterval;
+	}
+
+	/**
+	 * Sets the maximum number of sessions to store. When a session is added to a full
+	 * store, the sessions that were accessed least recently are evicted until 10% of the
+	 * maximum is free again, so that the sessions only have to be scanned once every
+	 * maxSessions / 10 additions. The default is -1 which means the number of sessions
+	 * is not limited.
+	 *
+	 * @param maxSessions the maximum number of sessions. A value of 0 or less means the
+	 * number of sessions is not limited.
+	 */
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+
+	/**
+	 * Sets the {@link MockHttpSessionEvictionListener} to notify when a session is
+	 * evicted.
+	 *
+	 * @param evictionListener the listener to notify. May be null.
+	 */
+	public void setEvictionListener(MockHttpSessionEvictionListener evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	/**
+	 * Evicts every session that has not been accessed within its max inactive interval.
+	 * This is performed automatically whenever a session is added, but may be invoked
+	 * explicitly to release memory sooner.
+	 */
+	public void evictExpiredSessions() {
+		if (maxInactiveInterval <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (MockHttpSession session : sessions.values()) {
+			if (isExpired(session, now)) {
+				evict(session);
+			}
+		}
+	}
+
+	/**
+	 * The number of sessions that have been added to this store.
+	 *
+	 * @return the number of sessions that have been added to this store
+	 */
+	public long getCreateCount() {
+		return createCount.get();
+	}
+
+	/**
+	 * The number of times a session could not be added because another thread added a
+	 * session with the same id first.
+	 *
+	 * @return the number of times creating a session lost a race with another thread
+	 */
+	public long getCreateConflictCount() {
+		return createConflictCount.get();
+	}
+
+	/**
+	 * The number of sessions that have been removed from this store.
+	 *
+	 * @return the number of sessions that have been removed from this store
+	 */
+	public long getRemoveCount() {
+		return removeCount.get();
+	}
+
+	/**
+	 * The number of sessions that have been evicted from this store. Evicted sessions
+	 * are also included in {@link #getRemoveCount()}.
+	 *
+	 * @return the number of sessions that have been evicted from this store
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	private void evictLeastRecentlyAccessedSessions(MockHttpSession added) {
+		int max = maxSessions;
+		if (max <= 0 || sessions.size() <= max) {
+			return;
+		}
+		synchronized (evictionMonitor) {
+			// another thread may have evicted a batch while this one was waiting
+			if (sessions.size() <= max) {
+				return;
+			}
+			int excess = sessions.size() - (max - max / 10);
+			List<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>(sessions.size());
+			for (MockHttpSession session : sessions.values()) {
+				if (session != added) {
+					candidates.add(new EvictionCandidate(session));
+				}
+			}
+			Collections.sort(candidates);
+			for (int i = 0; i < excess && i < candidates.size(); i++) {
+				evict(candidates.get(i).session);
+			}
+		}
+	}
+
+	private boolean isExpired(MockHttpSession session, long now) {
+		if (session.isInvalid()) {
+			return true;
+		}
+		int interval = maxInactiveInterval;
+		return interval > 0 && now - session.getLastAccessedTime() > interval * 1000L;
+	}
+
+	private void evict(MockHttpSession session) {
+		if (!removeSession(session)) {
+			return;
+		}
+		evictionCount.incrementAndGet();
+		if (session.isInvalid()) {
+			return;
+		}
+		MockHttpSessionEvictionListener listener = evictionListener;
+		if (listener != null) {
+			listener.sessionEvicted(session);
+		}
+		try {
+			session.invalidate();
+		}
+		catch (IllegalStateException alreadyInvalidated) {
+		}
+	}
+
+	/**
+	 * A session with the time it was last accessed when the candidates were collected, so
+	 * that concurrent access does not change the order while sorting.
+	 */
+	private static final class EvictionCandidate implements Comparable<EvictionCandidate> {
+		private final MockHttpSession session;
+
+		private final long accessedTime;
+
+		private EvictionCandidate(MockHttpSession session) {
+			this.session = session;
+			this.accessedTime = session.isInvalid() ? Long.MIN_VALUE : session.getLastAccessedTime();
+		}
+
+		public int compareTo(EvictionCandidate other) {
+			return accessedTime < other.accessedTime ? -1 : (accessedTime == other.accessedTime ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * <p>
+ * Parses the value of a Cookie request header as described in
+ * <a href="http://tools.ietf.org/html/rfc6265#section-4.2.1">RFC 6265</a>. The header
+ * is scanned once using index ranges, so the only Strings that are created are the
+ * names and values of the cookies.
+ * </p>
+ * <p>
+ * The parser is lenient in the same way browsers are. The value extends to the next
+ * ";" and so may contain "=", which is common for Base64 encoded values. A value that
+ * is enclosed in double quotes is unquoted, while a quote without its counterpart is
+ * kept as part of the value. Empty pairs and pairs with an empty name are ignored.
+ * </p>
+ */
+final class CookieHeaderParser {
+
+	/**
+	 * Parses the value of a Cookie request header.
+	 *
+	 * @param header the value of the Cookie header. Cannot be null.
+	 * @return the cookies in the order they appear in the header
+	 * @throws IllegalArgumentException if a cookie does not have a value
+	 */
+	static List<Cookie> parse(String header) {
+		List<Cookie> cookies = new ArrayList<Cookie>();
+		int length = header.length();
+		int index = 0;
+		while (index < length) {
+			int nameStart = skipWhitespace(header, index, length);
+			int separator = nameStart;
+			while (separator < length && header.charAt(separator) != '=' && header.charAt(separator) != ';') {
+				separator++;
+			}
+			int nameEnd = trimEnd(header, nameStart, separator);
+			if (separator == length || header.charAt(separator) == ';') {
+				if (nameEnd > nameStart) {
+					throw new IllegalArgumentException("Expected value for cookie name "
+							+ header.substring(nameStart, nameEnd) + ". Full cookie was " + header);
+				}
+				index = separator + 1;
+				continue;
+			}
+			String name = header.substring(nameStart, nameEnd);
+
+			int valueStart = skipWhitespace(header, separator + 1, length);
+			index = header.indexOf(';', valueStart);
+			int valueEnd = trimEnd(header, valueStart, index == -1 ? length : index);
+			if (valueEnd - valueStart >= 2 && header.charAt(valueStart) == '"' && header.charAt(valueEnd - 1) == '"') {
+				valueStart++;
+				valueEnd--;
+			}
+			index = index == -1 ? length : index + 1;
+
+			if (name.length() != 0) {
+				cookies.add(new Cookie(name, header.substring(valueStart, valueEnd)));
+			}
+		}
+		return cookies;
+	}
+
+	private static int skipWhitespace(String header, int index, int end) {
+		while (index < end && isWhitespace(header.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private static int trimEnd(String header, int start, int end) {
+		while (end > start && isWhitespace(header.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private CookieHeaderParser() {
+	}
+}
@@ -18,12 +18,25 @@ package org.springframework.test.web.servlet.htmlunit;
 import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import org.springframework.test.web.servlet.htmlunit.matchers.HostRequestMatcher;
+import org.springframework.test.web.servlet.htmlunit.matchers.OriginRequestMatcher;
+import org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher;
 import org.springframework.test.web.servlet.htmlunit.matchers.WebRequestMatcher;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * <p>
@@ -44,31 +57,278 @@ import java.util.List;
  * WebClient webClient = new WebClient();
  * webClient.setWebConnection(webConnection);
  * </pre>
+ * <p>
+ * The first DelegateWebConnection whose WebRequestMatcher matches is used. To keep routing cheap with many
+ * delegates, the matchers are compiled when the instance is created. The hosts of every {@link HostRequestMatcher}
+ * are placed in a hash lookup, the URL is formatted at most once for all {@link UrlRegexRequestMatcher} instances,
+ * and any other WebRequestMatcher is invoked as is.
+ * </p>
+ * <p>
+ * When many requests go to the same few origins, the routing decisions can also be cached per origin by using
+ * {@link #setOriginCacheEnabled(boolean)}.
+ * </p>
  * @author Rob Winch
  */
 public final class DelegatingWebConnection implements WebConnection {
+	private static final int NO_ROUTE = Integer.MAX_VALUE;
+
+	private static final int MAX_CACHED_ORIGINS = 1024;
+
 	private final List<DelegateWebConnection> connections;
 	private final WebConnection defaultConnection;
 
+	/**
+	 * Maps a host or host:port to the index of the first DelegateWebConnection with a
+	 * HostRequestMatcher that contains it.
+	 */
+	private final Map<String, Integer> hostRoutes = new HashMap<String, Integer>();
+
+	/**
+	 * The hosts that appear with a port in {@link #hostRoutes}. Only these hosts require
+	 * a host:port lookup.
+	 */
+	private final Set<String> hostsWithPort = new HashSet<String>();
+
+	/**
+	 * The DelegateWebConnection instances that are not routed by host, in order.
+	 */
+	private final Route[] routes;
+
+	/**
+	 * The number of leading DelegateWebConnection instances with an OriginRequestMatcher.
+	 * A routing decision can only be cached if it was made by these matchers alone.
+	 */
+	private final int originRouteCount;
+
+	private final ConcurrentMap<String, Integer> originRoutes = new ConcurrentHashMap<String, Integer>();
+
+	private final AtomicLong originCacheHitCount = new AtomicLong();
+
+	private final AtomicLong originCacheMissCount = new AtomicLong();
+
+	private volatile boolean originCacheEnabled;
+
+	private volatile WebConnectionMetrics metrics = NoOpWebConnectionMetrics.INSTANCE;
+
 	public DelegatingWebConnection(WebConnection defaultConnection, List<DelegateWebConnection> connections) {
 		Assert.notNull(defaultConnection, "defaultConnection cannot be null");
 		Assert.notEmpty(connections, "connections cannot be empty");
 		this.connections = connections;
 		this.defaultConnection = defaultConnection;
+		this.routes = compile(connections);
+		this.originRouteCount = originRouteCount(connections);
 	}
 
 	public DelegatingWebConnection(WebConnection defaultConnection,DelegateWebConnection... connections) {
 		this(defaultConnection, Arrays.asList(connections));
 	}
 
+	/**
+	 * <p>
+	 * Enables caching the routing decision per origin (the scheme, host and port of the
+	 * URL). The default is false.
+	 * </p>
+	 * <p>
+	 * Only a decision made entirely by
+	 * {@link org.springframework.test.web.servlet.htmlunit.matchers.OriginRequestMatcher}
+	 * instances is cached. That is, the chosen DelegateWebConnection and every one before
+	 * it must use an OriginRequestMatcher. The default connection is only cached if every
+	 * DelegateWebConnection uses an OriginRequestMatcher.
+	 * </p>
+	 *
+	 * @param originCacheEnabled true if routing decisions should be cached per origin
+	 */
+	public void setOriginCacheEnabled(boolean originCacheEnabled) {
+		this.originCacheEnabled = originCacheEnabled;
+		if(!originCacheEnabled) {
+			originRoutes.clear();
+		}
+	}
+
+	/**
+	 * The number of requests that were routed using a cached routing decision.
+	 *
+	 * @return the number of origin cache hits
+	 */
+	public long getOriginCacheHitCount() {
+		return originCacheHitCount.get();
+	}
+
+	/**
+	 * The number of requests that had no cached routing decision while the origin cache
+	 * was enabled.
+	 *
+	 * @return the number of origin cache misses
+	 */
+	public long getOriginCacheMissCount() {
+		return originCacheMissCount.get();
+	}
+
+	/**
+	 * Sets the {@link WebConnectionMetrics} that receives the routing measurements of
+	 * this connection. The default ignores all measurements.
+	 *
+	 * @param metrics the {@link WebConnectionMetrics} to use. Cannot be null.
+	 */
+	public void setMetrics(WebConnectionMetrics metrics) {
+		Assert.notNull(metrics, "metrics cannot be null");
+		this.metrics = metrics;
+	}
+
 	@Override
 	public WebResponse getResponse(WebRequest request) throws IOException {
-		for(DelegateWebConnection connection : connections) {
-			if(connection.getMatcher().matches(request)) {
-				return connection.getDelegate().getResponse(request);
+		int route = route(request);
+		WebConnection connection = getConnection(route);
+		WebConnectionMetrics metrics = this.metrics;
+		if(metrics == NoOpWebConnectionMetrics.INSTANCE) {
+			return connection.getResponse(request);
+		}
+		long start = System.nanoTime();
+		WebResponse response = connection.getResponse(request);
+		metrics.requestRouted(request, route == NO_ROUTE ? WebConnectionMetrics.DEFAULT_ROUTE : route,
+				System.nanoTime() - start);
+		return response;
+	}
+
+	/**
+	 * Finds the route of the request using the origin cache if it is enabled.
+	 *
+	 * @param request the WebRequest to route
+	 * @return the index of the DelegateWebConnection or {@link #NO_ROUTE}
+	 */
+	private int route(WebRequest request) {
+		if(!originCacheEnabled || originRouteCount == 0) {
+			return getRoute(request);
+		}
+		String origin = origin(request.getUrl());
+		Integer cachedRoute = originRoutes.get(origin);
+		if(cachedRoute != null) {
+			originCacheHitCount.incrementAndGet();
+			return cachedRoute;
+		}
+		originCacheMissCount.incrementAndGet();
+		int route = getRoute(request);
+		if(isOriginRoute(route) && originRoutes.size() < MAX_CACHED_ORIGINS) {
+			originRoutes.putIfAbsent(origin, route);
+		}
+		return route;
+	}
+
+	private WebConnection getConnection(int route) {
+		return route == NO_ROUTE ? defaultConnection : connections.get(route).getDelegate();
+	}
+
+	private boolean isOriginRoute(int route) {
+		return route < originRouteCount || originRouteCount == connections.size();
+	}
+
+	/**
+	 * Finds the index of the first DelegateWebConnection that matches the request.
+	 *
+	 * @param request the WebRequest to route
+	 * @return the index of the DelegateWebConnection or {@link #NO_ROUTE}
+	 */
+	private int getRoute(WebRequest request) {
+		URL url = request.getUrl();
+		int hostRoute = hostRoute(url);
+		String externalForm = null;
+		for(Route route : routes) {
+			if(route.index > hostRoute) {
+				break;
+			}
+			boolean matches;
+			if(route.pattern != null) {
+				if(externalForm == null) {
+					externalForm = url.toExternalForm();
+				}
+				matches = route.pattern.matcher(externalForm).matches();
+			}
+			else {
+				matches = route.matcher.matches(request);
+			}
+			if(matches) {
+				return route.index;
+			}
+		}
+		return hostRoute;
+	}
+
+	/**
+	 * Finds the index of the first DelegateWebConnection with a HostRequestMatcher that
+	 * matches the URL. This mirrors {@link HostRequestMatcher#matches(WebRequest)}.
+	 *
+	 * @param url the URL to route
+	 * @return the index of the DelegateWebConnection or {@link #NO_ROUTE}
+	 */
+	private int hostRoute(URL url) {
+		if(hostRoutes.isEmpty()) {
+			return NO_ROUTE;
+		}
+		String host = url.getHost();
+		Integer route = hostRoutes.get(host);
+		int result = route == null ? NO_ROUTE : route;
+		if(hostsWithPort.contains(host)) {
+			int port = url.getPort();
+			if(port == -1) {
+				port = url.getDefaultPort();
+			}
+			Integer portRoute = hostRoutes.get(host + ":" + port);
+			if(portRoute != null && portRoute < result) {
+				result = portRoute;
+			}
+		}
+		return result;
+	}
+
+	private static String origin(URL url) {
+		int port = url.getPort();
+		if(port == -1) {
+			port = url.getDefaultPort();
+		}
+		return url.getProtocol() + "://" + url.getHost() + ":" + port;
+	}
+
+	private static int originRouteCount(List<DelegateWebConnection> connections) {
+		int result = 0;
+		while(result < connections.size() && connections.get(result).getMatcher() instanceof OriginRequestMatcher) {
+			result++;
+		}
+		return result;
+	}
+
+	private Route[] compile(List<DelegateWebConnection> connections) {
+		List<Route> result = new ArrayList<Route>(connections.size());
+		for(int i = 0; i < connections.size(); i++) {
+			DelegateWebConnection connection = connections.get(i);
+			WebRequestMatcher matcher = connection.getMatcher();
+			if(matcher instanceof HostRequestMatcher) {
+				for(String host : ((HostRequestMatcher) matcher).getHosts()) {
+					if(!hostRoutes.containsKey(host)) {
+						hostRoutes.put(host, i);
+					}
+					int portIndex = host.lastIndexOf(':');
+					if(portIndex > 0) {
+						hostsWithPort.add(host.substring(0, portIndex));
+					}
+				}
 			}
+			else {
+				result.add(new Route(i, matcher));
+			}
+		}
+		return result.toArray(new Route[result.size()]);
+	}
+
+	private static final class Route {
+		private final int index;
+		private final WebRequestMatcher matcher;
+		private final Pattern pattern;
+
+		private Route(int index, WebRequestMatcher matcher) {
+			this.index = index;
+			this.matcher = matcher;
+			this.pattern = matcher instanceof UrlRegexRequestMatcher ? ((UrlRegexRequestMatcher) matcher).getPattern() : null;
 		}
-		return defaultConnection.getResponse(request);
 	}
 
 	public final static class DelegateWebConnection {
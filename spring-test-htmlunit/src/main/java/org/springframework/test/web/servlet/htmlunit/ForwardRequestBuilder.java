@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.util.Assert;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * <p>
+ * Internal class that builds the request for a forward by updating the request that was
+ * forwarded. Unlike processing the WebRequest again, this keeps the state that was already
+ * built (i.e. headers, cookies, the session, and attributes) and only changes the path.
+ * </p>
+ * <p>
+ * Like a Servlet container, the javax.servlet.forward.* attributes are set to the values of
+ * the original request, any query parameters of the forward URL take precedence over the
+ * existing parameters, and the number of forwards is available as the
+ * {@link MockMvcWebConnection#FORWARD_COUNT_ATTRIBUTE} request attribute.
+ * </p>
+ */
+final class ForwardRequestBuilder implements RequestBuilder {
+	private final MockHttpServletRequest request;
+
+	private final String forwardUrl;
+
+	private final int forwardCount;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param request the request that was forwarded. Cannot be null.
+	 * @param forwardUrl the URL that was forwarded to. Cannot be empty.
+	 * @param forwardCount the number of forwards including this one
+	 */
+	public ForwardRequestBuilder(MockHttpServletRequest request, String forwardUrl, int forwardCount) {
+		Assert.notNull(request, "request cannot be null");
+		Assert.hasText(forwardUrl, "Forward url must have text");
+		this.request = request;
+		this.forwardUrl = forwardUrl;
+		this.forwardCount = forwardCount;
+	}
+
+	@Override
+	public MockHttpServletRequest buildRequest(ServletContext servletContext) {
+		if (request.getAttribute(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE) == null) {
+			request.setAttribute(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE, request.getRequestURI());
+			request.setAttribute(WebUtils.FORWARD_CONTEXT_PATH_ATTRIBUTE, request.getContextPath());
+			request.setAttribute(WebUtils.FORWARD_SERVLET_PATH_ATTRIBUTE, request.getServletPath());
+			request.setAttribute(WebUtils.FORWARD_PATH_INFO_ATTRIBUTE, request.getPathInfo());
+			request.setAttribute(WebUtils.FORWARD_QUERY_STRING_ATTRIBUTE, request.getQueryString());
+		}
+
+		String path = forwardUrl;
+		int queryIndex = forwardUrl.indexOf('?');
+		if (queryIndex != -1) {
+			path = forwardUrl.substring(0, queryIndex);
+			String query = forwardUrl.substring(queryIndex + 1);
+			request.setQueryString(query);
+			params(query);
+		}
+		request.setRequestURI(request.getContextPath() + path);
+		request.setServletPath(path);
+		request.setPathInfo(null);
+		request.setAttribute(MockMvcWebConnection.FORWARD_COUNT_ATTRIBUTE, forwardCount);
+		return request;
+	}
+
+	private void params(String query) {
+		for (Entry<String, List<String>> values : ParsedUrl.parseQuery(query).entrySet()) {
+			String name = values.getKey();
+			List<String> result = new ArrayList<String>();
+			for (String value : values.getValue()) {
+				try {
+					result.add(URLDecoder.decode(value, "UTF-8"));
+				}
+				catch (UnsupportedEncodingException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			String[] existing = request.getParameterValues(name);
+			if (existing != null) {
+				result.addAll(Arrays.asList(existing));
+			}
+			request.setParameter(name, result.toArray(new String[result.size()]));
+		}
+	}
+}
@@ -17,28 +17,36 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CountDownLatch;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 import org.springframework.beans.Mergeable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.SmartRequestBuilder;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
-import org.springframework.test.web.servlet.request.RequestPostProcessor;
 import org.springframework.util.Assert;
-import org.springframework.web.util.UriComponents;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.FormEncodingType;
 import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
 
 /**
@@ -55,7 +63,7 @@ import com.gargoylesoftware.htmlunit.util.NameValuePair;
  * @see MockMvcWebConnection
  */
 final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
-	private final Map<String, MockHttpSession> sessions;
+	private final MockHttpSessionStore sessions;
 
 	private final CookieManager cookieManager;
 
@@ -67,16 +75,26 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 
 	private SmartRequestBuilder parentPostProcessor;
 
-	private RequestPostProcessor forwardPostProcessor;
+	private ParentRequestTemplate.Cache parentTemplates;
+
+	private ParsedUrl parsedUrl;
+
+	private long buildEndTime;
+
+	private long dispatchStartTime;
+
+	private long viewStartTime;
+
+	private boolean timingsEnabled;
 
 	/**
 	 *
-	 * @param sessions A {@link Map} of the {@link HttpSession#getId()} to currently managed {@link HttpSession}
-	 * objects. Cannot be null.
+	 * @param sessions The {@link MockHttpSessionStore} holding the currently managed {@link HttpSession} objects.
+	 * Cannot be null.
 	 * @param cookieManager The {@link CookieManager} used for managing {@link HttpSession}'s JSESSIONID cookie.
 	 * @param webRequest The {@link WebRequest} to transform into a {@link MockHttpServletRequest}. Cannot be null.
 	 */
-	public HtmlUnitRequestBuilder(Map<String, MockHttpSession> sessions, CookieManager cookieManager,
+	public HtmlUnitRequestBuilder(MockHttpSessionStore sessions, CookieManager cookieManager,
 			WebRequest webRequest) {
 		Assert.notNull(sessions, "sessions cannot be null");
 		Assert.notNull(cookieManager, "cookieManager");
@@ -88,40 +106,44 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 	}
 
 	public MockHttpServletRequest buildRequest(ServletContext servletContext) {
+		buildEndTime = 0;
+		dispatchStartTime = 0;
+		viewStartTime = 0;
 		String charset = getCharset();
 		String httpMethod = webRequest.getHttpMethod().name();
-		UriComponents uriComponents = uriComponents();
+		ParsedUrl url = parsedUrl();
 
-		MockHttpServletRequest result = new HtmlUnitMockHttpServletRequest(servletContext, httpMethod,
-				uriComponents.getPath());
+		HtmlUnitMockHttpServletRequest request = isMultipart() ? new HtmlUnitMockMultipartHttpServletRequest(
+				servletContext, httpMethod, url.getPath()) : new HtmlUnitMockHttpServletRequest(servletContext,
+				httpMethod, url.getPath());
+		MockHttpServletRequest result = request;
 		parent(result, parentBuilder);
-		result.setServerName(uriComponents.getHost()); // needs to be first for additional headers
+		result.setServerName(url.getHost()); // needs to be first for additional headers
 		authType(result);
 		result.setCharacterEncoding(charset);
 		content(result, charset);
-		contextPath(result, uriComponents);
+		contextPath(result, url);
 		contentType(result);
-		cookies(result);
-		headers(result);
-		locales(result);
-		servletPath(uriComponents, result);
-		params(result, uriComponents);
-		ports(uriComponents, result);
+		request.defer(url);
+		servletPath(url, result);
+		ports(url, result);
 		result.setProtocol("HTTP/1.1");
-		result.setQueryString(uriComponents.getQuery());
-		result.setScheme(uriComponents.getScheme());
-		pathInfo(uriComponents,result);
+		result.setAsyncSupported(true);
+		result.setQueryString(url.getQuery());
+		result.setScheme(url.getScheme());
+		pathInfo(url, result);
 
-		return postProcess(result);
+		result = postProcess(result);
+		if (timingsEnabled) {
+			buildEndTime = System.nanoTime();
+		}
+		return result;
 	}
 
 	private MockHttpServletRequest postProcess(MockHttpServletRequest request) {
 		if(parentPostProcessor != null) {
 			request = parentPostProcessor.postProcessRequest(request);
 		}
-		if(forwardPostProcessor != null) {
-			request = forwardPostProcessor.postProcessRequest(request);
-		}
 
 		return request;
 	}
@@ -130,50 +152,21 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		if(parent == null) {
 			return;
 		}
-		MockHttpServletRequest parentRequest = parent.buildRequest(result.getServletContext());
-
-		// session
-		HttpSession parentSession = parentRequest.getSession(false);
-		if(parentSession != null) {
-			Enumeration<String> attrNames = parentSession.getAttributeNames();
-			while(attrNames.hasMoreElements()) {
-				String attrName = attrNames.nextElement();
-				Object attrValue = parentSession.getAttribute(attrName);
-				result.getSession().setAttribute(attrName, attrValue);
-			}
-		}
-
-		// header
-		Enumeration<String> headerNames = parentRequest.getHeaderNames();
-		while(headerNames.hasMoreElements()) {
-			String attrName = headerNames.nextElement();
-			Enumeration<String> attrValues = parentRequest.getHeaders(attrName);
-			while(attrValues.hasMoreElements()) {
-				String attrValue = attrValues.nextElement();
-				result.addHeader(attrName, attrValue);
-			}
-		}
-
-		// parameter
-		Map<String, String[]> parentParams = parentRequest.getParameterMap();
-		for(Map.Entry<String,String[]> parentParam : parentParams.entrySet()) {
-			String paramName = parentParam.getKey();
-			String[] paramValues = parentParam.getValue();
-			result.addParameter(paramName, paramValues);
-		}
-
-		// cookie
-		Cookie[] parentCookies = parentRequest.getCookies();
-		if(parentCookies != null) {
-			result.setCookies(parentCookies);
-		}
+		ServletContext servletContext = result.getServletContext();
+		ParentRequestTemplate template = parentTemplates == null ? ParentRequestTemplate.create(parent,
+				servletContext) : parentTemplates.get(parent, servletContext);
+		template.applyTo(result);
+	}
 
-		// request attribute
-		Enumeration<String> parentAttrNames = parentRequest.getAttributeNames();
-		while(parentAttrNames.hasMoreElements()) {
-			String parentAttrName = parentAttrNames.nextElement();
-			result.setAttribute(parentAttrName, parentRequest.getAttribute(parentAttrName));
-		}
+	/**
+	 * Sets the cache of the state of the default request so that the default request is
+	 * not built for every request. If it is not set, the default request is built each
+	 * time.
+	 *
+	 * @param parentTemplates the cache to use. May be null.
+	 */
+	void setParentTemplates(ParentRequestTemplate.Cache parentTemplates) {
+		this.parentTemplates = parentTemplates;
 	}
 
 	/**
@@ -198,10 +191,6 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		this.contextPath = contextPath;
 	}
 
-	public void setForwardPostProcessor(RequestPostProcessor postProcessor) {
-		this.forwardPostProcessor = postProcessor;
-	}
-
 	private void authType(MockHttpServletRequest request) {
 		String authorization = header("Authorization");
 		if (authorization != null) {
@@ -210,12 +199,24 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		}
 	}
 
+	/**
+	 * Whether the {@link WebRequest} submits its parameters as multipart/form-data, in which case its
+	 * {@link KeyDataPair} parameters are exposed as {@link MultipartFile} instances.
+	 *
+	 * @return true if the {@link WebRequest} submits its parameters as multipart/form-data
+	 */
+	private boolean isMultipart() {
+		return webRequest.getHttpMethod() == com.gargoylesoftware.htmlunit.HttpMethod.POST
+				&& webRequest.getEncodingType() == FormEncodingType.MULTIPART && webRequest.getRequestBody() == null;
+	}
+
 	private void content(MockHttpServletRequest result, String charset) {
 		String requestBody = webRequest.getRequestBody();
 		if (requestBody == null) {
 			return;
 		}
 		try {
+			// MockHttpServletRequest keeps the array, so the body is only encoded once
 			result.setContent(requestBody.getBytes(charset));
 		}
 		catch (UnsupportedEncodingException e) {
@@ -225,12 +226,15 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 
 	private void contentType(MockHttpServletRequest result) {
 		String contentType = header("Content-Type");
-		result.setContentType(contentType == null ? MediaType.ALL_VALUE.toString() : contentType);
+		if (contentType == null) {
+			contentType = isMultipart() ? MediaType.MULTIPART_FORM_DATA_VALUE : MediaType.ALL_VALUE;
+		}
+		result.setContentType(contentType);
 	}
 
-	private void contextPath(MockHttpServletRequest result, UriComponents uriComponents) {
+	private void contextPath(MockHttpServletRequest result, ParsedUrl url) {
 		if (contextPath == null) {
-			List<String> pathSegments = uriComponents.getPathSegments();
+			List<String> pathSegments = url.getPathSegments();
 			if (pathSegments.isEmpty()) {
 				result.setContextPath("");
 			}
@@ -239,8 +243,8 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 			}
 		}
 		else {
-			if (!uriComponents.getPath().startsWith(contextPath)) {
-				throw new IllegalArgumentException(uriComponents.getPath() + " should start with contextPath "
+			if (!url.getPath().startsWith(contextPath)) {
+				throw new IllegalArgumentException(url.getPath() + " should start with contextPath "
 						+ contextPath);
 			}
 			result.setContextPath(contextPath);
@@ -252,15 +256,8 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		Cookie[] parentCookies = result.getCookies();
 		List<Cookie> cookies = new ArrayList<Cookie>();
 		if (cookieHeaderValue != null) {
-			StringTokenizer tokens = new StringTokenizer(cookieHeaderValue, "=;");
-			while (tokens.hasMoreTokens()) {
-				String cookieName = tokens.nextToken().trim();
-				if (!tokens.hasMoreTokens()) {
-					throw new IllegalArgumentException("Expected value for cookie name " + cookieName
-							+ ". Full cookie was " + cookieHeaderValue);
-				}
-				String cookieValue = tokens.nextToken().trim();
-				processCookie(result, cookies, new Cookie(cookieName, cookieValue));
+			for (Cookie cookie : CookieHeaderParser.parse(cookieHeaderValue)) {
+				processCookie(result, cookies, cookie);
 			}
 		}
 
@@ -300,26 +297,25 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 
 	private void headers(MockHttpServletRequest result) {
 		for (Entry<String, String> header : webRequest.getAdditionalHeaders().entrySet()) {
-			result.addHeader(header.getKey(), header.getValue());
+			// the Content-Type was already applied by contentType(MockHttpServletRequest)
+			if (!"Content-Type".equalsIgnoreCase(header.getKey())) {
+				result.addHeader(header.getKey(), header.getValue());
+			}
 		}
 	}
 
 	private MockHttpSession httpSession(MockHttpServletRequest request, final String sessionid) {
-		MockHttpSession session;
-		synchronized (sessions) {
-			session = sessions.get(sessionid);
+		MockHttpSession session = sessions.getSession(sessionid);
+		if (session == null) {
+			MockHttpSession newSession = new HtmlUnitMockHttpSession(request, sessionid);
+			newSession.setNew(true);
+			session = sessions.putSessionIfAbsent(newSession);
 			if (session == null) {
-				session = new HtmlUnitMockHttpSession(request, sessionid);
-				session.setNew(true);
-				synchronized (sessions) {
-					sessions.put(sessionid, session);
-				}
 				addSessionCookie(request, sessionid);
-			}
-			else {
-				session.setNew(false);
+				return newSession;
 			}
 		}
+		session.setNew(false);
 		return session;
 	}
 
@@ -337,20 +333,21 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 	}
 
 	private void locales(MockHttpServletRequest result) {
-		String locale = header("Accept-Language");
-		if (locale == null) {
+		String acceptLanguage = header("Accept-Language");
+		List<Locale> locales = acceptLanguage == null ? Collections.<Locale> emptyList() : AcceptLanguageParser
+				.parse(acceptLanguage);
+		if (locales.isEmpty()) {
 			result.addPreferredLocale(Locale.getDefault());
 		}
 		else {
-			String[] locales = locale.split(", ");
-			for (int i = locales.length - 1; i >= 0; i--) {
-				result.addPreferredLocale(parseLocale(locales[i]));
+			for (int i = locales.size() - 1; i >= 0; i--) {
+				result.addPreferredLocale(locales.get(i));
 			}
 		}
 	}
 
-	private void params(MockHttpServletRequest result, UriComponents uriComponents) {
-		for (Entry<String, List<String>> values : uriComponents.getQueryParams().entrySet()) {
+	private void params(MockHttpServletRequest result, ParsedUrl url) {
+		for (Entry<String, List<String>> values : url.getQueryParams().entrySet()) {
 			String name = values.getKey();
 			for (String value : values.getValue()) {
 				try {
@@ -362,28 +359,12 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 			}
 		}
 		for (NameValuePair param : webRequest.getRequestParameters()) {
+			// an uploaded file remains a parameter holding its file name, as it always was
 			result.addParameter(param.getName(), param.getValue());
 		}
 	}
 
-	private Locale parseLocale(String locale) {
-		Matcher matcher = LOCALE_PATTERN.matcher(locale);
-		if (!matcher.matches()) {
-			throw new IllegalArgumentException("Invalid locale " + locale);
-		}
-		String language = matcher.group(1);
-		String country = matcher.group(2);
-		if (country == null) {
-			country = "";
-		}
-		String qualifier = matcher.group(3);
-		if (qualifier == null) {
-			qualifier = "";
-		}
-		return new Locale(language, country, qualifier);
-	}
-
-	private void pathInfo(UriComponents uriComponents, MockHttpServletRequest result) {
+	private void pathInfo(ParsedUrl url, MockHttpServletRequest result) {
 		result.setPathInfo(null);
 	}
 
@@ -395,15 +376,15 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		result.setServletPath(servletPath);
 	}
 
-	private void servletPath(UriComponents uriComponents, MockHttpServletRequest result) {
+	private void servletPath(ParsedUrl url, MockHttpServletRequest result) {
 		if ("".equals(result.getPathInfo())) {
 			result.setPathInfo(null);
 		}
-		servletPath(result, uriComponents.getPath());
+		servletPath(result, url.getPath());
 	}
 
-	private void ports(UriComponents uriComponents, MockHttpServletRequest result) {
-		int serverPort = uriComponents.getPort();
+	private void ports(ParsedUrl url, MockHttpServletRequest result) {
+		int serverPort = url.getPort();
 		result.setServerPort(serverPort);
 		if (serverPort == -1) {
 			int portConnection = webRequest.getUrl().getDefaultPort();
@@ -415,10 +396,84 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		}
 	}
 
-	private UriComponents uriComponents() {
+	/**
+	 * The {@link System#nanoTime()} at which {@link #buildRequest(ServletContext)} completed.
+	 *
+	 * @return the time the request was built or 0 if it was not built while the timings
+	 * were started
+	 */
+	public long getBuildEndTime() {
+		return buildEndTime;
+	}
+
+	/**
+	 * The {@link System#nanoTime()} at which the {@code DispatcherServlet} started
+	 * processing the built request. This is detected by the {@code DispatcherServlet}
+	 * exposing the WebApplicationContext as a request attribute.
+	 *
+	 * @return the time the {@code DispatcherServlet} was invoked or 0 if it was not invoked
+	 */
+	public long getDispatchStartTime() {
+		return dispatchStartTime;
+	}
+
+	/**
+	 * The {@link System#nanoTime()} at which a view started rendering the built request.
+	 * This is detected by the view reading the path variables request attribute. The
+	 * {@code PathVariableMethodArgumentResolver} also reads that attribute before the
+	 * handler is invoked, but it always stores or adds a path variable right after reading
+	 * it, so those reads are discarded.
+	 *
+	 * @return the time a view started rendering or 0 if no view was rendered
+	 */
+	public long getViewStartTime() {
+		return viewStartTime;
+	}
+
+	/**
+	 * Starts detecting the build end, dispatch start and view start times. Unless this is
+	 * invoked before MockMvc processes the built request, the request is not instrumented.
+	 */
+	void startTimings() {
+		timingsEnabled = true;
+	}
+
+	/**
+	 * Stops detecting the dispatch and view start times. This is invoked once MockMvc
+	 * has processed the built request, so that following a forward with the same request
+	 * does not change the times.
+	 */
+	void stopTimings() {
+		timingsEnabled = false;
+	}
+
+	/**
+	 * Obtains the session of a request that was built by an {@link HtmlUnitRequestBuilder} without resolving the
+	 * session of its JSESSIONID cookie. Unlike {@link MockHttpServletRequest#getSession(boolean)}, this does not
+	 * access the session and so does not change when it was last accessed.
+	 *
+	 * @param request the request to inspect
+	 * @return the session that was created or looked up while processing the request, or null
+	 */
+	static HttpSession getResolvedSession(MockHttpServletRequest request) {
+		if (request instanceof HtmlUnitMockHttpServletRequest) {
+			return ((HtmlUnitMockHttpServletRequest) request).getResolvedSession();
+		}
+		return request.getSession(false);
+	}
+
+	/**
+	 * Obtains the decomposed URL of the {@link WebRequest}. The result is cached so that
+	 * the same URL is not decomposed again.
+	 *
+	 * @return the decomposed URL of the {@link WebRequest}
+	 */
+	private ParsedUrl parsedUrl() {
 		URL url = webRequest.getUrl();
-		UriComponentsBuilder uriBldr = UriComponentsBuilder.fromUriString(url.toExternalForm());
-		return uriBldr.build();
+		if (parsedUrl == null || parsedUrl.getUrl() != url) {
+			parsedUrl = new ParsedUrl(url);
+		}
+		return parsedUrl;
 	}
 
     @Override
@@ -441,27 +496,129 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
         return this;
     }
 
+	/**
+	 * Obtains a latch that is released when the asynchronous processing that was most
+	 * recently started on the request dispatches, for example when a
+	 * {@code DeferredResult} is set.
+	 *
+	 * @param request a request that was built by an {@link HtmlUnitRequestBuilder}
+	 * @return the latch, or null if asynchronous processing was not started or the
+	 * request was not built by an {@link HtmlUnitRequestBuilder}
+	 */
+	static CountDownLatch asyncDispatchLatch(MockHttpServletRequest request) {
+		if (request instanceof HtmlUnitMockHttpServletRequest) {
+			return ((HtmlUnitMockHttpServletRequest) request).asyncDispatch;
+		}
+		return null;
+	}
+
     /**
+	 * <p>
 	 * An extension to {@link MockHttpServletRequest} that ensures that when a new {@link HttpSession} is created, it is
 	 * added to the managed sessions.
+	 * </p>
+	 * <p>
+	 * The cookies, headers, locales, and parameters of the {@link WebRequest} are only copied into the request once
+	 * they are first accessed, since most handlers only read a few of them. Each of them is copied before it is read
+	 * or modified, so the request behaves as if they were copied when it was built.
+	 * </p>
 	 *
 	 * @author Rob Winch
 	 */
-	private final class HtmlUnitMockHttpServletRequest extends MockHttpServletRequest {
+	private class HtmlUnitMockHttpServletRequest extends MockHttpServletRequest {
+		private ParsedUrl url;
+
+		private boolean cookiesPending;
+
+		private boolean headersPending;
+
+		private boolean localesPending;
+
+		private boolean paramsPending;
+
+		private volatile CountDownLatch asyncDispatch;
+
 		private HtmlUnitMockHttpServletRequest(ServletContext servletContext, String method, String requestURI) {
 			super(servletContext, method, requestURI);
 		}
 
+		/**
+		 * Defers copying the cookies, headers, locales, and parameters of the {@link WebRequest} until they are first
+		 * accessed.
+		 *
+		 * @param url the decomposed URL of the {@link WebRequest}
+		 */
+		private void defer(ParsedUrl url) {
+			this.url = url;
+			this.cookiesPending = true;
+			this.headersPending = true;
+			this.localesPending = true;
+			this.paramsPending = true;
+		}
+
+		private void materializeCookies() {
+			if (cookiesPending) {
+				cookiesPending = false;
+				cookies(this);
+			}
+		}
+
+		private void materializeHeaders() {
+			if (headersPending) {
+				headersPending = false;
+				headers(this);
+			}
+		}
+
+		private void materializeLocales() {
+			if (localesPending) {
+				localesPending = false;
+				locales(this);
+			}
+		}
+
+		private void materializeParams() {
+			if (paramsPending) {
+				paramsPending = false;
+				params(this, url);
+			}
+		}
+
+		// --- cookies and sessions
+
+		@Override
+		public Cookie[] getCookies() {
+			materializeCookies();
+			return super.getCookies();
+		}
+
+		@Override
+		public void setCookies(Cookie... cookies) {
+			materializeCookies();
+			super.setCookies(cookies);
+		}
+
+		@Override
+		public String getRequestedSessionId() {
+			materializeCookies();
+			return super.getRequestedSessionId();
+		}
+
+		@Override
+		public void setRequestedSessionId(String requestedSessionId) {
+			materializeCookies();
+			super.setRequestedSessionId(requestedSessionId);
+		}
+
 		public HttpSession getSession(boolean create) {
+			materializeCookies();
 			HttpSession result = super.getSession(false);
 			if (result == null && create) {
 				HtmlUnitMockHttpSession newSession = new HtmlUnitMockHttpSession(this);
 				setSession(newSession);
 				newSession.setNew(true);
 				String sessionid = newSession.getId();
-				synchronized (sessions) {
-					sessions.put(sessionid, newSession);
-				}
+				sessions.putSessionIfAbsent(newSession);
 				addSessionCookie(this, sessionid);
 				result = newSession;
 			}
@@ -472,9 +629,329 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 			return super.getSession();
 		}
 
+		/**
+		 * Obtains the session without copying the cookies, so that the session of the JSESSIONID cookie is not
+		 * looked up and accessed only to inspect the request.
+		 *
+		 * @return the session that was created or looked up while processing the request, or null
+		 */
+		private HttpSession getResolvedSession() {
+			return cookiesPending ? null : super.getSession(false);
+		}
+
+		@Override
+		public AsyncContext startAsync(ServletRequest request, ServletResponse response) {
+			AsyncContext result = super.startAsync(request, response);
+			if (result instanceof MockAsyncContext) {
+				// registered before the processing starts, so the dispatch cannot be missed
+				final CountDownLatch latch = new CountDownLatch(1);
+				((MockAsyncContext) result).addDispatchHandler(new Runnable() {
+					public void run() {
+						latch.countDown();
+					}
+				});
+				asyncDispatch = latch;
+			}
+			return result;
+		}
+
 		public void setSession(HttpSession session) {
+			materializeCookies();
 			super.setSession(session);
 		}
+
+		// --- headers
+
+		@Override
+		public void addHeader(String name, Object value) {
+			materializeHeaders();
+			super.addHeader(name, value);
+		}
+
+		@Override
+		public long getDateHeader(String name) {
+			materializeHeaders();
+			return super.getDateHeader(name);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			materializeHeaders();
+			return super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			materializeHeaders();
+			return super.getHeaders(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			materializeHeaders();
+			return super.getHeaderNames();
+		}
+
+		@Override
+		public int getIntHeader(String name) {
+			materializeHeaders();
+			return super.getIntHeader(name);
+		}
+
+		// --- locales
+
+		@Override
+		public void addPreferredLocale(Locale locale) {
+			materializeLocales();
+			super.addPreferredLocale(locale);
+		}
+
+		@Override
+		public void setPreferredLocales(List<Locale> locales) {
+			materializeLocales();
+			super.setPreferredLocales(locales);
+		}
+
+		@Override
+		public Locale getLocale() {
+			materializeLocales();
+			return super.getLocale();
+		}
+
+		@Override
+		public Enumeration<Locale> getLocales() {
+			materializeLocales();
+			return super.getLocales();
+		}
+
+		// --- parameters
+
+		@Override
+		public void setParameter(String name, String value) {
+			materializeParams();
+			super.setParameter(name, value);
+		}
+
+		@Override
+		public void setParameter(String name, String[] values) {
+			materializeParams();
+			super.setParameter(name, values);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public void setParameters(Map params) {
+			materializeParams();
+			super.setParameters(params);
+		}
+
+		@Override
+		public void addParameter(String name, String value) {
+			materializeParams();
+			super.addParameter(name, value);
+		}
+
+		@Override
+		public void addParameter(String name, String[] values) {
+			materializeParams();
+			super.addParameter(name, values);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		public void addParameters(Map params) {
+			materializeParams();
+			super.addParameters(params);
+		}
+
+		@Override
+		public void removeParameter(String name) {
+			materializeParams();
+			super.removeParameter(name);
+		}
+
+		@Override
+		public void removeAllParameters() {
+			materializeParams();
+			super.removeAllParameters();
+		}
+
+		@Override
+		public String getParameter(String name) {
+			materializeParams();
+			return super.getParameter(name);
+		}
+
+		@Override
+		public Enumeration<String> getParameterNames() {
+			materializeParams();
+			return super.getParameterNames();
+		}
+
+		@Override
+		public String[] getParameterValues(String name) {
+			materializeParams();
+			return super.getParameterValues(name);
+		}
+
+		@Override
+		public Map<String, String[]> getParameterMap() {
+			materializeParams();
+			return super.getParameterMap();
+		}
+
+		// --- attributes
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object getAttribute(String name) {
+			Object value = super.getAttribute(name);
+			if (!timingsEnabled || dispatchStartTime == 0 || !VIEW_PATH_VARIABLES_ATTRIBUTE.equals(name)) {
+				return value;
+			}
+			if (viewStartTime == 0) {
+				viewStartTime = System.nanoTime();
+			}
+			return value instanceof Map ? new PathVariablesMap((Map<String, Object>) value) : value;
+		}
+
+		@Override
+		public void setAttribute(String name, Object value) {
+			if (timingsEnabled) {
+				if (dispatchStartTime == 0 && DISPATCHER_CONTEXT_ATTRIBUTE.equals(name)) {
+					dispatchStartTime = System.nanoTime();
+				}
+				else if (VIEW_PATH_VARIABLES_ATTRIBUTE.equals(name)) {
+					// a path variable is being resolved, so the last read was not by a view
+					viewStartTime = 0;
+				}
+			}
+			super.setAttribute(name, value);
+		}
+	}
+
+	/**
+	 * Exposes the path variables request attribute, so that adding a path variable discards the read of the
+	 * attribute that preceded it.
+	 *
+	 * @see #getViewStartTime()
+	 */
+	private final class PathVariablesMap extends AbstractMap<String, Object> {
+		private final Map<String, Object> pathVariables;
+
+		private PathVariablesMap(Map<String, Object> pathVariables) {
+			this.pathVariables = pathVariables;
+		}
+
+		@Override
+		public Object put(String key, Object value) {
+			if (timingsEnabled) {
+				viewStartTime = 0;
+			}
+			return pathVariables.put(key, value);
+		}
+
+		@Override
+		public Object get(Object key) {
+			return pathVariables.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return pathVariables.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return pathVariables.size();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return pathVariables.entrySet();
+		}
+	}
+
+	/**
+	 * <p>
+	 * An extension to {@link HtmlUnitMockHttpServletRequest} for a multipart/form-data request, which exposes the
+	 * {@link KeyDataPair} parameters of the {@link WebRequest} as {@link MultipartFile} instances. The content of the
+	 * files is not loaded into memory, so no multipart body is encoded and parsed again.
+	 * </p>
+	 *
+	 * @see KeyDataPairMultipartFile
+	 */
+	private final class HtmlUnitMockMultipartHttpServletRequest extends HtmlUnitMockHttpServletRequest implements
+			MultipartHttpServletRequest {
+		private final MultiValueMap<String, MultipartFile> multipartFiles = new LinkedMultiValueMap<String, MultipartFile>();
+
+		private HtmlUnitMockMultipartHttpServletRequest(ServletContext servletContext, String method, String requestURI) {
+			super(servletContext, method, requestURI);
+			for (NameValuePair param : webRequest.getRequestParameters()) {
+				if (param instanceof KeyDataPair) {
+					multipartFiles.add(param.getName(), new KeyDataPairMultipartFile((KeyDataPair) param));
+				}
+			}
+		}
+
+		@Override
+		public Iterator<String> getFileNames() {
+			return multipartFiles.keySet().iterator();
+		}
+
+		@Override
+		public MultipartFile getFile(String name) {
+			return multipartFiles.getFirst(name);
+		}
+
+		@Override
+		public List<MultipartFile> getFiles(String name) {
+			List<MultipartFile> files = multipartFiles.get(name);
+			return files == null ? Collections.<MultipartFile> emptyList() : files;
+		}
+
+		@Override
+		public Map<String, MultipartFile> getFileMap() {
+			return multipartFiles.toSingleValueMap();
+		}
+
+		@Override
+		public MultiValueMap<String, MultipartFile> getMultiFileMap() {
+			return new LinkedMultiValueMap<String, MultipartFile>(multipartFiles);
+		}
+
+		@Override
+		public String getMultipartContentType(String paramOrFileName) {
+			MultipartFile file = getFile(paramOrFileName);
+			return file == null ? null : file.getContentType();
+		}
+
+		@Override
+		public HttpMethod getRequestMethod() {
+			return HttpMethod.valueOf(getMethod());
+		}
+
+		@Override
+		public HttpHeaders getRequestHeaders() {
+			HttpHeaders headers = new HttpHeaders();
+			Enumeration<String> headerNames = getHeaderNames();
+			while (headerNames.hasMoreElements()) {
+				String headerName = headerNames.nextElement();
+				headers.put(headerName, Collections.list(getHeaders(headerName)));
+			}
+			return headers;
+		}
+
+		@Override
+		public HttpHeaders getMultipartHeaders(String paramOrFileName) {
+			String contentType = getMultipartContentType(paramOrFileName);
+			if (contentType == null) {
+				return null;
+			}
+			HttpHeaders headers = new HttpHeaders();
+			headers.add("Content-Type", contentType);
+			return headers;
+		}
 	}
 
 	/**
@@ -487,8 +964,8 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 		private final MockHttpServletRequest request;
 
 		private HtmlUnitMockHttpSession(MockHttpServletRequest request) {
-			super(request.getServletContext());
-			this.request = request;
+			// MockHttpSession's generated ids are not unique across threads
+			this(request, UUID.randomUUID().toString());
 		}
 
 		private HtmlUnitMockHttpSession(MockHttpServletRequest request, String id) {
@@ -498,12 +975,19 @@ final class HtmlUnitRequestBuilder implements RequestBuilder, Mergeable {
 
 		public void invalidate() {
 			super.invalidate();
-			synchronized (sessions) {
-				sessions.remove(getId());
-			}
+			sessions.removeSession(this);
 			removeSessionCookie(request, getId());
 		}
 	}
 
-	private static final Pattern LOCALE_PATTERN = Pattern.compile("^\\s*(\\w{2})(?:-(\\w{2}))?(?:;q=(\\d+\\.\\d+))?$");
+	/**
+	 * The value of DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE, which is not
+	 * referenced directly since spring-webmvc is not a required dependency.
+	 */
+	private static final String DISPATCHER_CONTEXT_ATTRIBUTE = "org.springframework.web.servlet.DispatcherServlet.CONTEXT";
+
+	/**
+	 * The value of View.PATH_VARIABLES
+	 */
+	private static final String VIEW_PATH_VARIABLES_ATTRIBUTE = "org.springframework.web.servlet.View.pathVariables";
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+
+/**
+ * <p>
+ * A {@link MultipartFile} for a file that is uploaded by a {@link KeyDataPair} parameter
+ * of a {@link com.gargoylesoftware.htmlunit.WebRequest}.
+ * </p>
+ * <p>
+ * If the {@link KeyDataPair} refers to a file, the content is read from that file each
+ * time it is accessed rather than being loaded into memory, so large uploads do not
+ * increase the size of the heap unless {@link #getBytes()} is invoked.
+ * </p>
+ *
+ * @see HtmlUnitRequestBuilder
+ */
+final class KeyDataPairMultipartFile implements MultipartFile {
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	private final String name;
+
+	private final String originalFilename;
+
+	private final String contentType;
+
+	private final File file;
+
+	private final byte[] data;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param pair the {@link KeyDataPair} to create a {@link MultipartFile} for. Cannot
+	 * be null.
+	 */
+	KeyDataPairMultipartFile(KeyDataPair pair) {
+		this.name = pair.getName();
+		this.originalFilename = pair.getValue() == null ? "" : pair.getValue();
+		this.contentType = pair.getMimeType() == null ? DEFAULT_CONTENT_TYPE : pair.getMimeType();
+		this.data = pair.getData();
+		this.file = this.data == null ? pair.getFile() : null;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String getOriginalFilename() {
+		return originalFilename;
+	}
+
+	@Override
+	public String getContentType() {
+		return contentType;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return getSize() == 0;
+	}
+
+	@Override
+	public long getSize() {
+		if (data != null) {
+			return data.length;
+		}
+		return file == null ? 0 : file.length();
+	}
+
+	@Override
+	public byte[] getBytes() throws IOException {
+		if (data != null) {
+			return data.clone();
+		}
+		return file == null ? new byte[0] : FileCopyUtils.copyToByteArray(file);
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (data != null) {
+			return new ByteArrayInputStream(data);
+		}
+		return file == null ? new ByteArrayInputStream(new byte[0]) : new FileInputStream(file);
+	}
+
+	@Override
+	public void transferTo(File dest) throws IOException, IllegalStateException {
+		if (data != null) {
+			FileCopyUtils.copy(data, dest);
+		}
+		else if (file != null) {
+			FileCopyUtils.copy(file, dest);
+		}
+		else {
+			FileCopyUtils.copy(new byte[0], dest);
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.CookieManager;
+
+/**
+ * <p>
+ * A pool of keep-alive HTTP connections that is shared by the {@link LoopbackWebConnection}
+ * instances it creates. HtmlUnit's default connection keeps its connections per
+ * {@link com.gargoylesoftware.htmlunit.WebClient}, so every new client opens new sockets.
+ * Using a single pool for the tests of a class or a suite lets each client reuse the
+ * connections to stub servers that are started locally.
+ * </p>
+ *
+ * <pre>
+ * LoopbackConnectionPool pool = new LoopbackConnectionPool();
+ *
+ * WebClient webClient = MockMvcWebClientBuilder
+ *     .mockMvcSetup(mockMvc)
+ *     .useLoopbackConnections(pool, "127.0.0.1:9090")
+ *     .createWebClient();
+ * ...
+ * pool.close();
+ * </pre>
+ *
+ * <p>
+ * The connections do not use a proxy and are not pipelined. Connecting, waiting for
+ * response data and waiting for a free connection of the pool each fail after the
+ * timeout of the pool, so a hanging stub server does not hang the test. The pool is
+ * thread safe.
+ * </p>
+ *
+ * @see LoopbackWebConnection
+ * @see MockMvcWebConnectionBuilderSupport#useLoopbackConnections(LoopbackConnectionPool, String...)
+ */
+public final class LoopbackConnectionPool {
+	/**
+	 * The default maximum number of connections.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/**
+	 * The default timeout in milliseconds.
+	 */
+	public static final int DEFAULT_TIMEOUT = 30000;
+
+	private static final int VALIDATE_AFTER_INACTIVITY = 1000;
+
+	private final PoolingHttpClientConnectionManager connectionManager;
+
+	private final RequestConfig requestConfig;
+
+	private final CloseableHttpClient httpClient;
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	private final AtomicLong connectCount = new AtomicLong();
+
+	/**
+	 * Creates a new instance with at most {@link #DEFAULT_MAX_CONNECTIONS} connections and
+	 * a timeout of {@link #DEFAULT_TIMEOUT}.
+	 */
+	public LoopbackConnectionPool() {
+		this(DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Creates a new instance with a timeout of {@link #DEFAULT_TIMEOUT}.
+	 *
+	 * @param maxConnections the maximum number of connections, which is also the maximum
+	 * number per host and port. Must be greater than 0.
+	 */
+	public LoopbackConnectionPool(int maxConnections) {
+		this(maxConnections, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param maxConnections the maximum number of connections, which is also the maximum
+	 * number per host and port. Must be greater than 0.
+	 * @param timeout the timeout in milliseconds for connecting, for waiting for response
+	 * data and for waiting for a free connection or 0 to wait forever. Cannot be negative.
+	 */
+	public LoopbackConnectionPool(int maxConnections, int timeout) {
+		Assert.isTrue(maxConnections > 0, "maxConnections must be greater than 0");
+		Assert.isTrue(timeout >= 0, "timeout cannot be negative");
+		this.requestConfig = RequestConfig.custom()
+				.setConnectTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.setConnectionRequestTimeout(timeout)
+				.build();
+		this.connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder
+				.<ConnectionSocketFactory> create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", SSLConnectionSocketFactory.getSocketFactory()).build(),
+				new CountingConnectionFactory());
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+		// a stub server may close an idle connection at any time
+		this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.disableRedirectHandling()
+				.build();
+	}
+
+	/**
+	 * Creates a {@link LoopbackWebConnection} that uses this pool. The connection has its
+	 * own cookies, so a new connection should be created for each
+	 * {@link com.gargoylesoftware.htmlunit.WebClient}.
+	 *
+	 * @return a new {@link LoopbackWebConnection}
+	 * @see #createConnection(CookieManager)
+	 */
+	public LoopbackWebConnection createConnection() {
+		return new LoopbackWebConnection(this);
+	}
+
+	/**
+	 * Creates a {@link LoopbackWebConnection} that uses this pool and the cookies of the
+	 * specified {@link CookieManager}.
+	 *
+	 * @param cookieManager the {@link CookieManager} of the
+	 * {@link com.gargoylesoftware.htmlunit.WebClient} that uses the connection. Cannot be
+	 * null.
+	 * @return a new {@link LoopbackWebConnection}
+	 */
+	public LoopbackWebConnection createConnection(CookieManager cookieManager) {
+		return new LoopbackWebConnection(this, cookieManager);
+	}
+
+	/**
+	 * Creates a builder for the configuration of a request that keeps the timeouts of this
+	 * pool, since a request's own configuration replaces the default one.
+	 */
+	RequestConfig.Builder requestConfig() {
+		return RequestConfig.copy(requestConfig);
+	}
+
+	CloseableHttpResponse execute(HttpUriRequest request, HttpClientContext context) throws IOException {
+		requestCount.incrementAndGet();
+		return httpClient.execute(request, context);
+	}
+
+	/**
+	 * The number of requests that have been sent using this pool.
+	 *
+	 * @return the number of requests that have been sent
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * The number of connections that have been opened. The fewer connections are opened
+	 * for the same number of requests, the better the connections are reused.
+	 *
+	 * @return the number of connections that have been opened
+	 */
+	public long getConnectCount() {
+		return connectCount.get();
+	}
+
+	/**
+	 * The number of connections that are currently used by a request.
+	 *
+	 * @return the number of connections that are currently used by a request
+	 */
+	public int getLeasedCount() {
+		return totalStats().getLeased();
+	}
+
+	/**
+	 * The number of idle connections that are kept alive for reuse.
+	 *
+	 * @return the number of idle connections
+	 */
+	public int getAvailableCount() {
+		return totalStats().getAvailable();
+	}
+
+	/**
+	 * The number of requests that are waiting for a connection because the maximum number
+	 * of connections are in use.
+	 *
+	 * @return the number of requests that are waiting for a connection
+	 */
+	public int getPendingCount() {
+		return totalStats().getPending();
+	}
+
+	/**
+	 * The maximum number of connections.
+	 *
+	 * @return the maximum number of connections
+	 */
+	public int getMaxConnections() {
+		return totalStats().getMax();
+	}
+
+	/**
+	 * The timeout in milliseconds for connecting, for waiting for response data and for
+	 * waiting for a free connection.
+	 *
+	 * @return the timeout in milliseconds or 0 if requests wait forever
+	 */
+	public int getTimeout() {
+		return requestConfig.getSocketTimeout();
+	}
+
+	/**
+	 * Closes all connections. The {@link LoopbackWebConnection} instances of this pool
+	 * cannot be used afterwards.
+	 */
+	public void close() {
+		try {
+			httpClient.close();
+		}
+		catch (IOException ignore) {
+		}
+		connectionManager.shutdown();
+	}
+
+	private PoolStats totalStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * Counts the connections that are opened.
+	 */
+	private final class CountingConnectionFactory implements HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> {
+		public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+			connectCount.incrementAndGet();
+			return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.config.CookieSpecs;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+import com.gargoylesoftware.htmlunit.FormEncodingType;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.HttpWebConnection;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.httpclient.HtmlUnitCookieStore;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * <p>
+ * A {@link WebConnection} that sends requests over the keep-alive connections of a
+ * {@link LoopbackConnectionPool}. It is intended for requests to servers that are started
+ * locally by a test, such as stub servers, that are not processed by
+ * {@link org.springframework.test.web.servlet.MockMvc}.
+ * </p>
+ * <p>
+ * The cookies are kept in a {@link CookieManager}, which is typically the one of the
+ * {@link com.gargoylesoftware.htmlunit.WebClient} that uses the connection. Cookies are
+ * neither sent nor stored if the {@link CookieManager} has cookies disabled.
+ * </p>
+ *
+ * @see LoopbackConnectionPool#createConnection()
+ */
+public final class LoopbackWebConnection implements WebConnection {
+	private final LoopbackConnectionPool pool;
+
+	private final CookieManager cookieManager;
+
+	private int maxInMemory = MockMvcWebConnection.DEFAULT_MAX_IN_MEMORY;
+
+	/**
+	 * Creates a new instance with its own cookies.
+	 *
+	 * @param pool the {@link LoopbackConnectionPool} to use. Cannot be null.
+	 */
+	public LoopbackWebConnection(LoopbackConnectionPool pool) {
+		this(pool, new CookieManager());
+	}
+
+	/**
+	 * Creates a new instance that sends and stores cookies using the specified
+	 * {@link CookieManager}.
+	 *
+	 * @param pool the {@link LoopbackConnectionPool} to use. Cannot be null.
+	 * @param cookieManager the {@link CookieManager} to use, typically the one of the
+	 * {@link com.gargoylesoftware.htmlunit.WebClient}. Cannot be null.
+	 */
+	public LoopbackWebConnection(LoopbackConnectionPool pool, CookieManager cookieManager) {
+		Assert.notNull(pool, "pool cannot be null");
+		Assert.notNull(cookieManager, "cookieManager cannot be null");
+		this.pool = pool;
+		this.cookieManager = cookieManager;
+	}
+
+	/**
+	 * Sets the largest response body in bytes that is kept in memory. Larger bodies are
+	 * written to a temporary file. The default is
+	 * {@link MockMvcWebConnection#DEFAULT_MAX_IN_MEMORY}.
+	 *
+	 * @param maxInMemory the largest response body in bytes that is kept in memory or 0
+	 * to always keep the body in memory. Cannot be negative.
+	 */
+	public void setMaxInMemory(int maxInMemory) {
+		Assert.isTrue(maxInMemory >= 0, "maxInMemory cannot be negative");
+		this.maxInMemory = maxInMemory;
+	}
+
+	public WebResponse getResponse(WebRequest webRequest) throws IOException {
+		long startTime = System.currentTimeMillis();
+		HttpClientContext context = HttpClientContext.create();
+		context.setCookieStore(new HtmlUnitCookieStore(cookieManager));
+		Credentials credentials = webRequest.getCredentials();
+		if (credentials == null) {
+			credentials = webRequest.getUrlCredentials();
+		}
+		if (credentials != null) {
+			BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+			credentialsProvider.setCredentials(AuthScope.ANY, credentials);
+			context.setCredentialsProvider(credentialsProvider);
+		}
+
+		CloseableHttpResponse response = pool.execute(request(webRequest).build(), context);
+		try {
+			HttpEntity entity = response.getEntity();
+			DownloadedContent content = entity == null ? new DownloadedContent.InMemory(new byte[0])
+					: HttpWebConnection.downloadContent(entity.getContent(), maxInMemory);
+			EntityUtils.consume(entity);
+			List<NameValuePair> headers = new ArrayList<NameValuePair>();
+			for (Header header : response.getAllHeaders()) {
+				headers.add(new NameValuePair(header.getName(), header.getValue()));
+			}
+			WebResponseData data = new WebResponseData(content, response.getStatusLine().getStatusCode(),
+					response.getStatusLine().getReasonPhrase(), headers);
+			return new WebResponse(data, webRequest, System.currentTimeMillis() - startTime);
+		}
+		finally {
+			response.close();
+		}
+	}
+
+	private RequestBuilder request(WebRequest webRequest) throws IOException {
+		RequestBuilder request = RequestBuilder.create(webRequest.getHttpMethod().name());
+		try {
+			request.setUri(webRequest.getUrl().toURI());
+		}
+		catch (URISyntaxException e) {
+			throw (IOException) new IOException("Invalid URL " + webRequest.getUrl()).initCause(e);
+		}
+		if (!cookieManager.isCookiesEnabled()) {
+			request.setConfig(pool.requestConfig().setCookieSpec(CookieSpecs.IGNORE_COOKIES).build());
+		}
+
+		HttpEntity entity = entity(webRequest);
+		for (Map.Entry<String, String> header : webRequest.getAdditionalHeaders().entrySet()) {
+			String name = header.getKey();
+			// the length is determined by the entity and a form determines its own type
+			if ("Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)
+					|| (entity != null && webRequest.getRequestBody() == null && "Content-Type".equalsIgnoreCase(name))) {
+				continue;
+			}
+			request.addHeader(name, header.getValue());
+		}
+		if (entity != null) {
+			request.setEntity(entity);
+		}
+		else if (!hasBody(webRequest.getHttpMethod())) {
+			for (NameValuePair parameter : webRequest.getRequestParameters()) {
+				request.addParameter(parameter.getName(), parameter.getValue());
+			}
+		}
+		return request;
+	}
+
+	private HttpEntity entity(WebRequest webRequest) {
+		if (!hasBody(webRequest.getHttpMethod())) {
+			return null;
+		}
+		String charset = webRequest.getCharset();
+		String body = webRequest.getRequestBody();
+		if (body != null) {
+			return new StringEntity(body, ContentType.create("text/plain", charset));
+		}
+		List<NameValuePair> parameters = webRequest.getRequestParameters();
+		if (FormEncodingType.MULTIPART == webRequest.getEncodingType()) {
+			return multipart(parameters, Charset.forName(charset));
+		}
+		List<org.apache.http.NameValuePair> pairs = new ArrayList<org.apache.http.NameValuePair>();
+		for (NameValuePair parameter : parameters) {
+			pairs.add(new BasicNameValuePair(parameter.getName(), parameter.getValue()));
+		}
+		return new UrlEncodedFormEntity(pairs, Charset.forName(charset));
+	}
+
+	private HttpEntity multipart(List<NameValuePair> parameters, Charset charset) {
+		MultipartEntityBuilder builder = MultipartEntityBuilder.create().setLaxMode().setCharset(charset);
+		ContentType textType = ContentType.create("text/plain", charset);
+		for (NameValuePair parameter : parameters) {
+			if (!(parameter instanceof KeyDataPair)) {
+				builder.addTextBody(parameter.getName(), parameter.getValue(), textType);
+				continue;
+			}
+			KeyDataPair file = (KeyDataPair) parameter;
+			ContentType fileType = file.getMimeType() == null ? ContentType.DEFAULT_BINARY : ContentType
+					.parse(file.getMimeType());
+			if (file.getData() != null) {
+				builder.addBinaryBody(file.getName(), file.getData(), fileType, file.getValue());
+			}
+			else if (file.getFile() != null) {
+				builder.addBinaryBody(file.getName(), file.getFile(), fileType, file.getValue());
+			}
+			else {
+				builder.addBinaryBody(file.getName(), new byte[0], fileType, file.getValue());
+			}
+		}
+		return builder.build();
+	}
+
+	private static boolean hasBody(HttpMethod method) {
+		// compared by name since older HtmlUnit versions have no HttpMethod.PATCH
+		return method == HttpMethod.POST || method == HttpMethod.PUT || "PATCH".equals(method.name());
+	}
+}
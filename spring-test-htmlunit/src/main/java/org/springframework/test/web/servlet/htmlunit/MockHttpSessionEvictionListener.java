@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import org.springframework.mock.web.MockHttpSession;
+
+/**
+ * Callback that is notified when a {@link ConcurrentMockHttpSessionStore} evicts a
+ * session because it was idle for too long or because the store was full.
+ *
+ * @since 1.0
+ * @see ConcurrentMockHttpSessionStore#setEvictionListener(MockHttpSessionEvictionListener)
+ */
+public interface MockHttpSessionEvictionListener {
+
+	/**
+	 * Invoked after the session has been removed from the store, but before it is
+	 * invalidated. This means the attributes of the session can still be read.
+	 *
+	 * @param session the session that was evicted
+	 */
+	void sessionEvicted(MockHttpSession session);
+}
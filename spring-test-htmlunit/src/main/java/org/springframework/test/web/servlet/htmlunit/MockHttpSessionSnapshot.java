@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.util.Assert;
+import org.springframework.util.SerializationUtils;
+
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+
+/**
+ * <p>
+ * A copy of the {@link javax.servlet.http.HttpSession}s that a
+ * {@link MockMvcWebConnection} manages, together with the cookies that refer to them.
+ * It is created with {@link MockMvcWebConnection#snapshot()} and applied to another
+ * connection with {@link MockMvcWebConnection#restore(MockHttpSessionSnapshot)}. This
+ * allows an expensive setup, such as logging in, to be performed once and reused by
+ * many tests.
+ * </p>
+ * <p>
+ * Each restore creates new sessions with new ids, so a snapshot can be restored any
+ * number of times, even into connections that share a {@link MockHttpSessionStore}.
+ * Changes to a restored session are not visible to the snapshot or to other restored
+ * sessions. Attribute values that are {@link Serializable} are copied by serializing
+ * them when the snapshot is taken and deserializing them on each restore. Strings,
+ * primitive wrappers, and enums are shared since they are immutable. Any other value is
+ * shared by reference.
+ * </p>
+ *
+ * @see MockMvcWebConnection#snapshot()
+ */
+public final class MockHttpSessionSnapshot {
+	private final List<SessionState> sessions;
+
+	private MockHttpSessionSnapshot(List<SessionState> sessions) {
+		this.sessions = sessions;
+	}
+
+	/**
+	 * The number of sessions in this snapshot.
+	 *
+	 * @return the number of sessions in this snapshot
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Copies the sessions that the cookies of the {@link CookieManager} refer to.
+	 *
+	 * @param sessionStore the {@link MockHttpSessionStore} to look up the sessions in
+	 * @param cookieManager the {@link CookieManager} that holds the session cookies
+	 * @return the snapshot
+	 */
+	static MockHttpSessionSnapshot capture(MockHttpSessionStore sessionStore, CookieManager cookieManager) {
+		List<SessionState> sessions = new ArrayList<SessionState>();
+		for (Cookie cookie : cookieManager.getCookies()) {
+			MockHttpSession session = sessionStore.getSession(cookie.getValue());
+			if (session != null && !session.isInvalid()) {
+				sessions.add(new SessionState(cookie, session));
+			}
+		}
+		return new MockHttpSessionSnapshot(Collections.unmodifiableList(sessions));
+	}
+
+	/**
+	 * Adds a copy of each session to the {@link MockHttpSessionStore} and a cookie that
+	 * refers to it to the {@link CookieManager}.
+	 *
+	 * @param sessionStore the {@link MockHttpSessionStore} to add the sessions to
+	 * @param cookieManager the {@link CookieManager} to add the session cookies to
+	 */
+	void restore(MockHttpSessionStore sessionStore, CookieManager cookieManager) {
+		for (SessionState state : sessions) {
+			Cookie cookie = state.newCookie(UUID.randomUUID().toString());
+			RestoredMockHttpSession session = new RestoredMockHttpSession(state.servletContext, cookie,
+					sessionStore, cookieManager);
+			session.setMaxInactiveInterval(state.maxInactiveInterval);
+			for (Map.Entry<String, Object> attribute : state.copyAttributes().entrySet()) {
+				session.setAttribute(attribute.getKey(), attribute.getValue());
+			}
+			session.setNew(false);
+			Assert.state(sessionStore.putSessionIfAbsent(session) == null, "A session with the id "
+					+ session.getId() + " is already stored");
+			cookieManager.addCookie(cookie);
+		}
+	}
+
+	/**
+	 * The copied state of a single session.
+	 */
+	private static final class SessionState {
+		private final Cookie cookie;
+
+		private final ServletContext servletContext;
+
+		private final int maxInactiveInterval;
+
+		private final Map<String, Object> sharedAttributes = new HashMap<String, Object>();
+
+		private final Map<String, byte[]> serializedAttributes = new HashMap<String, byte[]>();
+
+		private SessionState(Cookie cookie, MockHttpSession session) {
+			this.cookie = cookie;
+			this.servletContext = session.getServletContext();
+			this.maxInactiveInterval = session.getMaxInactiveInterval();
+			Enumeration<String> names = session.getAttributeNames();
+			while (names.hasMoreElements()) {
+				String name = names.nextElement();
+				Object value = session.getAttribute(name);
+				if (isImmutable(value) || !(value instanceof Serializable)) {
+					sharedAttributes.put(name, value);
+					continue;
+				}
+				try {
+					serializedAttributes.put(name, SerializationUtils.serialize(value));
+				}
+				catch (IllegalArgumentException notSerializable) {
+					sharedAttributes.put(name, value);
+				}
+			}
+		}
+
+		private Map<String, Object> copyAttributes() {
+			Map<String, Object> result = new HashMap<String, Object>(sharedAttributes);
+			for (Map.Entry<String, byte[]> attribute : serializedAttributes.entrySet()) {
+				result.put(attribute.getKey(), SerializationUtils.deserialize(attribute.getValue()));
+			}
+			return result;
+		}
+
+		private Cookie newCookie(String sessionId) {
+			return new Cookie(cookie.getDomain(), cookie.getName(), sessionId, cookie.getPath(), cookie.getExpires(),
+					cookie.isSecure(), cookie.isHttpOnly());
+		}
+
+		private static boolean isImmutable(Object value) {
+			return value instanceof String || value instanceof Boolean || value instanceof Character
+					|| value instanceof Integer || value instanceof Long || value instanceof Short
+					|| value instanceof Byte || value instanceof Double || value instanceof Float
+					|| value instanceof Enum;
+		}
+	}
+
+	/**
+	 * A restored session that, like the sessions created by {@link HtmlUnitRequestBuilder},
+	 * is removed from the managed sessions along with its cookie when it is invalidated.
+	 */
+	private static final class RestoredMockHttpSession extends MockHttpSession {
+		private final Cookie cookie;
+
+		private final MockHttpSessionStore sessionStore;
+
+		private final CookieManager cookieManager;
+
+		private RestoredMockHttpSession(ServletContext servletContext, Cookie cookie,
+				MockHttpSessionStore sessionStore, CookieManager cookieManager) {
+			super(servletContext, cookie.getValue());
+			this.cookie = cookie;
+			this.sessionStore = sessionStore;
+			this.cookieManager = cookieManager;
+		}
+
+		public void invalidate() {
+			super.invalidate();
+			sessionStore.removeSession(this);
+			cookieManager.removeCookie(cookie);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import javax.servlet.http.HttpSession;
+
+import org.springframework.mock.web.MockHttpSession;
+
+/**
+ * <p>
+ * Strategy for storing the {@link MockHttpSession} instances that a
+ * {@link MockMvcWebConnection} manages on behalf of HtmlUnit. The sessions are looked up
+ * by the JSESSIONID cookie of each request.
+ * </p>
+ * <p>
+ * Implementations must be thread safe since HtmlUnit loads resources and runs
+ * JavaScript on background threads, and a single store may be shared by several
+ * connections.
+ * </p>
+ *
+ * @since 1.0
+ * @see ConcurrentMockHttpSessionStore
+ */
+public interface MockHttpSessionStore {
+
+	/**
+	 * Obtains the session with the given {@link HttpSession#getId()}.
+	 *
+	 * @param sessionId the id of the session to look up
+	 * @return the session or null if no session is stored for the id
+	 */
+	MockHttpSession getSession(String sessionId);
+
+	/**
+	 * Stores the session unless a session with the same id is already stored. The
+	 * check and the store happen atomically.
+	 *
+	 * @param session the session to store. Cannot be null.
+	 * @return the session that was already stored for the id, or null if the given
+	 * session was stored
+	 */
+	MockHttpSession putSessionIfAbsent(MockHttpSession session);
+
+	/**
+	 * Removes the session if it is the session currently stored for its id.
+	 *
+	 * @param session the session to remove. Cannot be null.
+	 * @return true if the session was removed, else false
+	 */
+	boolean removeSession(MockHttpSession session);
+
+	/**
+	 * The number of sessions that are currently stored.
+	 *
+	 * @return the number of sessions that are currently stored
+	 */
+	int getSessionCount();
+}
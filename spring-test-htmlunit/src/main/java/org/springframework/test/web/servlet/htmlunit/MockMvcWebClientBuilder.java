@@ -91,7 +91,7 @@ public class MockMvcWebClientBuilder extends MockMvcWebConnectionBuilderSupport<
 	 * @return the WebClient to use
 	 */
 	public WebClient configureWebClient(WebClient webClient) {
-		webClient.setWebConnection(createConnection(webClient.getWebConnection()));
+		webClient.setWebConnection(createConnection(webClient.getWebConnection(), webClient.getCookieManager()));
 		return webClient;
 	}
 }
\ No newline at end of file
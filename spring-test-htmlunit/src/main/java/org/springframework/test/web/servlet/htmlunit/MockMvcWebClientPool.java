@@ -0,0 +1,166 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import javax.servlet.ServletContext;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.util.Assert;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * <p>
+ * A pool of WebClient instances that are configured by a {@link MockMvcWebClientBuilder}.
+ * For example:
+ * </p>
+ *
+ * <pre>
+ * MockMvcWebClientPool pool = MockMvcWebClientPool.forContext(context);
+ *
+ * WebClient webClient = pool.checkout();
+ * try {
+ *     ... use webClient as normal ...
+ * }
+ * finally {
+ *     pool.release(webClient);
+ * }
+ * </pre>
+ * <p>
+ * See {@link WebClientPoolSupport} for how a WebClient is reset when it is released.
+ * {@link MockMvcWebClientTestExecutionListener} can be used to check out and release the
+ * WebClient for each test automatically.
+ * </p>
+ *
+ * @see MockMvcWebClientTestExecutionListener
+ */
+public final class MockMvcWebClientPool extends WebClientPoolSupport<WebClient> {
+	/**
+	 * The default maximum number of idle WebClient instances that are kept.
+	 */
+	public static final int DEFAULT_MAX_IDLE = 8;
+
+	private static final String POOL_ATTRIBUTE = MockMvcWebClientPool.class.getName();
+
+	private final MockMvcWebClientBuilder builder;
+
+	/**
+	 * Creates a new instance that keeps up to {@link #DEFAULT_MAX_IDLE} idle WebClient
+	 * instances.
+	 *
+	 * @param builder the {@link MockMvcWebClientBuilder} used to configure the WebClient
+	 * instances. It must not be modified once the pool is in use. Cannot be null.
+	 */
+	public MockMvcWebClientPool(MockMvcWebClientBuilder builder) {
+		this(builder, DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param builder the {@link MockMvcWebClientBuilder} used to configure the WebClient
+	 * instances. It must not be modified once the pool is in use. Cannot be null.
+	 * @param maxIdle the maximum number of idle WebClient instances that are kept. Must
+	 * be positive.
+	 */
+	public MockMvcWebClientPool(MockMvcWebClientBuilder builder, int maxIdle) {
+		super(maxIdle);
+		Assert.notNull(builder, "builder cannot be null");
+		this.builder = builder;
+	}
+
+	/**
+	 * Obtains the pool that is attached to the {@link WebApplicationContext}, creating it
+	 * using {@link MockMvcWebClientBuilder#webAppContextSetup(WebApplicationContext)} the
+	 * first time. Since the Spring TestContext Framework caches the
+	 * {@link WebApplicationContext} across tests, so is the pool. If the
+	 * {@link WebApplicationContext} is a {@link ConfigurableApplicationContext}, the pool
+	 * is closed when the context is closed, such as after {@code @DirtiesContext}.
+	 *
+	 * @param context the {@link WebApplicationContext} to obtain the pool for. Cannot be
+	 * null.
+	 * @return the pool that is attached to the {@link WebApplicationContext}
+	 */
+	public static MockMvcWebClientPool forContext(WebApplicationContext context) {
+		Assert.notNull(context, "context cannot be null");
+		ServletContext servletContext = context.getServletContext();
+		Assert.notNull(servletContext, "context must have a ServletContext");
+		synchronized (MockMvcWebClientPool.class) {
+			MockMvcWebClientPool pool = (MockMvcWebClientPool) servletContext.getAttribute(POOL_ATTRIBUTE);
+			if (pool == null) {
+				pool = new MockMvcWebClientPool(MockMvcWebClientBuilder.webAppContextSetup(context));
+				servletContext.setAttribute(POOL_ATTRIBUTE, pool);
+				if (context instanceof ConfigurableApplicationContext) {
+					((ConfigurableApplicationContext) context).addApplicationListener(new ClosePoolListener(
+							context, pool));
+				}
+			}
+			return pool;
+		}
+	}
+
+	@Override
+	protected WebClient create() {
+		return new WebClient();
+	}
+
+	@Override
+	protected WebClient getWebClient(WebClient webClient) {
+		return webClient;
+	}
+
+	@Override
+	protected void configure(WebClient webClient) {
+		builder.configureWebClient(webClient);
+	}
+
+	@Override
+	protected void destroy(WebClient webClient) {
+		webClient.close();
+	}
+
+	/**
+	 * Closes the pool of a {@link WebApplicationContext} once it is closed.
+	 */
+	private static final class ClosePoolListener implements ApplicationListener<ContextClosedEvent> {
+		private final WebApplicationContext context;
+
+		private final MockMvcWebClientPool pool;
+
+		private ClosePoolListener(WebApplicationContext context, MockMvcWebClientPool pool) {
+			this.context = context;
+			this.pool = pool;
+		}
+
+		@Override
+		public void onApplicationEvent(ContextClosedEvent event) {
+			// child contexts also publish their events to this context
+			if (event.getApplicationContext() != context) {
+				return;
+			}
+			synchronized (MockMvcWebClientPool.class) {
+				ServletContext servletContext = context.getServletContext();
+				if (servletContext.getAttribute(POOL_ATTRIBUTE) == pool) {
+					servletContext.removeAttribute(POOL_ATTRIBUTE);
+				}
+			}
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.ReflectionUtils.FieldCallback;
+import org.springframework.util.ReflectionUtils.FieldFilter;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * <p>
+ * A TestExecutionListener that checks out a WebClient from the
+ * {@link MockMvcWebClientPool} of the test's {@link WebApplicationContext} before each
+ * test method and releases it afterwards. The WebClient is assigned to every field of
+ * the test instance of type WebClient that is null, so it is available in
+ * {@code @Before} methods. For example:
+ * </p>
+ *
+ * <pre>
+ * &#064;RunWith(SpringJUnit4ClassRunner.class)
+ * &#064;ContextConfiguration
+ * &#064;WebAppConfiguration
+ * &#064;TestExecutionListeners(listeners = MockMvcWebClientTestExecutionListener.class, mergeMode = MergeMode.MERGE_WITH_DEFAULTS)
+ * public class MyTests {
+ *     WebClient webClient;
+ *
+ *     ... use webClient as normal ...
+ * }
+ * </pre>
+ * <p>
+ * The WebClient is also available from {@link #getWebClient(TestContext)}. Tests whose
+ * ApplicationContext is not a {@link WebApplicationContext} are ignored.
+ * </p>
+ *
+ * @see MockMvcWebClientPool#forContext(WebApplicationContext)
+ */
+public class MockMvcWebClientTestExecutionListener extends AbstractTestExecutionListener {
+	private static final String WEB_CLIENT_ATTRIBUTE = MockMvcWebClientTestExecutionListener.class.getName()
+			+ ".WEB_CLIENT";
+
+	private static final String POOL_ATTRIBUTE = MockMvcWebClientTestExecutionListener.class.getName() + ".POOL";
+
+	private static final FieldFilter WEB_CLIENT_FIELDS = new FieldFilter() {
+		public boolean matches(Field field) {
+			return field.getType() == WebClient.class && !Modifier.isStatic(field.getModifiers());
+		}
+	};
+
+	/**
+	 * Obtains the WebClient that is checked out for the current test method.
+	 *
+	 * @param testContext the TestContext of the current test
+	 * @return the WebClient or null if none is checked out
+	 */
+	public static WebClient getWebClient(TestContext testContext) {
+		return (WebClient) testContext.getAttribute(WEB_CLIENT_ATTRIBUTE);
+	}
+
+	@Override
+	public void beforeTestMethod(TestContext testContext) throws Exception {
+		ApplicationContext context = testContext.getApplicationContext();
+		if (!(context instanceof WebApplicationContext)) {
+			return;
+		}
+		MockMvcWebClientPool pool = MockMvcWebClientPool.forContext((WebApplicationContext) context);
+		WebClient webClient = pool.checkout();
+		testContext.setAttribute(WEB_CLIENT_ATTRIBUTE, webClient);
+		testContext.setAttribute(POOL_ATTRIBUTE, pool);
+		setFields(testContext.getTestInstance(), null, webClient);
+	}
+
+	@Override
+	public void afterTestMethod(TestContext testContext) throws Exception {
+		WebClient webClient = (WebClient) testContext.removeAttribute(WEB_CLIENT_ATTRIBUTE);
+		MockMvcWebClientPool pool = (MockMvcWebClientPool) testContext.removeAttribute(POOL_ATTRIBUTE);
+		if (webClient == null) {
+			return;
+		}
+		setFields(testContext.getTestInstance(), webClient, null);
+		// the context may have attached a new pool in the meantime, e.g. after it was closed
+		pool.release(webClient);
+	}
+
+	/**
+	 * Sets the WebClient fields of the test instance that currently hold the expected
+	 * value.
+	 */
+	private static void setFields(final Object testInstance, final WebClient expected, final WebClient value) {
+		ReflectionUtils.doWithFields(testInstance.getClass(), new FieldCallback() {
+			public void doWith(Field field) throws IllegalAccessException {
+				ReflectionUtils.makeAccessible(field);
+				if (field.get(testInstance) == expected) {
+					field.set(testInstance, value);
+				}
+			}
+		}, WEB_CLIENT_FIELDS);
+	}
+}
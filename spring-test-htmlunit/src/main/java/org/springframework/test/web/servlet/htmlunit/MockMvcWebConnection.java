@@ -13,16 +13,28 @@
 package org.springframework.test.web.servlet.htmlunit;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.htmlunit.webdriver.WebConnectionHtmlUnitDriver;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.util.Assert;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import com.gargoylesoftware.htmlunit.CookieManager;
 import com.gargoylesoftware.htmlunit.WebConnection;
@@ -30,6 +42,7 @@ import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 
 /**
  * <p>
@@ -48,19 +61,67 @@ import javax.servlet.http.HttpServletRequest;
  *
  * ... use webClient as normal ...
  * </pre>
+ * <p>
+ * An instance tracks the cookies of a single client, so it should not be shared by
+ * multiple {@link com.gargoylesoftware.htmlunit.WebClient} instances. To load pages from
+ * many clients in parallel against the same {@link MockMvc}, give each client its own
+ * connection using {@link #forClient()}:
+ * </p>
+ *
+ * <pre>
+ * MockMvcWebConnection webConnection = new MockMvcWebConnection(mockMvc);
+ *
+ * // on each thread
+ * WebClient webClient = new WebClient();
+ * webClient.setWebConnection(webConnection.forClient());
+ * </pre>
  *
  * @author Rob Winch
  * @see WebConnectionHtmlUnitDriver
  */
 public final class MockMvcWebConnection implements WebConnection {
+	/**
+	 * The default largest response body in bytes that is kept in memory. This matches the
+	 * default of {@link com.gargoylesoftware.htmlunit.WebClientOptions#getMaxInMemory()}.
+	 */
+	public static final int DEFAULT_MAX_IN_MEMORY = 500 * 1024;
+
+	/**
+	 * The default maximum number of forwards for a single request.
+	 */
+	public static final int DEFAULT_MAX_FORWARDS = 20;
+
+	/**
+	 * The default number of milliseconds to wait for asynchronous request processing.
+	 */
+	public static final long DEFAULT_ASYNC_TIMEOUT = 10000;
+
+	/**
+	 * The name of the request attribute that holds the number of times the current request
+	 * has been forwarded. It is not set if the request has not been forwarded.
+	 */
+	public static final String FORWARD_COUNT_ATTRIBUTE = MockMvcWebConnection.class.getName() + ".FORWARD_COUNT";
+
 	private final CookieManager cookieManager;
 
-	private final Map<String, MockHttpSession> sessions = new HashMap<String, MockHttpSession>();
+	private final MockHttpSessionStore sessions;
 
 	private final MockMvc mockMvc;
 
 	private final String contextPath;
 
+	private int maxInMemory = DEFAULT_MAX_IN_MEMORY;
+
+	private int maxForwards = DEFAULT_MAX_FORWARDS;
+
+	private long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+
+	private final List<RequestTimingsListener> timingsListeners = new CopyOnWriteArrayList<RequestTimingsListener>();
+
+	private volatile WebConnectionMetrics metrics = NoOpWebConnectionMetrics.INSTANCE;
+
+	private ParentRequestTemplate.Cache parentTemplates = new ParentRequestTemplate.Cache();
+
 	/**
 	 * Creates a new instance that assumes the context root of the application is "". For example,
 	 * the URL http://localhost/test/this would use "" as the context root.
@@ -80,32 +141,245 @@ public final class MockMvcWebConnection implements WebConnection {
 	 * can be empty string or it must start with a "/" and not end in a "/".
 	 */
 	public MockMvcWebConnection(MockMvc mockMvc, String contextPath) {
+		this(mockMvc, contextPath, new ConcurrentMockHttpSessionStore());
+	}
+
+	/**
+	 * Creates a new instance with a specified context root and {@link MockHttpSessionStore}.
+	 *
+	 * @param mockMvc the MockMvc instance to use
+	 * @param contextPath the contextPath to use. The value may be null in which case the first path segment of the URL is turned
+	 * into the contextPath. Otherwise it must conform to {@link HttpServletRequest#getContextPath()} which states it
+	 * can be empty string or it must start with a "/" and not end in a "/".
+	 * @param sessionStore the {@link MockHttpSessionStore} used to hold the managed sessions. Cannot be null.
+	 */
+	public MockMvcWebConnection(MockMvc mockMvc, String contextPath, MockHttpSessionStore sessionStore) {
 		Assert.notNull(mockMvc, "mockMvc cannot be null");
+		Assert.notNull(sessionStore, "sessionStore cannot be null");
 		validateContextPath(contextPath);
 
 		this.mockMvc = mockMvc;
 		this.cookieManager = new CookieManager();
 		this.contextPath = contextPath;
+		this.sessions = sessionStore;
+	}
+
+	/**
+	 * <p>
+	 * Creates a MockMvcWebConnection for another client. The new connection shares the
+	 * {@link MockMvc}, the contextPath, the {@link MockHttpSessionStore}, and the other
+	 * settings of this instance, but it has its own cookies. Each client therefore only
+	 * sees its own {@link javax.servlet.http.HttpSession}.
+	 * </p>
+	 * <p>
+	 * The connections may be used concurrently, provided the {@link MockHttpSessionStore}
+	 * is thread safe as is the case for {@link ConcurrentMockHttpSessionStore}.
+	 * </p>
+	 *
+	 * @return a new MockMvcWebConnection with its own cookies
+	 */
+	public MockMvcWebConnection forClient() {
+		MockMvcWebConnection result = new MockMvcWebConnection(mockMvc, contextPath, sessions);
+		result.setMaxInMemory(maxInMemory);
+		result.setMaxForwards(maxForwards);
+		result.setAsyncTimeout(asyncTimeout);
+		result.timingsListeners.addAll(timingsListeners);
+		result.setMetrics(metrics);
+		result.parentTemplates = parentTemplates;
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Copies the {@link HttpSession}s of this client along with the cookies that refer to
+	 * them. The snapshot can be restored into other connections using
+	 * {@link #restore(MockHttpSessionSnapshot)}. For example, a test class can log in once
+	 * and have each test start from the logged in state:
+	 * </p>
+	 *
+	 * <pre>
+	 * // once
+	 * ... log in using a WebClient that uses webConnection ...
+	 * MockHttpSessionSnapshot loggedIn = webConnection.snapshot();
+	 *
+	 * // before each test
+	 * MockMvcWebConnection testConnection = webConnection.forClient();
+	 * testConnection.restore(loggedIn);
+	 * webClient.setWebConnection(testConnection);
+	 * </pre>
+	 *
+	 * @return the snapshot
+	 * @see MockHttpSessionSnapshot
+	 */
+	public MockHttpSessionSnapshot snapshot() {
+		return MockHttpSessionSnapshot.capture(sessions, cookieManager);
+	}
+
+	/**
+	 * Adds a copy of the sessions in the {@link MockHttpSessionSnapshot} to this
+	 * connection. Each restore creates new sessions, so the same snapshot may be restored
+	 * into many connections. A restored session replaces the session of this client for
+	 * the same cookie domain and path.
+	 *
+	 * @param snapshot the {@link MockHttpSessionSnapshot} to restore. Cannot be null.
+	 */
+	public void restore(MockHttpSessionSnapshot snapshot) {
+		Assert.notNull(snapshot, "snapshot cannot be null");
+		snapshot.restore(sessions, cookieManager);
 	}
 
 	public WebResponse getResponse(WebRequest webRequest) throws IOException {
 		long startTime = System.currentTimeMillis();
+		long start = System.nanoTime();
 		HtmlUnitRequestBuilder requestBuilder = new HtmlUnitRequestBuilder(sessions, cookieManager, webRequest);
 		requestBuilder.setContextPath(contextPath);
+		requestBuilder.setParentTemplates(parentTemplates);
+		if(!timingsListeners.isEmpty()) {
+			requestBuilder.startTimings();
+		}
 
-		MockHttpServletResponse httpServletResponse = getResponse(requestBuilder);
+		MvcResult result = perform(requestBuilder);
+		long performEnd = System.nanoTime();
+		requestBuilder.stopTimings();
 
-		String forwardedUrl = httpServletResponse.getForwardedUrl();
+		int forwardCount = 0;
+		String forwardedUrl = result.getResponse().getForwardedUrl();
 		while(forwardedUrl != null) {
-			requestBuilder.setForwardPostProcessor(new ForwardRequestPostProcessor(forwardedUrl));
-			httpServletResponse = getResponse(requestBuilder);
-			forwardedUrl = httpServletResponse.getForwardedUrl();
+			if(forwardCount == maxForwards) {
+				throw new IOException("Exceeded the maximum of " + maxForwards + " forwards for " + webRequest.getUrl()
+						+ ". The last forward was to " + forwardedUrl);
+			}
+			forwardCount++;
+			result = perform(new ForwardRequestBuilder(result.getRequest(), forwardedUrl, forwardCount));
+			forwardedUrl = result.getResponse().getForwardedUrl();
+		}
+		MockHttpServletResponse httpServletResponse = result.getResponse();
+		long forwardEnd = System.nanoTime();
+
+		MockWebResponseBuilder responseBuilder = new MockWebResponseBuilder(startTime, webRequest, httpServletResponse);
+		responseBuilder.setMaxInMemory(maxInMemory);
+		WebResponse webResponse = responseBuilder.build();
+		long end = System.nanoTime();
+
+		if(metrics != NoOpWebConnectionMetrics.INSTANCE) {
+			recordMetrics(webRequest, webResponse, result, responseBuilder, end - start, forwardCount);
+		}
+		if(!timingsListeners.isEmpty()) {
+			RequestTimings timings = timings(requestBuilder, start, performEnd, forwardEnd, forwardCount, end);
+			for(RequestTimingsListener listener : timingsListeners) {
+				listener.requestTimed(webRequest, webResponse, timings);
+			}
+		}
+		return webResponse;
+	}
+
+	/**
+	 * Adds a {@link RequestTimingsListener} that is notified with the time spent on each
+	 * request. Connections created by {@link #forClient()} afterwards also notify it.
+	 *
+	 * @param listener the {@link RequestTimingsListener} to add. Cannot be null.
+	 */
+	public void addTimingsListener(RequestTimingsListener listener) {
+		Assert.notNull(listener, "listener cannot be null");
+		this.timingsListeners.add(listener);
+	}
+
+	/**
+	 * Sets the {@link WebConnectionMetrics} that receives the measurements of this
+	 * connection. Connections created by {@link #forClient()} afterwards use the same
+	 * instance. The default ignores all measurements.
+	 *
+	 * @param metrics the {@link WebConnectionMetrics} to use. Cannot be null.
+	 */
+	public void setMetrics(WebConnectionMetrics metrics) {
+		Assert.notNull(metrics, "metrics cannot be null");
+		this.metrics = metrics;
+	}
+
+	private void recordMetrics(WebRequest webRequest, WebResponse webResponse, MvcResult result,
+			MockWebResponseBuilder responseBuilder, long durationNanos, int forwardCount) {
+		MockHttpServletRequest request = result.getRequest();
+		metrics.requestProcessed(webRequest, webResponse, durationNanos, forwardCount, bytesIn(request),
+				responseBuilder.getContentLength());
+		// reading the session must not access the session of the JSESSIONID cookie
+		HttpSession session = HtmlUnitRequestBuilder.getResolvedSession(request);
+		if(session instanceof MockHttpSession) {
+			MockHttpSession mockSession = (MockHttpSession) session;
+			if(!mockSession.isInvalid() && mockSession.isNew()) {
+				metrics.sessionCreated(webRequest);
+			}
+		}
+	}
+
+	private static long bytesIn(MockHttpServletRequest request) {
+		if(request.getContentLength() >= 0 || !(request instanceof MultipartHttpServletRequest)) {
+			return Math.max(request.getContentLength(), 0);
 		}
+		// the files of a multipart request are not encoded into a body
+		long bytesIn = 0;
+		for(List<MultipartFile> files : ((MultipartHttpServletRequest) request).getMultiFileMap().values()) {
+			for(MultipartFile file : files) {
+				bytesIn += file.getSize();
+			}
+		}
+		return bytesIn;
+	}
+
+	private static RequestTimings timings(HtmlUnitRequestBuilder requestBuilder, long start, long performEnd,
+			long forwardEnd, int forwardCount, long end) {
+		long buildEnd = requestBuilder.getBuildEndTime();
+		// the request is reused for forwards, so ignore anything detected after MockMvc returned
+		long dispatchStart = requestBuilder.getDispatchStartTime() > performEnd ? 0 : requestBuilder.getDispatchStartTime();
+		long viewStart = dispatchStart == 0 || requestBuilder.getViewStartTime() > performEnd ? 0 : requestBuilder
+				.getViewStartTime();
+		long filterEnd = dispatchStart == 0 ? performEnd : dispatchStart;
+		long handlerEnd = viewStart == 0 ? performEnd : viewStart;
+		long handlerNanos = dispatchStart == 0 ? 0 : handlerEnd - dispatchStart;
+		long viewNanos = viewStart == 0 ? 0 : performEnd - viewStart;
+		return new RequestTimings(buildEnd - start, filterEnd - buildEnd, handlerNanos, viewNanos,
+				forwardEnd - performEnd, forwardCount, end - forwardEnd, end - start);
+	}
+
+	/**
+	 * Sets the largest response body in bytes that is kept in memory. Larger bodies are
+	 * written to a temporary file that is removed when the {@link WebResponse} is cleaned
+	 * up, so large pages do not stay on the heap for the lifetime of the page. The default
+	 * is {@link #DEFAULT_MAX_IN_MEMORY}.
+	 *
+	 * @param maxInMemory the largest response body in bytes that is kept in memory or 0 to
+	 * always keep the body in memory. Cannot be negative.
+	 */
+	public void setMaxInMemory(int maxInMemory) {
+		Assert.isTrue(maxInMemory >= 0, "maxInMemory cannot be negative");
+		this.maxInMemory = maxInMemory;
+	}
+
+	/**
+	 * Sets the maximum number of forwards for a single request. This prevents forward
+	 * loops from running forever. The default is {@link #DEFAULT_MAX_FORWARDS}.
+	 *
+	 * @param maxForwards the maximum number of forwards for a single request. Cannot be
+	 * negative.
+	 */
+	public void setMaxForwards(int maxForwards) {
+		Assert.isTrue(maxForwards >= 0, "maxForwards cannot be negative");
+		this.maxForwards = maxForwards;
+	}
 
-		return new MockWebResponseBuilder(startTime, webRequest, httpServletResponse).build();
+	/**
+	 * Sets the number of milliseconds to wait for asynchronous request processing, such as
+	 * a {@code Callable} or a {@code DeferredResult}, to complete. Once the time has
+	 * elapsed the request times out just as it would in a Servlet container. The default
+	 * is {@link #DEFAULT_ASYNC_TIMEOUT}.
+	 *
+	 * @param asyncTimeout the number of milliseconds to wait. Cannot be negative.
+	 */
+	public void setAsyncTimeout(long asyncTimeout) {
+		Assert.isTrue(asyncTimeout >= 0, "asyncTimeout cannot be negative");
+		this.asyncTimeout = asyncTimeout;
 	}
 
-	private MockHttpServletResponse getResponse(RequestBuilder requestBuilder) throws IOException {
+	private MvcResult perform(RequestBuilder requestBuilder) throws IOException {
 		ResultActions resultActions;
 		try {
 			resultActions = mockMvc.perform(requestBuilder);
@@ -114,7 +388,72 @@ public final class MockMvcWebConnection implements WebConnection {
 			throw (IOException) new IOException(e.getMessage()).initCause(e);
 		}
 
-		return resultActions.andReturn().getResponse();
+		MvcResult result = resultActions.andReturn();
+		if (result.getRequest().isAsyncStarted()) {
+			return asyncDispatch(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Waits for the asynchronous processing of the request to complete and then performs
+	 * the async dispatch like a Servlet container would.
+	 *
+	 * @param result the result of the request that started asynchronous processing
+	 * @return the result of the async dispatch
+	 */
+	private MvcResult asyncDispatch(MvcResult result) throws IOException {
+		MockHttpServletRequest request = result.getRequest();
+		if (!awaitAsyncDispatch(result, asyncTimeout)) {
+			timeout(request);
+			// a timeout result is dispatched while notifying the listeners
+			if (!awaitAsyncDispatch(result, 0)) {
+				if (request.isAsyncStarted() && !result.getResponse().isCommitted()) {
+					throw new IOException("Asynchronous processing of " + request.getRequestURL()
+							+ " did not complete within " + asyncTimeout + " ms");
+				}
+				return result;
+			}
+		}
+		return perform(MockMvcRequestBuilders.asyncDispatch(result));
+	}
+
+	private boolean awaitAsyncDispatch(MvcResult result, long timeout) throws IOException {
+		CountDownLatch latch = HtmlUnitRequestBuilder.asyncDispatchLatch(result.getRequest());
+		if (latch == null) {
+			try {
+				result.getAsyncResult(timeout);
+				return true;
+			}
+			catch (IllegalStateException notSet) {
+				return false;
+			}
+		}
+		try {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw (IOException) new IOException("Interrupted while waiting for " + result.getRequest().getRequestURL())
+					.initCause(e);
+		}
+	}
+
+	/**
+	 * Notifies the {@link AsyncListener}s that the request timed out, which allows a
+	 * {@code DeferredResult} to use its timeout result.
+	 *
+	 * @param request the request that timed out
+	 */
+	private void timeout(MockHttpServletRequest request) throws IOException {
+		if (!(request.getAsyncContext() instanceof MockAsyncContext)) {
+			return;
+		}
+		MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+		AsyncEvent event = new AsyncEvent(asyncContext, asyncContext.getRequest(), asyncContext.getResponse());
+		for (AsyncListener listener : new ArrayList<AsyncListener>(asyncContext.getListeners())) {
+			listener.onTimeout(event);
+		}
 	}
 
 	/**
@@ -122,7 +461,7 @@ public final class MockMvcWebConnection implements WebConnection {
 	 *
 	 * @param contextPath the contextPath to validate
 	 */
-	private static void validateContextPath(String contextPath) {
+	static void validateContextPath(String contextPath) {
 		if (contextPath == null || "".equals(contextPath)) {
 			return;
 		}
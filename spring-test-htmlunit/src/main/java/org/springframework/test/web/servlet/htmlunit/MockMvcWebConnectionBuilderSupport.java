@@ -16,10 +16,16 @@
 package org.springframework.test.web.servlet.htmlunit;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.gargoylesoftware.htmlunit.CookieManager;
 import com.gargoylesoftware.htmlunit.WebConnection;
 
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.htmlunit.matchers.HostRequestMatcher;
 import org.springframework.test.web.servlet.htmlunit.matchers.WebRequestMatcher;
@@ -45,6 +51,34 @@ public abstract class MockMvcWebConnectionBuilderSupport<T extends MockMvcWebCon
 
 	private boolean alwaysUseMockMvc;
 
+	private MockHttpSessionStore sessionStore;
+
+	private int maxInMemory = MockMvcWebConnection.DEFAULT_MAX_IN_MEMORY;
+
+	private int maxForwards = MockMvcWebConnection.DEFAULT_MAX_FORWARDS;
+
+	private long asyncTimeout = MockMvcWebConnection.DEFAULT_ASYNC_TIMEOUT;
+
+	private boolean originCacheEnabled;
+
+	private final List<RequestTimingsListener> timingsListeners = new ArrayList<RequestTimingsListener>();
+
+	private WebConnectionExecutor connectionExecutor;
+
+	private WebConnectionMetrics metrics;
+
+	private final Map<String, List<String>> staticResourceLocations = new LinkedHashMap<String, List<String>>();
+
+	private int responseCacheMaxEntries;
+
+	private WebRequestMatcher[] responseCacheMatchers;
+
+	private LoopbackConnectionPool loopbackConnectionPool;
+
+	private String[] loopbackHosts;
+
+	private WebResponseArchive responseArchive;
+
 	/**
 	 * Creates a new instance using a MockMvc instance
 	 *
@@ -87,6 +121,78 @@ public abstract class MockMvcWebConnectionBuilderSupport<T extends MockMvcWebCon
 		return (T) this;
 	}
 
+	/**
+	 * The {@link MockHttpSessionStore} to hold the sessions that are managed by MockMvc.
+	 * The default is to use a new {@link ConcurrentMockHttpSessionStore} for every
+	 * WebConnection that is created. Note that a store specified here is shared by every
+	 * WebConnection this builder creates.
+	 *
+	 * @param sessionStore the {@link MockHttpSessionStore} to use. Cannot be null.
+	 * @return the builder for further customization
+	 */
+	public T sessionStore(MockHttpSessionStore sessionStore) {
+		Assert.notNull(sessionStore, "sessionStore cannot be null");
+		this.sessionStore = sessionStore;
+		return (T) this;
+	}
+
+	/**
+	 * Sets the largest response body in bytes that is kept in memory. Larger bodies are
+	 * written to a temporary file.
+	 *
+	 * @param maxInMemory the largest response body in bytes that is kept in memory or 0
+	 * to always keep the body in memory. Cannot be negative.
+	 * @return the builder for further customization
+	 * @see MockMvcWebConnection#setMaxInMemory(int)
+	 */
+	public T maxInMemory(int maxInMemory) {
+		Assert.isTrue(maxInMemory >= 0, "maxInMemory cannot be negative");
+		this.maxInMemory = maxInMemory;
+		return (T) this;
+	}
+
+	/**
+	 * Sets the maximum number of forwards for a single request.
+	 *
+	 * @param maxForwards the maximum number of forwards for a single request. Cannot be
+	 * negative.
+	 * @return the builder for further customization
+	 * @see MockMvcWebConnection#setMaxForwards(int)
+	 */
+	public T maxForwards(int maxForwards) {
+		Assert.isTrue(maxForwards >= 0, "maxForwards cannot be negative");
+		this.maxForwards = maxForwards;
+		return (T) this;
+	}
+
+	/**
+	 * Sets the number of milliseconds to wait for asynchronous request processing to
+	 * complete.
+	 *
+	 * @param asyncTimeout the number of milliseconds to wait. Cannot be negative.
+	 * @return the builder for further customization
+	 * @see MockMvcWebConnection#setAsyncTimeout(long)
+	 */
+	public T asyncTimeout(long asyncTimeout) {
+		Assert.isTrue(asyncTimeout >= 0, "asyncTimeout cannot be negative");
+		this.asyncTimeout = asyncTimeout;
+		return (T) this;
+	}
+
+	/**
+	 * Adds a {@link RequestTimingsListener} that is notified with the time spent on each
+	 * request that is processed by MockMvc.
+	 *
+	 * @param listener the {@link RequestTimingsListener} to add. Cannot be null.
+	 * @return the builder for further customization
+	 * @see MockMvcWebConnection#addTimingsListener(RequestTimingsListener)
+	 */
+	public T timingsListener(RequestTimingsListener listener) {
+		Assert.notNull(listener, "listener cannot be null");
+		this.timingsListeners.add(listener);
+		return (T) this;
+	}
+
 	/**
 	 * Always use MockMvc no matter what the request looks like.
 	 *
@@ -123,6 +229,129 @@ public abstract class MockMvcWebConnectionBuilderSupport<T extends MockMvcWebCon
 		return (T) this;
 	}
 
+	/**
+	 * Caches whether MockMvc is used per origin (scheme, host and port) when the decision
+	 * only depends on the origin, as is the case for {@link #useMockMvcForHosts(String...)}.
+	 *
+	 * @return the builder for further customization
+	 * @see DelegatingWebConnection#setOriginCacheEnabled(boolean)
+	 */
+	public T cacheRoutingByOrigin() {
+		this.originCacheEnabled = true;
+		return (T) this;
+	}
+
+	/**
+	 * Runs the requests processed by MockMvc using the specified
+	 * {@link WebConnectionExecutor}. This allows bounding how many requests MockMvc
+	 * processes at once and waiting for in flight requests to complete.
+	 *
+	 * @param connectionExecutor the {@link WebConnectionExecutor} to use. Cannot be null.
+	 * @return the builder for further customization
+	 */
+	public T connectionExecutor(WebConnectionExecutor connectionExecutor) {
+		Assert.notNull(connectionExecutor, "connectionExecutor cannot be null");
+		this.connectionExecutor = connectionExecutor;
+		return (T) this;
+	}
+
+	/**
+	 * Publishes the measurements of the created connections to the specified
+	 * {@link WebConnectionMetrics}.
+	 *
+	 * @param metrics the {@link WebConnectionMetrics} to use. Cannot be null.
+	 * @return the builder for further customization
+	 * @see MockMvcWebConnection#setMetrics(WebConnectionMetrics)
+	 * @see DelegatingWebConnection#setMetrics(WebConnectionMetrics)
+	 */
+	public T metrics(WebConnectionMetrics metrics) {
+		Assert.notNull(metrics, "metrics cannot be null");
+		this.metrics = metrics;
+		return (T) this;
+	}
+
+	/**
+	 * Serves static resources for URL paths starting with the specified prefix directly
+	 * from the specified locations instead of processing them with MockMvc. If no
+	 * resource is found, MockMvc processes the request.
+	 *
+	 * @param urlPrefix the prefix of the URL path after the context path (i.e.
+	 * "/resources/"). It must start and end with a "/".
+	 * @param locations the resource locations (i.e. "classpath:/static/" or
+	 * "file:src/main/webapp/resources/"). Cannot be empty.
+	 * @return the builder for further customization
+	 * @see StaticResourceWebConnection
+	 */
+	public T useStaticResources(String urlPrefix, String... locations) {
+		Assert.isTrue(urlPrefix != null && urlPrefix.startsWith("/") && urlPrefix.endsWith("/"),
+				"urlPrefix must start and end with /. Got '" + urlPrefix + "'");
+		Assert.notEmpty(locations, "locations cannot be empty");
+		List<String> prefixLocations = this.staticResourceLocations.get(urlPrefix);
+		if(prefixLocations == null) {
+			prefixLocations = new ArrayList<String>();
+			this.staticResourceLocations.put(urlPrefix, prefixLocations);
+		}
+		for(String location : locations) {
+			prefixLocations.add(location);
+		}
+		return (T) this;
+	}
+
+	/**
+	 * Caches the responses of MockMvc in memory for the GET requests that match one of the
+	 * specified WebRequestMatcher instances. Responses are only cached while they are fresh
+	 * according to their Cache-Control or Expires header.
+	 *
+	 * @param maxEntries the maximum number of responses to cache. Must be positive.
+	 * @param matchers the WebRequestMatcher instances that select the requests to cache.
+	 * Cannot be empty.
+	 * @return the builder for further customization
+	 * @see CachingWebConnection
+	 */
+	public T cacheResponses(int maxEntries, WebRequestMatcher... matchers) {
+		Assert.isTrue(maxEntries > 0, "maxEntries must be positive");
+		Assert.notEmpty(matchers, "matchers cannot be empty");
+		this.responseCacheMaxEntries = maxEntries;
+		this.responseCacheMatchers = matchers;
+		return (T) this;
+	}
+
+	/**
+	 * Sends the requests to the specified hosts that are not processed by MockMvc over the
+	 * keep-alive connections of a {@link LoopbackConnectionPool} rather than the default
+	 * WebConnection. The same pool can be used by many builders, so the connections are
+	 * reused across WebClient instances.
+	 *
+	 * @param pool the {@link LoopbackConnectionPool} to use. Cannot be null.
+	 * @param hosts the hosts, optionally followed by a port, to use the pool for (i.e.
+	 * "127.0.0.1:9090"). If none are specified, "127.0.0.1" is used. Since MockMvc
+	 * processes the requests to "localhost" by default, "localhost" is not used.
+	 * @return the builder for further customization
+	 * @see LoopbackWebConnection
+	 */
+	public T useLoopbackConnections(LoopbackConnectionPool pool, String... hosts) {
+		Assert.notNull(pool, "pool cannot be null");
+		this.loopbackConnectionPool = pool;
+		this.loopbackHosts = hosts.length == 0 ? new String[] { "127.0.0.1" } : hosts;
+		return (T) this;
+	}
+
+	/**
+	 * Records the responses to the requests that are not processed by MockMvc to the
+	 * specified {@link WebResponseArchive}, or replays them from it, depending on how the
+	 * archive was opened. When replaying, the default WebConnection is not used and a
+	 * request that was not recorded fails.
+	 *
+	 * @param archive the {@link WebResponseArchive} to use. Cannot be null.
+	 * @return the builder for further customization
+	 * @see ArchiveWebConnection
+	 */
+	public T archiveResponses(WebResponseArchive archive) {
+		Assert.notNull(archive, "archive cannot be null");
+		this.responseArchive = archive;
+		return (T) this;
+	}
+
 	/**
 	 * Creates a new WebConnection that will use a MockMvc instance if one of the
 	 * specified WebRequestMatcher matches.
@@ -137,18 +366,92 @@ public abstract class MockMvcWebConnectionBuilderSupport<T extends MockMvcWebCon
 	 * @see #useMockMvcForHosts(String...)
 	 */
 	protected final WebConnection createConnection(WebConnection defaultConnection) {
+		return createConnection(defaultConnection, new CookieManager());
+	}
+
+	/**
+	 * Creates a new WebConnection that will use a MockMvc instance if one of the
+	 * specified WebRequestMatcher matches. The requests that are sent over a
+	 * {@link LoopbackConnectionPool} use the cookies of the specified
+	 * {@link CookieManager}.
+	 *
+	 * @param defaultConnection the default WebConnection to use if none of the specified
+	 * WebRequestMatcher instances match. Cannot be null.
+	 * @param cookieManager the {@link CookieManager} of the WebClient that uses the
+	 * connection. Cannot be null.
+	 * @return a new WebConnection that will use a MockMvc instance if one of the
+	 * specified WebRequestMatcher matches.
+	 *
+	 * @see #useLoopbackConnections(LoopbackConnectionPool, String...)
+	 */
+	protected final WebConnection createConnection(WebConnection defaultConnection, CookieManager cookieManager) {
 		Assert.notNull(defaultConnection, "defaultConnection cannot be null");
-		MockMvcWebConnection mockMvcWebConnection = new MockMvcWebConnection(mockMvc, contextPath);
+		Assert.notNull(cookieManager, "cookieManager cannot be null");
+		MockHttpSessionStore sessions = sessionStore == null ? new ConcurrentMockHttpSessionStore() : sessionStore;
+		MockMvcWebConnection mockMvcWebConnection = new MockMvcWebConnection(mockMvc, contextPath, sessions);
+		mockMvcWebConnection.setMaxInMemory(maxInMemory);
+		mockMvcWebConnection.setMaxForwards(maxForwards);
+		mockMvcWebConnection.setAsyncTimeout(asyncTimeout);
+		for(RequestTimingsListener listener : timingsListeners) {
+			mockMvcWebConnection.addTimingsListener(listener);
+		}
+		if(metrics != null) {
+			mockMvcWebConnection.setMetrics(metrics);
+		}
+		WebConnection mockMvcConnection = mockMvcWebConnection;
+		if(connectionExecutor != null) {
+			mockMvcConnection = connectionExecutor.decorate(mockMvcConnection);
+		}
+		if(responseCacheMatchers != null) {
+			mockMvcConnection = new CachingWebConnection(mockMvcConnection, responseCacheMaxEntries, responseCacheMatchers);
+		}
+		if(!staticResourceLocations.isEmpty()) {
+			mockMvcConnection = createStaticResourceConnection(mockMvcConnection);
+		}
 
 		if(alwaysUseMockMvc) {
-			return mockMvcWebConnection;
+			return mockMvcConnection;
+		}
+		if(loopbackConnectionPool != null) {
+			defaultConnection = createLoopbackConnection(defaultConnection, cookieManager);
+		}
+		if(responseArchive != null) {
+			defaultConnection = new ArchiveWebConnection(defaultConnection, responseArchive);
 		}
 
 		List<DelegatingWebConnection.DelegateWebConnection> delegates = new ArrayList<DelegatingWebConnection.DelegateWebConnection>(mockMvcRequestMatchers.size());
 		for(WebRequestMatcher matcher : mockMvcRequestMatchers) {
-			delegates.add(new DelegatingWebConnection.DelegateWebConnection(matcher, mockMvcWebConnection));
+			delegates.add(new DelegatingWebConnection.DelegateWebConnection(matcher, mockMvcConnection));
+		}
+
+		DelegatingWebConnection connection = new DelegatingWebConnection(defaultConnection, delegates);
+		connection.setOriginCacheEnabled(originCacheEnabled);
+		if(metrics != null) {
+			connection.setMetrics(metrics);
 		}
+		return connection;
+	}
 
-		return new DelegatingWebConnection(defaultConnection, delegates);
+	private WebConnection createLoopbackConnection(WebConnection defaultConnection, CookieManager cookieManager) {
+		LoopbackWebConnection loopbackConnection = loopbackConnectionPool.createConnection(cookieManager);
+		loopbackConnection.setMaxInMemory(maxInMemory);
+		DelegatingWebConnection connection = new DelegatingWebConnection(defaultConnection,
+				new DelegatingWebConnection.DelegateWebConnection(new HostRequestMatcher(loopbackHosts), loopbackConnection));
+		connection.setOriginCacheEnabled(true);
+		return connection;
+	}
+
+	private StaticResourceWebConnection createStaticResourceConnection(WebConnection delegate) {
+		ResourceLoader resourceLoader = new DefaultResourceLoader();
+		StaticResourceWebConnection result = new StaticResourceWebConnection(delegate);
+		result.setContextPath(contextPath);
+		for(Map.Entry<String, List<String>> entry : staticResourceLocations.entrySet()) {
+			List<Resource> locations = new ArrayList<Resource>(entry.getValue().size());
+			for(String location : entry.getValue()) {
+				locations.add(resourceLoader.getResource(location));
+			}
+			result.addResourceLocations(entry.getKey(), locations.toArray(new Resource[locations.size()]));
+		}
+		return result;
 	}
 }
\ No newline at end of file
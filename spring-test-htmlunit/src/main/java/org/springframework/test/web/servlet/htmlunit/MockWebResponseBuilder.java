@@ -15,7 +15,10 @@
  */
 package org.springframework.test.web.servlet.htmlunit;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -24,6 +27,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.util.Assert;
 
+import com.gargoylesoftware.htmlunit.DownloadedContent;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.WebResponseData;
@@ -40,6 +44,10 @@ final class MockWebResponseBuilder {
 
 	private final MockHttpServletResponse response;
 
+	private int maxInMemory;
+
+	private long contentLength;
+
 	public MockWebResponseBuilder(long startTime, WebRequest webRequest, MockHttpServletResponse httpServletResponse) {
 		Assert.notNull(webRequest, "webRequest");
 		Assert.notNull(httpServletResponse, "httpServletResponse cannot be null");
@@ -48,17 +56,61 @@ final class MockWebResponseBuilder {
 		this.response = httpServletResponse;
 	}
 
+	/**
+	 * Sets the largest body in bytes that is kept in memory. Larger bodies are written to
+	 * a temporary file that is removed when the {@link WebResponse} is cleaned up. The
+	 * default is 0 which means the body is always kept in memory.
+	 *
+	 * @param maxInMemory the largest body in bytes that is kept in memory or 0 to always
+	 * keep the body in memory
+	 */
+	public void setMaxInMemory(int maxInMemory) {
+		this.maxInMemory = maxInMemory;
+	}
+
 	public WebResponse build() throws IOException {
 		WebResponseData webResponseData = webResponseData();
 		long endTime = System.currentTimeMillis();
 		return new WebResponse(webResponseData, webRequest, endTime - startTime);
 	}
 
+	/**
+	 * The number of bytes in the body of the {@link WebResponse} that was built.
+	 *
+	 * @return the number of bytes in the body or 0 if {@link #build()} was not invoked
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
 	private WebResponseData webResponseData() throws IOException {
 		List<NameValuePair> responseHeaders = responseHeaders();
 		int statusCode = response.getRedirectedUrl() == null ? response.getStatus() : 301;
 		String statusMessage = statusMessage(statusCode);
-		return new WebResponseData(response.getContentAsByteArray(), statusCode, statusMessage, responseHeaders);
+		return new WebResponseData(content(), statusCode, statusMessage, responseHeaders);
+	}
+
+	private DownloadedContent content() throws IOException {
+		byte[] body = response.getContentAsByteArray();
+		contentLength = body.length;
+		if (maxInMemory <= 0 || body.length <= maxInMemory) {
+			return new DownloadedContent.InMemory(body);
+		}
+		File file = File.createTempFile("htmlunit", ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(body);
+			}
+			finally {
+				out.close();
+			}
+		}
+		catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		return new DownloadedContent.OnFile(file, true);
 	}
 
 	private String statusMessage(int statusCode) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * A {@link WebConnectionMetrics} that ignores all measurements. This is the default
+ * for the connections.
+ */
+final class NoOpWebConnectionMetrics implements WebConnectionMetrics {
+	static final NoOpWebConnectionMetrics INSTANCE = new NoOpWebConnectionMetrics();
+
+	private NoOpWebConnectionMetrics() {
+	}
+
+	public void requestProcessed(WebRequest webRequest, WebResponse webResponse, long durationNanos,
+			int forwardCount, long bytesIn, long bytesOut) {
+	}
+
+	public void sessionCreated(WebRequest webRequest) {
+	}
+
+	public void requestRouted(WebRequest webRequest, int route, long durationNanos) {
+	}
+}
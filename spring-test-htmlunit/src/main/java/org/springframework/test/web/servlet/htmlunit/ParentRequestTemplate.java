@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpSession;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+/**
+ * <p>
+ * Internal class that holds the state of the request built by the default
+ * {@link RequestBuilder} of a {@link org.springframework.test.web.servlet.MockMvc}
+ * (i.e. the session attributes, headers, parameters, cookies, and request attributes)
+ * so it can be applied to many requests without building the default request each time.
+ * </p>
+ * <p>
+ * The default {@link RequestBuilder} is expected not to change once the
+ * {@link org.springframework.test.web.servlet.MockMvc} is built. The values are not
+ * copied, which matches applying a freshly built default request.
+ * </p>
+ */
+final class ParentRequestTemplate {
+	private final RequestBuilder parent;
+
+	private final ServletContext servletContext;
+
+	private final Map<String, Object> sessionAttributes;
+
+	private final Map<String, List<Object>> headers;
+
+	private final Map<String, String[]> parameters;
+
+	private final Cookie[] cookies;
+
+	private final Map<String, Object> attributes;
+
+	private ParentRequestTemplate(RequestBuilder parent, ServletContext servletContext) {
+		this.parent = parent;
+		this.servletContext = servletContext;
+		MockHttpServletRequest parentRequest = parent.buildRequest(servletContext);
+
+		Map<String, Object> sessionAttributes = new LinkedHashMap<String, Object>();
+		HttpSession parentSession = parentRequest.getSession(false);
+		if (parentSession != null) {
+			Enumeration<String> names = parentSession.getAttributeNames();
+			while (names.hasMoreElements()) {
+				String name = names.nextElement();
+				sessionAttributes.put(name, parentSession.getAttribute(name));
+			}
+		}
+		this.sessionAttributes = sessionAttributes;
+
+		Map<String, List<Object>> headers = new LinkedHashMap<String, List<Object>>();
+		Enumeration<String> headerNames = parentRequest.getHeaderNames();
+		while (headerNames.hasMoreElements()) {
+			String name = headerNames.nextElement();
+			headers.put(name, Collections.<Object> unmodifiableList(Collections.list(parentRequest.getHeaders(name))));
+		}
+		this.headers = headers;
+
+		this.parameters = new LinkedHashMap<String, String[]>(parentRequest.getParameterMap());
+		this.cookies = parentRequest.getCookies();
+
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+		Enumeration<String> attributeNames = parentRequest.getAttributeNames();
+		while (attributeNames.hasMoreElements()) {
+			String name = attributeNames.nextElement();
+			attributes.put(name, parentRequest.getAttribute(name));
+		}
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Applies the state of the default request to the request.
+	 *
+	 * @param result the request to update
+	 */
+	void applyTo(MockHttpServletRequest result) {
+		if (!sessionAttributes.isEmpty()) {
+			HttpSession session = result.getSession();
+			for (Map.Entry<String, Object> attribute : sessionAttributes.entrySet()) {
+				session.setAttribute(attribute.getKey(), attribute.getValue());
+			}
+		}
+		for (Map.Entry<String, List<Object>> header : headers.entrySet()) {
+			for (Object value : header.getValue()) {
+				result.addHeader(header.getKey(), value);
+			}
+		}
+		for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+			// the request keeps the array it is given, so each request gets its own
+			result.addParameter(parameter.getKey(), parameter.getValue().clone());
+		}
+		if (cookies != null) {
+			result.setCookies(cookies.clone());
+		}
+		for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+			result.setAttribute(attribute.getKey(), attribute.getValue());
+		}
+	}
+
+	private boolean isFor(RequestBuilder parent, ServletContext servletContext) {
+		return this.parent == parent && this.servletContext == servletContext;
+	}
+
+	/**
+	 * Creates a template by building the request of the parent.
+	 *
+	 * @param parent the default {@link RequestBuilder}
+	 * @param servletContext the {@link ServletContext} to build the request with
+	 * @return the template
+	 */
+	static ParentRequestTemplate create(RequestBuilder parent, ServletContext servletContext) {
+		return new ParentRequestTemplate(parent, servletContext);
+	}
+
+	/**
+	 * Holds the template of the most recently used parent so that it is built only once
+	 * for the requests of a connection. It is safe to share between threads.
+	 */
+	static final class Cache {
+		private volatile ParentRequestTemplate template;
+
+		/**
+		 * Obtains the template for the parent, building it if the parent or the
+		 * {@link ServletContext} differs from the last call.
+		 *
+		 * @param parent the default {@link RequestBuilder}
+		 * @param servletContext the {@link ServletContext} to build the request with
+		 * @return the template
+		 */
+		ParentRequestTemplate get(RequestBuilder parent, ServletContext servletContext) {
+			ParentRequestTemplate result = template;
+			if (result == null || !result.isFor(parent, servletContext)) {
+				result = create(parent, servletContext);
+				template = result;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * <p>
+ * Internal class that decomposes a {@link URL} into the parts needed to build a
+ * request. The parts are read directly from the {@link URL} rather than formatting it
+ * to a String and parsing it again, which avoids regular expressions on every request.
+ * </p>
+ * <p>
+ * The path and query are left encoded, just as they appear in the URL.
+ * </p>
+ *
+ * @see HtmlUnitRequestBuilder
+ */
+final class ParsedUrl {
+	private final URL url;
+
+	private final String scheme;
+
+	private final String host;
+
+	private final int port;
+
+	private final String path;
+
+	private final String query;
+
+	private MultiValueMap<String, String> queryParams;
+
+	public ParsedUrl(URL url) {
+		Assert.notNull(url, "url cannot be null");
+		this.url = url;
+		this.scheme = url.getProtocol();
+		this.host = url.getHost();
+		this.port = url.getPort();
+		this.path = url.getPath();
+		String query = url.getQuery();
+		this.query = "".equals(query) ? null : query;
+	}
+
+	/**
+	 * The {@link URL} that was decomposed.
+	 *
+	 * @return the {@link URL} that was decomposed
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * The explicit port of the URL.
+	 *
+	 * @return the explicit port or -1 if the URL does not specify a port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * The query of the URL.
+	 *
+	 * @return the query or null if the URL has no query
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * The non-empty segments of the path.
+	 *
+	 * @return the non-empty segments of the path
+	 */
+	public List<String> getPathSegments() {
+		List<String> segments = new ArrayList<String>();
+		int length = path.length();
+		int start = 0;
+		while (start < length) {
+			int end = path.indexOf('/', start);
+			if (end == -1) {
+				end = length;
+			}
+			if (end > start) {
+				segments.add(path.substring(start, end));
+			}
+			start = end + 1;
+		}
+		return segments;
+	}
+
+	/**
+	 * The parameters of the query in the order they appear. The names and values are
+	 * not decoded. A parameter without a "=" has an empty value.
+	 *
+	 * @return the parameters of the query
+	 */
+	public MultiValueMap<String, String> getQueryParams() {
+		if (queryParams == null) {
+			queryParams = parseQuery(query);
+		}
+		return queryParams;
+	}
+
+	/**
+	 * Splits a query into its parameters in the order they appear. The names and values
+	 * are not decoded. A parameter without a "=" has an empty value.
+	 *
+	 * @param query the query to split. May be null.
+	 * @return the parameters of the query
+	 */
+	static MultiValueMap<String, String> parseQuery(String query) {
+		MultiValueMap<String, String> result = new LinkedMultiValueMap<String, String>();
+		if (query == null) {
+			return result;
+		}
+		int length = query.length();
+		int start = 0;
+		while (start < length) {
+			int end = query.indexOf('&', start);
+			if (end == -1) {
+				end = length;
+			}
+			int equals = query.indexOf('=', start);
+			if (equals == -1 || equals > end) {
+				equals = end;
+			}
+			if (equals > start) {
+				String name = query.substring(start, equals);
+				String value = equals < end ? query.substring(equals + 1, end) : "";
+				result.add(name, value);
+			}
+			start = end + 1;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The time a {@link MockMvcWebConnection} spent on a single request, broken down into
+ * phases. All durations are in nanoseconds.
+ * </p>
+ * <p>
+ * The filter, handler, and view phases are determined by observing the request attributes
+ * that the {@code DispatcherServlet} and {@code AbstractView} use, so they are
+ * approximate. The filter phase is the time before the {@code DispatcherServlet} is
+ * invoked. The handler phase starts when the {@code DispatcherServlet} is invoked and
+ * includes any message conversion of the handler. The view phase starts when a view
+ * begins rendering. Work done by filters after the {@code DispatcherServlet} completes
+ * is included in the last of these phases.
+ * </p>
+ *
+ * @see RequestTimingsListener
+ */
+public final class RequestTimings {
+	private final long buildNanos;
+
+	private final long filterNanos;
+
+	private final long handlerNanos;
+
+	private final long viewNanos;
+
+	private final long forwardNanos;
+
+	private final int forwardCount;
+
+	private final long conversionNanos;
+
+	private final long totalNanos;
+
+	RequestTimings(long buildNanos, long filterNanos, long handlerNanos, long viewNanos, long forwardNanos,
+			int forwardCount, long conversionNanos, long totalNanos) {
+		this.buildNanos = buildNanos;
+		this.filterNanos = filterNanos;
+		this.handlerNanos = handlerNanos;
+		this.viewNanos = viewNanos;
+		this.forwardNanos = forwardNanos;
+		this.forwardCount = forwardCount;
+		this.conversionNanos = conversionNanos;
+		this.totalNanos = totalNanos;
+	}
+
+	/**
+	 * The time spent transforming the WebRequest into a MockHttpServletRequest.
+	 *
+	 * @return the time spent building the request in nanoseconds
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * The time spent before the {@code DispatcherServlet} was invoked, which is typically
+	 * spent in the filter chain.
+	 *
+	 * @return the time spent in the filter chain in nanoseconds
+	 */
+	public long getFilterNanos() {
+		return filterNanos;
+	}
+
+	/**
+	 * The time spent in the {@code DispatcherServlet} before a view began rendering.
+	 *
+	 * @return the time spent in the handler in nanoseconds
+	 */
+	public long getHandlerNanos() {
+		return handlerNanos;
+	}
+
+	/**
+	 * The time spent rendering the view.
+	 *
+	 * @return the time spent rendering the view in nanoseconds or 0 if no view was rendered
+	 */
+	public long getViewNanos() {
+		return viewNanos;
+	}
+
+	/**
+	 * The time spent processing forwards.
+	 *
+	 * @return the time spent processing forwards in nanoseconds or 0 if there were no
+	 * forwards
+	 */
+	public long getForwardNanos() {
+		return forwardNanos;
+	}
+
+	/**
+	 * The number of forwards that were processed.
+	 *
+	 * @return the number of forwards
+	 */
+	public int getForwardCount() {
+		return forwardCount;
+	}
+
+	/**
+	 * The time spent transforming the MockHttpServletResponse into a WebResponse.
+	 *
+	 * @return the time spent converting the response in nanoseconds
+	 */
+	public long getConversionNanos() {
+		return conversionNanos;
+	}
+
+	/**
+	 * The total time spent processing the request.
+	 *
+	 * @return the total time in nanoseconds
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "RequestTimings [total=" + micros(totalNanos) + "us, build=" + micros(buildNanos) + "us, filter="
+				+ micros(filterNanos) + "us, handler=" + micros(handlerNanos) + "us, view=" + micros(viewNanos)
+				+ "us, forward=" + micros(forwardNanos) + "us (" + forwardCount + "), conversion="
+				+ micros(conversionNanos) + "us]";
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * Notified with the {@link RequestTimings} of each request that a
+ * {@link MockMvcWebConnection} processes. This makes it possible to see which pages and
+ * which phases dominate the time spent by tests.
+ *
+ * @see MockMvcWebConnection#addTimingsListener(RequestTimingsListener)
+ */
+public interface RequestTimingsListener {
+
+	/**
+	 * Invoked after a request has been processed.
+	 *
+	 * @param webRequest the WebRequest that was processed
+	 * @param webResponse the resulting WebResponse
+	 * @param timings the time spent on the request
+	 */
+	void requestTimed(WebRequest webRequest, WebResponse webResponse, RequestTimings timings);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * <p>
+ * A {@link WebConnectionMetrics} that collects the measurements in memory. For example:
+ * </p>
+ *
+ * <pre>
+ * SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+ * MockMvcWebConnection mockConnection = new MockMvcWebConnection(mockMvc);
+ * mockConnection.setMetrics(metrics);
+ *
+ * ... use the connection ...
+ *
+ * long requests = metrics.getRequestCount();
+ * Map&lt;Long, Long&gt; latencies = metrics.getLatencyHistogram();
+ * </pre>
+ */
+public final class SimpleWebConnectionMetrics implements WebConnectionMetrics {
+	/**
+	 * The upper bounds in milliseconds of the latency histogram buckets. The last bucket
+	 * holds everything that is slower.
+	 */
+	private static final long[] LATENCY_BUCKETS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000,
+			Long.MAX_VALUE };
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	private final AtomicLong forwardCount = new AtomicLong();
+
+	private final AtomicLong sessionCount = new AtomicLong();
+
+	private final AtomicLong bytesIn = new AtomicLong();
+
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS.length);
+
+	private final AtomicLongArray routeLatencies = new AtomicLongArray(LATENCY_BUCKETS.length);
+
+	private final ConcurrentMap<Integer, AtomicLong> routeCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	public void requestProcessed(WebRequest webRequest, WebResponse webResponse, long durationNanos,
+			int forwardCount, long bytesIn, long bytesOut) {
+		this.requestCount.incrementAndGet();
+		this.forwardCount.addAndGet(forwardCount);
+		this.bytesIn.addAndGet(bytesIn);
+		this.bytesOut.addAndGet(bytesOut);
+		record(latencies, durationNanos);
+	}
+
+	public void sessionCreated(WebRequest webRequest) {
+		this.sessionCount.incrementAndGet();
+	}
+
+	public void requestRouted(WebRequest webRequest, int route, long durationNanos) {
+		AtomicLong count = routeCounts.get(route);
+		if (count == null) {
+			AtomicLong newCount = new AtomicLong();
+			count = routeCounts.putIfAbsent(route, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+		record(routeLatencies, durationNanos);
+	}
+
+	/**
+	 * The number of requests that were processed by MockMvc.
+	 *
+	 * @return the number of requests that were processed by MockMvc
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * The total number of forwards that were followed.
+	 *
+	 * @return the total number of forwards that were followed
+	 */
+	public long getForwardCount() {
+		return forwardCount.get();
+	}
+
+	/**
+	 * The number of sessions that were created.
+	 *
+	 * @return the number of sessions that were created
+	 */
+	public long getSessionCount() {
+		return sessionCount.get();
+	}
+
+	/**
+	 * The total number of bytes in the request bodies.
+	 *
+	 * @return the total number of bytes in the request bodies
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * The total number of bytes in the response bodies.
+	 *
+	 * @return the total number of bytes in the response bodies
+	 */
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * The number of requests that a {@link DelegatingWebConnection} routed to a delegate.
+	 *
+	 * @param route the index of the DelegateWebConnection or
+	 * {@link WebConnectionMetrics#DEFAULT_ROUTE} for the default WebConnection
+	 * @return the number of requests that were routed
+	 */
+	public long getRouteCount(int route) {
+		AtomicLong count = routeCounts.get(route);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * The number of requests that did not match any DelegateWebConnection and were
+	 * routed to the default WebConnection.
+	 *
+	 * @return the number of requests that were routed to the default WebConnection
+	 */
+	public long getDefaultRouteCount() {
+		return getRouteCount(DEFAULT_ROUTE);
+	}
+
+	/**
+	 * The latencies of the requests that were processed by MockMvc.
+	 *
+	 * @return a Map of the upper bound of each bucket in milliseconds to the number of
+	 * requests in the bucket. The last bucket has an upper bound of
+	 * {@link Long#MAX_VALUE}.
+	 */
+	public Map<Long, Long> getLatencyHistogram() {
+		return histogram(latencies);
+	}
+
+	/**
+	 * The latencies of the requests that were routed by a {@link DelegatingWebConnection}.
+	 *
+	 * @return a Map of the upper bound of each bucket in milliseconds to the number of
+	 * requests in the bucket. The last bucket has an upper bound of
+	 * {@link Long#MAX_VALUE}.
+	 */
+	public Map<Long, Long> getRouteLatencyHistogram() {
+		return histogram(routeLatencies);
+	}
+
+	private static void record(AtomicLongArray histogram, long durationNanos) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+		int bucket = 0;
+		while (millis > LATENCY_BUCKETS[bucket]) {
+			bucket++;
+		}
+		histogram.incrementAndGet(bucket);
+	}
+
+	private static Map<Long, Long> histogram(AtomicLongArray histogram) {
+		Map<Long, Long> result = new LinkedHashMap<Long, Long>();
+		for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+			result.put(LATENCY_BUCKETS[i], histogram.get(i));
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	@Override
+	public String toString() {
+		return "SimpleWebConnectionMetrics [requests=" + getRequestCount() + ", forwards=" + getForwardCount()
+				+ ", sessions=" + getSessionCount() + ", bytesIn=" + getBytesIn() + ", bytesOut=" + getBytesOut()
+				+ ", routes=" + routeCounts + "]";
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriUtils;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * <p>
+ * A {@link WebConnection} that serves static resources, such as CSS, JavaScript, and
+ * images, directly from {@link Resource} locations. This avoids processing these requests
+ * with {@link org.springframework.test.web.servlet.MockMvc}, which would otherwise invoke
+ * the complete filter chain and handler mapping to serve a file.
+ * </p>
+ * <p>
+ * A GET request whose URL path starts with a mapped prefix is resolved relative to the
+ * locations of that prefix. If a readable resource is found, it is served with a
+ * Content-Type based on its file extension. Otherwise the request is passed to the
+ * delegate {@link WebConnection}. The prefixes are matched against the URL path after
+ * the context path, see {@link #setContextPath(String)}. The content of the resources and
+ * the result of each lookup under a prefix are cached in memory, up to
+ * {@link #MAX_CACHED_PATHS} paths, so changes to the resources are not picked up.
+ * </p>
+ *
+ * <pre>
+ * StaticResourceWebConnection connection = new StaticResourceWebConnection(mockMvcWebConnection);
+ * connection.addResourceLocations("/resources/", new ClassPathResource("static/"));
+ * </pre>
+ *
+ * @see MockMvcWebConnectionBuilderSupport#useStaticResources(String, String...)
+ */
+public final class StaticResourceWebConnection implements WebConnection {
+	/**
+	 * The maximum number of paths whose lookup is cached. Paths that are not cached are
+	 * resolved on every request.
+	 */
+	public static final int MAX_CACHED_PATHS = 1024;
+
+	private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+	static {
+		CONTENT_TYPES.put("css", "text/css");
+		CONTENT_TYPES.put("eot", "application/vnd.ms-fontobject");
+		CONTENT_TYPES.put("gif", "image/gif");
+		CONTENT_TYPES.put("htm", "text/html");
+		CONTENT_TYPES.put("html", "text/html");
+		CONTENT_TYPES.put("ico", "image/x-icon");
+		CONTENT_TYPES.put("jpeg", "image/jpeg");
+		CONTENT_TYPES.put("jpg", "image/jpeg");
+		CONTENT_TYPES.put("js", "application/javascript");
+		CONTENT_TYPES.put("json", "application/json");
+		CONTENT_TYPES.put("map", "application/json");
+		CONTENT_TYPES.put("png", "image/png");
+		CONTENT_TYPES.put("svg", "image/svg+xml");
+		CONTENT_TYPES.put("ttf", "application/x-font-ttf");
+		CONTENT_TYPES.put("txt", "text/plain");
+		CONTENT_TYPES.put("woff", "application/font-woff");
+		CONTENT_TYPES.put("woff2", "font/woff2");
+		CONTENT_TYPES.put("xml", "application/xml");
+	}
+
+	private static final StaticResource NOT_FOUND = new StaticResource(null, null);
+
+	private final WebConnection delegate;
+
+	private final List<ResourceMapping> mappings = new ArrayList<ResourceMapping>();
+
+	private final ConcurrentMap<String, StaticResource> resources = new ConcurrentHashMap<String, StaticResource>();
+
+	private String contextPath = "";
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param delegate the {@link WebConnection} to use for requests that are not static
+	 * resources. Cannot be null.
+	 */
+	public StaticResourceWebConnection(WebConnection delegate) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Maps a URL path prefix to the locations that resources are served from. The
+	 * mappings must be added before the instance is used.
+	 *
+	 * @param urlPrefix the prefix of the URL path (i.e. "/resources/"). It must start and
+	 * end with a "/".
+	 * @param locations the locations the remainder of the path is resolved against, in
+	 * order (i.e. new ClassPathResource("static/")). Cannot be empty.
+	 */
+	public void addResourceLocations(String urlPrefix, Resource... locations) {
+		Assert.isTrue(urlPrefix != null && urlPrefix.startsWith("/") && urlPrefix.endsWith("/"),
+				"urlPrefix must start and end with /. Got '" + urlPrefix + "'");
+		Assert.notEmpty(locations, "locations cannot be empty");
+		this.mappings.add(new ResourceMapping(urlPrefix, Arrays.asList(locations)));
+		this.resources.clear();
+	}
+
+	/**
+	 * Sets the context path that precedes the mapped URL path prefixes, using the same
+	 * rules as {@link MockMvcWebConnection}. The default is "", so the prefixes are
+	 * matched against the complete URL path. The context path must be set before the
+	 * instance is used.
+	 *
+	 * @param contextPath the context path or null to treat the first path segment of
+	 * the URL as the context path. Otherwise it must be "" or start with a "/" and not end
+	 * with a "/".
+	 */
+	public void setContextPath(String contextPath) {
+		MockMvcWebConnection.validateContextPath(contextPath);
+		this.contextPath = contextPath;
+		this.resources.clear();
+	}
+
+	@Override
+	public WebResponse getResponse(WebRequest request) throws IOException {
+		if (request.getHttpMethod() != HttpMethod.GET) {
+			return delegate.getResponse(request);
+		}
+		long startTime = System.currentTimeMillis();
+		String path = pathWithinApplication(request.getUrl().getPath());
+		if (path == null || !isMapped(path)) {
+			return delegate.getResponse(request);
+		}
+		StaticResource resource = resources.get(path);
+		if (resource == null) {
+			resource = resolve(path);
+			if (resources.size() < MAX_CACHED_PATHS) {
+				StaticResource existing = resources.putIfAbsent(path, resource);
+				if (existing != null) {
+					resource = existing;
+				}
+			}
+		}
+		if (resource == NOT_FOUND) {
+			return delegate.getResponse(request);
+		}
+		List<NameValuePair> headers = new ArrayList<NameValuePair>(2);
+		headers.add(new NameValuePair("Content-Type", resource.contentType));
+		headers.add(new NameValuePair("Content-Length", String.valueOf(resource.content.length)));
+		WebResponseData data = new WebResponseData(resource.content, 200, "OK", headers);
+		return new WebResponse(data, request, System.currentTimeMillis() - startTime);
+	}
+
+	private String pathWithinApplication(String path) {
+		if (contextPath == null) {
+			int end = path.indexOf('/', 1);
+			return end == -1 ? null : path.substring(end);
+		}
+		return path.startsWith(contextPath) ? path.substring(contextPath.length()) : null;
+	}
+
+	private boolean isMapped(String path) {
+		for (ResourceMapping mapping : mappings) {
+			if (path.startsWith(mapping.urlPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private StaticResource resolve(String path) throws IOException {
+		for (ResourceMapping mapping : mappings) {
+			if (!path.startsWith(mapping.urlPrefix)) {
+				continue;
+			}
+			String relativePath = UriUtils.decode(path.substring(mapping.urlPrefix.length()), "UTF-8");
+			if (!isValidRelativePath(relativePath)) {
+				continue;
+			}
+			for (Resource location : mapping.locations) {
+				Resource resource = location.createRelative(relativePath);
+				if (resource.exists() && resource.isReadable()) {
+					byte[] content = FileCopyUtils.copyToByteArray(resource.getInputStream());
+					return new StaticResource(content, contentType(relativePath));
+				}
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private static boolean isValidRelativePath(String relativePath) {
+		if ("".equals(relativePath) || relativePath.endsWith("/") || relativePath.startsWith("/")
+				|| relativePath.indexOf('\\') != -1) {
+			return false;
+		}
+		for (String segment : StringUtils.delimitedListToStringArray(relativePath, "/")) {
+			if ("..".equals(segment)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String contentType(String path) {
+		String extension = StringUtils.getFilenameExtension(path);
+		if (extension != null) {
+			String contentType = CONTENT_TYPES.get(extension.toLowerCase(Locale.ENGLISH));
+			if (contentType != null) {
+				return contentType;
+			}
+		}
+		String contentType = URLConnection.guessContentTypeFromName(path);
+		return contentType == null ? "application/octet-stream" : contentType;
+	}
+
+	private static final class ResourceMapping {
+		private final String urlPrefix;
+
+		private final List<Resource> locations;
+
+		private ResourceMapping(String urlPrefix, List<Resource> locations) {
+			this.urlPrefix = urlPrefix;
+			this.locations = Collections.unmodifiableList(locations);
+		}
+	}
+
+	private static final class StaticResource {
+		private final byte[] content;
+
+		private final String contentType;
+
+		private StaticResource(byte[] content, String contentType) {
+			this.content = content;
+			this.contentType = contentType;
+		}
+	}
+}
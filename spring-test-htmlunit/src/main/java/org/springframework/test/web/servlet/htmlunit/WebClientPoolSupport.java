@@ -0,0 +1,229 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.TopLevelWindow;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebConnection;
+
+/**
+ * <p>
+ * The pooling of clients, such as WebClient or HtmlUnitDriver instances, that are backed
+ * by a WebClient configured to use MockMvc. Creating a WebClient, with its JavaScript
+ * engine, is expensive compared to running a typical test, so suites with many tests can
+ * reuse the clients instead.
+ * </p>
+ * <p>
+ * When a client is released, the windows of its WebClient (and so their history and any
+ * background JavaScript) are closed, its cookies are cleared, and it is configured again
+ * with the connection it was created with, so that it is given a new MockMvc connection
+ * and no longer sees its previous {@link javax.servlet.http.HttpSession} instances.
+ * Sessions are only shared if a {@link MockHttpSessionStore} was explicitly configured.
+ * The {@link com.gargoylesoftware.htmlunit.WebClientOptions} and the
+ * {@link com.gargoylesoftware.htmlunit.Cache} are kept, so changes made to them by a test
+ * are visible to the next test using the client.
+ * </p>
+ * <p>
+ * Instances are thread safe.
+ * </p>
+ *
+ * @param <T> the type of the pooled clients
+ * @see MockMvcWebClientPool
+ * @see org.springframework.test.web.servlet.htmlunit.webdriver.MockMvcHtmlUnitDriverPool
+ */
+public abstract class WebClientPoolSupport<T> {
+	private final int maxIdle;
+
+	private final Deque<T> idleClients = new ArrayDeque<T>();
+
+	/**
+	 * The connection each client was created with, which is used for requests that are
+	 * not processed by MockMvc. Holds every client of the pool that is not discarded.
+	 */
+	private final Map<T, WebConnection> defaultConnections = new IdentityHashMap<T, WebConnection>();
+
+	private int createdCount;
+
+	private boolean closed;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param maxIdle the maximum number of idle clients that are kept. Must be positive.
+	 */
+	protected WebClientPoolSupport(int maxIdle) {
+		Assert.isTrue(maxIdle > 0, "maxIdle must be positive");
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Obtains an idle client or creates a new one if there is none.
+	 *
+	 * @return the client to use, which should be passed to {@link #release(Object)} once
+	 * it is no longer used
+	 */
+	public T checkout() {
+		synchronized (this) {
+			Assert.state(!closed, "The pool is closed");
+			T client = idleClients.poll();
+			if (client != null) {
+				return client;
+			}
+			createdCount++;
+		}
+		T client = create();
+		WebConnection defaultConnection = getWebClient(client).getWebConnection();
+		configure(client);
+		synchronized (this) {
+			defaultConnections.put(client, defaultConnection);
+		}
+		return client;
+	}
+
+	/**
+	 * Resets the client and returns it to the pool. If the pool already holds the maximum
+	 * number of idle clients or is closed, the client is destroyed instead.
+	 *
+	 * @param client a client obtained from {@link #checkout()} that is no longer used.
+	 * Cannot be null.
+	 */
+	public void release(T client) {
+		Assert.notNull(client, "client cannot be null");
+		WebConnection defaultConnection;
+		synchronized (this) {
+			defaultConnection = defaultConnections.get(client);
+			Assert.isTrue(defaultConnection != null, "client was not checked out from this pool");
+			Assert.isTrue(!idleClients.contains(client), "client was already released");
+		}
+		if (!reset(client, defaultConnection)) {
+			discard(client);
+			return;
+		}
+		synchronized (this) {
+			if (!closed && idleClients.size() < maxIdle) {
+				idleClients.push(client);
+				return;
+			}
+		}
+		discard(client);
+	}
+
+	/**
+	 * Destroys all idle clients. Clients that are checked out are destroyed when they are
+	 * released.
+	 */
+	public void close() {
+		List<T> clients;
+		synchronized (this) {
+			closed = true;
+			clients = new ArrayList<T>(idleClients);
+			idleClients.clear();
+		}
+		for (T client : clients) {
+			discard(client);
+		}
+	}
+
+	/**
+	 * The number of clients that were created.
+	 *
+	 * @return the number of clients that were created
+	 */
+	public synchronized int getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * The number of idle clients.
+	 *
+	 * @return the number of idle clients
+	 */
+	public synchronized int getIdleCount() {
+		return idleClients.size();
+	}
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @return the new client
+	 */
+	protected abstract T create();
+
+	/**
+	 * Obtains the WebClient that backs the client.
+	 *
+	 * @param client the client
+	 * @return the WebClient of the client
+	 */
+	protected abstract WebClient getWebClient(T client);
+
+	/**
+	 * Configures the client to use MockMvc. This is invoked when the client is created
+	 * and each time it is released.
+	 *
+	 * @param client the client to configure
+	 */
+	protected abstract void configure(T client);
+
+	/**
+	 * Invoked after the windows of the client have been closed and a new empty window
+	 * was opened.
+	 *
+	 * @param client the client that was reset
+	 */
+	protected void windowsReset(T client) {
+	}
+
+	/**
+	 * Releases the resources of a client that is no longer pooled.
+	 *
+	 * @param client the client to destroy
+	 */
+	protected abstract void destroy(T client);
+
+	private boolean reset(T client, WebConnection defaultConnection) {
+		WebClient webClient = getWebClient(client);
+		// closing the last window opens a new empty one with a new history
+		List<TopLevelWindow> windows = new ArrayList<TopLevelWindow>(webClient.getTopLevelWindows());
+		for (TopLevelWindow window : windows) {
+			window.close();
+		}
+		if (webClient.getTopLevelWindows().isEmpty()) {
+			return false;
+		}
+		windowsReset(client);
+		webClient.getCookieManager().clearCookies();
+		webClient.setWebConnection(defaultConnection);
+		configure(client);
+		return true;
+	}
+
+	private void discard(T client) {
+		synchronized (this) {
+			defaultConnections.remove(client);
+		}
+		destroy(client);
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * <p>
+ * Tracks how many calls to a {@link WebConnection} are in flight and optionally bounds how
+ * many of them run at the same time. This is useful for pages that use JavaScript, since
+ * HtmlUnit performs XHR requests and timers on its own background threads.
+ * </p>
+ * <p>
+ * Every call runs on the thread that made it, so
+ * {@link org.springframework.test.web.servlet.MockMvc} sees the state that is bound to that
+ * thread, such as the transaction of a {@code @Transactional} test. When a maximum number
+ * of concurrent calls is specified, a call that exceeds it waits on its own thread until
+ * another call completes.
+ * </p>
+ * <p>
+ * Rather than sleeping for a fixed interval, a test can wait for the calls to drain:
+ * </p>
+ *
+ * <pre>
+ * WebConnectionExecutor connectionExecutor = new WebConnectionExecutor(4);
+ * WebClient webClient = MockMvcWebClientBuilder
+ *     .mockMvcSetup(mockMvc)
+ *     .connectionExecutor(connectionExecutor)
+ *     .createWebClient();
+ *
+ * ... click a button that performs XHR requests ...
+ *
+ * connectionExecutor.awaitIdle(5, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * <p>
+ * Note that JavaScript may start new requests once a response is processed, so it can be
+ * combined with {@link com.gargoylesoftware.htmlunit.WebClient#waitForBackgroundJavaScript(long)}.
+ * </p>
+ *
+ * @see MockMvcWebConnectionBuilderSupport#connectionExecutor(WebConnectionExecutor)
+ */
+public final class WebConnectionExecutor {
+	private final Semaphore permits;
+
+	private final Object monitor = new Object();
+
+	private int inFlightCount;
+
+	/**
+	 * Creates a new instance that only tracks the calls and does not limit how many run at
+	 * the same time.
+	 */
+	public WebConnectionExecutor() {
+		this.permits = null;
+	}
+
+	/**
+	 * Creates a new instance that limits how many calls run at the same time.
+	 *
+	 * @param maxConcurrentCalls the maximum number of calls that run at the same time. Must
+	 * be greater than 0.
+	 */
+	public WebConnectionExecutor(int maxConcurrentCalls) {
+		Assert.isTrue(maxConcurrentCalls > 0, "maxConcurrentCalls must be greater than 0");
+		this.permits = new Semaphore(maxConcurrentCalls, true);
+	}
+
+	/**
+	 * Creates a {@link WebConnection} that runs every call to the specified
+	 * {@link WebConnection} using this instance.
+	 *
+	 * @param connection the {@link WebConnection} to delegate to. Cannot be null.
+	 * @return the {@link WebConnection} that uses this instance
+	 */
+	public WebConnection decorate(WebConnection connection) {
+		Assert.notNull(connection, "connection cannot be null");
+		return new ExecutorWebConnection(connection);
+	}
+
+	/**
+	 * The number of calls that have started, including those that wait for another call to
+	 * complete, but not yet completed.
+	 *
+	 * @return the number of calls in flight
+	 */
+	public int getInFlightCount() {
+		synchronized (monitor) {
+			return inFlightCount;
+		}
+	}
+
+	/**
+	 * Waits until no calls are in flight.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if no calls are in flight, false if the timeout elapsed first
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (monitor) {
+			while (inFlightCount > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(monitor, remaining);
+			}
+			return true;
+		}
+	}
+
+	private WebResponse getResponse(WebConnection connection, WebRequest request) throws IOException {
+		synchronized (monitor) {
+			inFlightCount++;
+		}
+		try {
+			if (permits == null) {
+				return connection.getResponse(request);
+			}
+			try {
+				permits.acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw (IOException) new InterruptedIOException(e.getMessage()).initCause(e);
+			}
+			try {
+				return connection.getResponse(request);
+			}
+			finally {
+				permits.release();
+			}
+		}
+		finally {
+			synchronized (monitor) {
+				inFlightCount--;
+				if (inFlightCount == 0) {
+					monitor.notifyAll();
+				}
+			}
+		}
+	}
+
+	private final class ExecutorWebConnection implements WebConnection {
+		private final WebConnection delegate;
+
+		private ExecutorWebConnection(WebConnection delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public WebResponse getResponse(WebRequest request) throws IOException {
+			return WebConnectionExecutor.this.getResponse(delegate, request);
+		}
+	}
+}
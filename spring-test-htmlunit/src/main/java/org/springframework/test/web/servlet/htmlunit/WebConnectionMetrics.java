@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+
+/**
+ * <p>
+ * Receives the measurements of {@link MockMvcWebConnection} and
+ * {@link DelegatingWebConnection}. Implementations typically publish the measurements
+ * to a metrics library, which keeps this library free of such a dependency.
+ * {@link SimpleWebConnectionMetrics} can be used to collect the measurements in memory.
+ * </p>
+ * <p>
+ * Implementations must be thread safe since the connections may be used concurrently.
+ * </p>
+ *
+ * @see MockMvcWebConnection#setMetrics(WebConnectionMetrics)
+ * @see DelegatingWebConnection#setMetrics(WebConnectionMetrics)
+ */
+public interface WebConnectionMetrics {
+	/**
+	 * The route that is reported by {@link #requestRouted(WebRequest, int, long)} when
+	 * no DelegateWebConnection matched and the default WebConnection was used.
+	 */
+	int DEFAULT_ROUTE = -1;
+
+	/**
+	 * Invoked when {@link MockMvcWebConnection} processed a request.
+	 *
+	 * @param webRequest the request that was processed
+	 * @param webResponse the resulting response
+	 * @param durationNanos the time spent processing the request in nanoseconds
+	 * @param forwardCount the number of forwards that were followed
+	 * @param bytesIn the number of bytes in the request body, or in the uploaded files of a
+	 * multipart request
+	 * @param bytesOut the number of bytes in the response body
+	 */
+	void requestProcessed(WebRequest webRequest, WebResponse webResponse, long durationNanos, int forwardCount,
+			long bytesIn, long bytesOut);
+
+	/**
+	 * Invoked when {@link MockMvcWebConnection} created a new
+	 * {@link javax.servlet.http.HttpSession} while processing a request.
+	 *
+	 * @param webRequest the request that created the session
+	 */
+	void sessionCreated(WebRequest webRequest);
+
+	/**
+	 * Invoked when {@link DelegatingWebConnection} obtained a response from one of its
+	 * delegates.
+	 *
+	 * @param webRequest the request that was routed
+	 * @param route the index of the DelegateWebConnection that was used or
+	 * {@link #DEFAULT_ROUTE} if the default WebConnection was used
+	 * @param durationNanos the time spent obtaining the response in nanoseconds
+	 */
+	void requestRouted(WebRequest webRequest, int route, long durationNanos);
+}
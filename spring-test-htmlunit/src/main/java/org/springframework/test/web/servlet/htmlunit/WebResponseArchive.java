@@ -0,0 +1,461 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.DownloadedContent;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * <p>
+ * A file that holds recorded responses, so that pages which load third party resources
+ * can be tested without network access and always see the same content. An archive is
+ * either opened for recording or for replaying. It is used by an
+ * {@link ArchiveWebConnection}.
+ * </p>
+ * <p>
+ * A recording archive appends each response to the file. A replaying archive maps the
+ * file into memory and indexes the responses by the HTTP method, the URL, and the
+ * submitted content of their request. The bodies are served from the mapped file without
+ * being copied. If the same request was recorded more than once, the last response is
+ * replayed.
+ * </p>
+ *
+ * <pre>
+ * // record once with network access
+ * WebResponseArchive archive = WebResponseArchive.forRecording(new File("src/test/resources/cdn.archive"));
+ *
+ * // replay in every other run
+ * WebResponseArchive archive = WebResponseArchive.forReplay(new File("src/test/resources/cdn.archive"));
+ * </pre>
+ *
+ * <p>
+ * Instances are thread safe and should be closed once they are no longer used.
+ * </p>
+ *
+ * @see ArchiveWebConnection
+ * @see MockMvcWebConnectionBuilderSupport#archiveResponses(WebResponseArchive)
+ */
+public final class WebResponseArchive {
+	private static final int MAGIC = 0x48554152;
+
+	private static final int VERSION = 1;
+
+	private static final String UTF_8 = "UTF-8";
+
+	private final File file;
+
+	private final DataOutputStream out;
+
+	private final MappedByteBuffer buffer;
+
+	private final Map<String, Integer> index;
+
+	private final AtomicLong recordedCount = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private WebResponseArchive(File file, DataOutputStream out, MappedByteBuffer buffer, Map<String, Integer> index) {
+		this.file = file;
+		this.out = out;
+		this.buffer = buffer;
+		this.index = index;
+	}
+
+	/**
+	 * Creates an archive that records responses. An existing file is replaced.
+	 *
+	 * @param file the file to record to. Cannot be null.
+	 * @return the archive
+	 * @throws IOException if the file cannot be created
+	 */
+	public static WebResponseArchive forRecording(File file) throws IOException {
+		Assert.notNull(file, "file cannot be null");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.flush();
+		return new WebResponseArchive(file, out, null, null);
+	}
+
+	/**
+	 * Opens an archive that replays the responses that were recorded to the file.
+	 *
+	 * @param file the file that was recorded. Cannot be null.
+	 * @return the archive
+	 * @throws IOException if the file cannot be read, is not an archive, or is truncated or
+	 * corrupt
+	 */
+	public static WebResponseArchive forReplay(File file) throws IOException {
+		Assert.notNull(file, "file cannot be null");
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is larger than 2 GB");
+			}
+			// the mapping stays valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			randomAccessFile.close();
+		}
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException(file + " is not a response archive");
+		}
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		try {
+			while (buffer.hasRemaining()) {
+				String key = readString(buffer, readLength(buffer));
+				index.put(key, buffer.position());
+				skipResponse(buffer);
+			}
+		}
+		catch (IOException e) {
+			throw (IOException) new IOException(file + " is truncated or corrupt: " + e.getMessage()).initCause(e);
+		}
+		return new WebResponseArchive(file, null, buffer, index);
+	}
+
+	/**
+	 * Whether this archive records responses, rather than replaying them.
+	 *
+	 * @return true if this archive records responses
+	 */
+	public boolean isRecording() {
+		return out != null;
+	}
+
+	/**
+	 * The file of this archive.
+	 *
+	 * @return the file of this archive
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The number of distinct requests whose responses can be replayed. A recording archive
+	 * returns 0.
+	 *
+	 * @return the number of distinct requests whose responses can be replayed
+	 */
+	public int getSize() {
+		return index == null ? 0 : index.size();
+	}
+
+	/**
+	 * The number of responses that have been recorded.
+	 *
+	 * @return the number of responses that have been recorded
+	 */
+	public long getRecordedCount() {
+		return recordedCount.get();
+	}
+
+	/**
+	 * The number of responses that have been replayed.
+	 *
+	 * @return the number of responses that have been replayed
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * The number of requests that could not be replayed because no response was recorded.
+	 *
+	 * @return the number of requests that could not be replayed
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Closes the file of a recording archive. The responses of a replaying archive remain
+	 * mapped until the archive is garbage collected.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	public void close() throws IOException {
+		if (out != null) {
+			synchronized (out) {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Appends the response to a recording archive. The body is stored as it is provided by
+	 * {@link WebResponse#getContentAsStream()}, which has already been decoded, so the
+	 * Content-Encoding and Content-Length headers are not stored.
+	 *
+	 * @param request the request
+	 * @param response the response to the request
+	 * @throws IOException if the response cannot be written
+	 */
+	void record(WebRequest request, WebResponse response) throws IOException {
+		Assert.state(out != null, "Cannot record to an archive that was opened for replay");
+		List<NameValuePair> headers = new ArrayList<NameValuePair>();
+		for (NameValuePair header : response.getResponseHeaders()) {
+			String name = header.getName();
+			if (!"Content-Encoding".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)) {
+				headers.add(header);
+			}
+		}
+		byte[] body = readBody(response);
+		synchronized (out) {
+			writeString(key(request));
+			out.writeInt(response.getStatusCode());
+			writeString(response.getStatusMessage());
+			out.writeInt(headers.size());
+			for (NameValuePair header : headers) {
+				writeString(header.getName());
+				writeString(header.getValue());
+			}
+			out.writeInt(body.length);
+			out.write(body);
+			out.flush();
+		}
+		recordedCount.incrementAndGet();
+	}
+
+	/**
+	 * Obtains the recorded response for the request.
+	 *
+	 * @param request the request
+	 * @return the recorded response or null if no response was recorded for the request
+	 */
+	WebResponseData replay(WebRequest request) {
+		Assert.state(buffer != null, "Cannot replay from an archive that was opened for recording");
+		Integer position = index.get(key(request));
+		if (position == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		ByteBuffer entry = buffer.duplicate();
+		entry.position(position);
+		int statusCode = entry.getInt();
+		String statusMessage = readString(entry);
+		int headerCount = entry.getInt();
+		List<NameValuePair> headers = new ArrayList<NameValuePair>(headerCount);
+		for (int i = 0; i < headerCount; i++) {
+			headers.add(new NameValuePair(readString(entry), readString(entry)));
+		}
+		int bodyLength = entry.getInt();
+		entry.limit(entry.position() + bodyLength);
+		return new WebResponseData(new MappedContent(entry.slice()), statusCode, statusMessage,
+				Collections.unmodifiableList(headers));
+	}
+
+	/**
+	 * Identifies the request by its method, its URL, and the content it submits.
+	 *
+	 * @param request the request
+	 * @return the key of the request
+	 */
+	static String key(WebRequest request) {
+		StringBuilder key = new StringBuilder();
+		key.append(request.getHttpMethod()).append(' ').append(request.getUrl());
+		String body = request.getRequestBody();
+		if (body != null) {
+			key.append('\n').append(body);
+		}
+		else {
+			for (NameValuePair parameter : request.getRequestParameters()) {
+				key.append('\n').append(parameter.getName()).append('=').append(parameter.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	private static byte[] readBody(WebResponse response) throws IOException {
+		InputStream content = response.getContentAsStream();
+		if (content == null) {
+			return new byte[0];
+		}
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = content.read(chunk)) != -1) {
+				body.write(chunk, 0, read);
+			}
+			return body.toByteArray();
+		}
+		finally {
+			content.close();
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		return readString(buffer, buffer.getInt());
+	}
+
+	private static String readString(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		try {
+			return new String(bytes, UTF_8);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Skips a response while checking that each length fits into the rest of the file, so
+	 * that {@link #replay(WebRequest)} can read the indexed responses without checks.
+	 *
+	 * @param buffer the buffer positioned at the status code of the response
+	 * @throws IOException if the response is truncated or corrupt
+	 */
+	private static void skipResponse(ByteBuffer buffer) throws IOException {
+		readInt(buffer);
+		skip(buffer, readLength(buffer));
+		int headerCount = readInt(buffer);
+		// each header has at least the lengths of its name and value
+		if (headerCount < 0 || headerCount > buffer.remaining() / 8) {
+			throw new IOException("Invalid header count " + headerCount + " at position " + (buffer.position() - 4));
+		}
+		for (int i = 0; i < headerCount * 2; i++) {
+			skip(buffer, readLength(buffer));
+		}
+		skip(buffer, readLength(buffer));
+	}
+
+	private static int readLength(ByteBuffer buffer) throws IOException {
+		int length = readInt(buffer);
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid length " + length + " at position " + (buffer.position() - 4));
+		}
+		return length;
+	}
+
+	private static int readInt(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 4) {
+			throw new IOException("Unexpected end of file at position " + buffer.position());
+		}
+		return buffer.getInt();
+	}
+
+	private static void skip(ByteBuffer buffer, int length) {
+		buffer.position(buffer.position() + length);
+	}
+
+	/**
+	 * The body of a replayed response, which is read directly from the mapped file.
+	 */
+	private static final class MappedContent implements DownloadedContent {
+		private static final long serialVersionUID = 1L;
+
+		private final transient ByteBuffer content;
+
+		private MappedContent(ByteBuffer content) {
+			this.content = content;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteBufferInputStream(content.duplicate());
+		}
+
+		public void cleanUp() {
+		}
+
+		public boolean isEmpty() {
+			return !content.hasRemaining();
+		}
+
+		private Object writeReplace() throws ObjectStreamException {
+			byte[] bytes = new byte[content.remaining()];
+			content.duplicate().get(bytes);
+			return new DownloadedContent.InMemory(bytes);
+		}
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.springframework.test.web.servlet.htmlunit.matchers;
 
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -60,7 +61,7 @@ import com.gargoylesoftware.htmlunit.WebRequest;
  * @see org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher
  * @see org.springframework.test.web.servlet.htmlunit.DelegatingWebConnection
  */
-public final class HostRequestMatcher implements WebRequestMatcher {
+public final class HostRequestMatcher implements OriginRequestMatcher {
 	private final Set<String> hosts = new HashSet<String>();
 
 	/**
@@ -72,6 +73,15 @@ public final class HostRequestMatcher implements WebRequestMatcher {
 		this.hosts.addAll(Arrays.asList(hosts));
 	}
 
+	/**
+	 * The hosts, optionally followed by a port, that this matcher matches on.
+	 *
+	 * @return an unmodifiable view of the hosts (i.e. "localhost", "example.com:443")
+	 */
+	public Set<String> getHosts() {
+		return Collections.unmodifiableSet(hosts);
+	}
+
 	@Override
 	public boolean matches(WebRequest request) {
 		URL url = request.getUrl();
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit.matchers;
+
+/**
+ * <p>
+ * A WebRequestMatcher whose result depends only on the origin (the scheme, host and port)
+ * of WebRequest#getUrl(). Two requests to the same origin must always produce the same
+ * result.
+ * </p>
+ * <p>
+ * This allows the routing decisions of a
+ * {@link org.springframework.test.web.servlet.htmlunit.DelegatingWebConnection} to be
+ * cached per origin.
+ * </p>
+ *
+ * @see HostRequestMatcher
+ * @see org.springframework.test.web.servlet.htmlunit.DelegatingWebConnection#setOriginCacheEnabled(boolean)
+ */
+public interface OriginRequestMatcher extends WebRequestMatcher {
+}
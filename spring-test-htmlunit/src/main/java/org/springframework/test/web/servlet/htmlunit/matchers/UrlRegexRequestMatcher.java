@@ -41,6 +41,15 @@ public final class UrlRegexRequestMatcher implements WebRequestMatcher {
 		this.pattern = pattern;
 	}
 
+	/**
+	 * The pattern that WebRequest#getUrl().toExternalForm() must match.
+	 *
+	 * @return the pattern to match on
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
 	@Override
 	public boolean matches(WebRequest request) {
 		String url = request.getUrl().toExternalForm();
@@ -100,6 +100,17 @@ public class MockMvcHtmlUnitDriverBuilder extends MockMvcWebConnectionBuilderSup
 		return configureDriver(new WebConnectionHtmlUnitDriver(BrowserVersion.CHROME));
 	}
 
+	/**
+	 * Creates a {@link MockMvcHtmlUnitDriverPool} that reuses the drivers configured by
+	 * this builder. The builder must not be modified once the pool is in use.
+	 *
+	 * @param maxIdle the maximum number of idle drivers that are kept. Must be positive.
+	 * @return the MockMvcHtmlUnitDriverPool to use
+	 */
+	public MockMvcHtmlUnitDriverPool createDriverPool(int maxIdle) {
+		return new MockMvcHtmlUnitDriverPool(this, maxIdle);
+	}
+
 	/**
 	 * Configures an existing WebConnectionHtmlUnitDriver.
 	 *
@@ -108,7 +119,7 @@ public class MockMvcHtmlUnitDriverBuilder extends MockMvcWebConnectionBuilderSup
 	 */
 	public HtmlUnitDriver configureDriver(WebConnectionHtmlUnitDriver driver) {
 		driver.setJavascriptEnabled(javascriptEnabled);
-		driver.setWebConnection(createConnection(driver.getWebConnection()));
+		driver.setWebConnection(createConnection(driver.getWebConnection(), driver.getCapturedWebClient().getCookieManager()));
 		return driver;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit.webdriver;
+
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import org.springframework.test.web.servlet.htmlunit.WebClientPoolSupport;
+import org.springframework.util.Assert;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * <p>
+ * A pool of HtmlUnitDriver instances that are configured by a
+ * {@link MockMvcHtmlUnitDriverBuilder}. For example:
+ * </p>
+ *
+ * <pre>
+ * static MockMvcHtmlUnitDriverPool pool = ...
+ *
+ * HtmlUnitDriver driver;
+ *
+ * &#064;Before
+ * public void setup() {
+ *     driver = pool.checkout();
+ * }
+ *
+ * &#064;After
+ * public void destroy() {
+ *     pool.release(driver);
+ * }
+ * </pre>
+ * <p>
+ * Released drivers are reset as described by {@link WebClientPoolSupport} and should
+ * not be quit. Drivers that are no longer pooled are quit.
+ * </p>
+ *
+ * @see MockMvcHtmlUnitDriverBuilder#createDriverPool(int)
+ */
+public final class MockMvcHtmlUnitDriverPool extends WebClientPoolSupport<HtmlUnitDriver> {
+	private final MockMvcHtmlUnitDriverBuilder builder;
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param builder the {@link MockMvcHtmlUnitDriverBuilder} used to configure the
+	 * drivers. It must not be modified once the pool is in use. Cannot be null.
+	 * @param maxIdle the maximum number of idle drivers that are kept. Must be positive.
+	 */
+	public MockMvcHtmlUnitDriverPool(MockMvcHtmlUnitDriverBuilder builder, int maxIdle) {
+		super(maxIdle);
+		Assert.notNull(builder, "builder cannot be null");
+		this.builder = builder;
+	}
+
+	/**
+	 * Creates a new driver with the BrowserVersion set to CHROME.
+	 *
+	 * @return the new driver
+	 */
+	@Override
+	protected HtmlUnitDriver create() {
+		return new WebConnectionHtmlUnitDriver(BrowserVersion.CHROME);
+	}
+
+	@Override
+	protected WebClient getWebClient(HtmlUnitDriver driver) {
+		return ((WebConnectionHtmlUnitDriver) driver).getCapturedWebClient();
+	}
+
+	@Override
+	protected void configure(HtmlUnitDriver driver) {
+		builder.configureDriver((WebConnectionHtmlUnitDriver) driver);
+	}
+
+	@Override
+	protected void windowsReset(HtmlUnitDriver driver) {
+		((WebConnectionHtmlUnitDriver) driver).switchToCurrentWindow();
+	}
+
+	@Override
+	protected void destroy(HtmlUnitDriver driver) {
+		driver.quit();
+	}
+}
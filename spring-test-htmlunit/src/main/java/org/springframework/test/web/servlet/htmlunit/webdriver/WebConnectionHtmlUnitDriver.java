@@ -96,4 +96,21 @@ public class WebConnectionHtmlUnitDriver extends HtmlUnitDriver {
 		Assert.notNull(webConnection, "webConnection cannot be null");
 		this.webClient.setWebConnection(webConnection);
 	}
+
+	/**
+	 * Obtains the WebClient that was captured by {@link #modifyWebClient(WebClient)}.
+	 *
+	 * @return the WebClient of this driver
+	 */
+	WebClient getCapturedWebClient() {
+		return webClient;
+	}
+
+	/**
+	 * Makes the current window of the WebClient the window of this driver, which is
+	 * necessary once the window of this driver was closed.
+	 */
+	void switchToCurrentWindow() {
+		switchTo().window(String.valueOf(System.identityHashCode(webClient.getCurrentWindow())));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AcceptLanguageParserTests {
+
+	@Test
+	public void parseSingle() {
+		assertThat(AcceptLanguageParser.parse("da")).isEqualTo(Arrays.asList(new Locale("da")));
+	}
+
+	@Test
+	public void parseRegion() {
+		assertThat(AcceptLanguageParser.parse("en-US")).isEqualTo(Arrays.asList(Locale.US));
+	}
+
+	@Test
+	public void parseQualityAsVariant() {
+		assertThat(AcceptLanguageParser.parse("en-gb;q=0.8")).isEqualTo(Arrays.asList(new Locale("en", "gb", "0.8")));
+	}
+
+	@Test
+	public void parseOrderedByQuality() {
+		assertThat(AcceptLanguageParser.parse("en;q=0.7, da, en-gb;q=0.8")).isEqualTo(
+				Arrays.asList(new Locale("da"), new Locale("en", "gb", "0.8"), new Locale("en", "", "0.7")));
+	}
+
+	@Test
+	public void parseSameQualityKeepsOrder() {
+		assertThat(AcceptLanguageParser.parse("fr;q=0.5, de, it;q=0.5, en")).isEqualTo(
+				Arrays.asList(Locale.GERMAN, Locale.ENGLISH, new Locale("fr", "", "0.5"), new Locale("it", "", "0.5")));
+	}
+
+	@Test
+	public void parseWithoutWhitespace() {
+		assertThat(AcceptLanguageParser.parse("da,en")).isEqualTo(Arrays.asList(new Locale("da"), Locale.ENGLISH));
+	}
+
+	@Test
+	public void parseThreeLetterLanguage() {
+		assertThat(AcceptLanguageParser.parse("gsw-CH")).isEqualTo(Arrays.asList(new Locale("gsw", "CH")));
+	}
+
+	@Test
+	public void parseScript() {
+		assertThat(AcceptLanguageParser.parse("zh-Hant-TW")).isEqualTo(Arrays.asList(Locale.TAIWAN));
+	}
+
+	@Test
+	public void parseNumericRegion() {
+		assertThat(AcceptLanguageParser.parse("es-419")).isEqualTo(Arrays.asList(new Locale("es", "419")));
+	}
+
+	@Test
+	public void parseWildcardSkipped() {
+		assertThat(AcceptLanguageParser.parse("fr-CH, *;q=0.5")).isEqualTo(Arrays.asList(new Locale("fr", "CH")));
+	}
+
+	@Test
+	public void parseQualityZeroSkipped() {
+		assertThat(AcceptLanguageParser.parse("da, en;q=0")).isEqualTo(Arrays.asList(new Locale("da")));
+	}
+
+	@Test
+	public void parseInvalidSkipped() {
+		assertThat(AcceptLanguageParser.parse("x-klingon, 12, en;q=abc, fr")).isEqualTo(Arrays.asList(Locale.FRENCH));
+	}
+
+	@Test
+	public void parseEmpty() {
+		assertThat(AcceptLanguageParser.parse("")).isEmpty();
+	}
+
+	@Test
+	public void parseCached() {
+		assertThat(AcceptLanguageParser.parse("en-US, en;q=0.8")).isSameAs(
+				AcceptLanguageParser.parse(new String("en-US, en;q=0.8")));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void parseUnmodifiable() {
+		AcceptLanguageParser.parse("da").clear();
+	}
+}
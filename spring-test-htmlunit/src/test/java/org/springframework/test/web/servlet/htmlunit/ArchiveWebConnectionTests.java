@@ -0,0 +1,133 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class ArchiveWebConnectionTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private WebConnection delegate;
+
+	private File file;
+
+	@Before
+	public void setup() throws Exception {
+		delegate = mock(WebConnection.class);
+		when(delegate.getResponse(any(WebRequest.class))).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) throws Exception {
+				WebRequest request = (WebRequest) invocation.getArguments()[0];
+				List<NameValuePair> headers = new ArrayList<NameValuePair>();
+				headers.add(new NameValuePair("Content-Type", "text/plain"));
+				byte[] content = ("response " + request.getUrl().getPath()).getBytes("UTF-8");
+				return new WebResponse(new WebResponseData(content, 200, "OK", headers), request, 0L);
+			}
+		});
+		file = folder.newFile();
+	}
+
+	// --- constructor
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullDelegate() throws Exception {
+		new ArchiveWebConnection(null, WebResponseArchive.forRecording(file));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullArchive() {
+		new ArchiveWebConnection(delegate, null);
+	}
+
+	// --- getResponse
+
+	@Test
+	public void getResponseRecording() throws Exception {
+		WebResponseArchive archive = WebResponseArchive.forRecording(file);
+		ArchiveWebConnection connection = new ArchiveWebConnection(delegate, archive);
+
+		WebResponse response = connection.getResponse(request("http://example.com/a"));
+		archive.close();
+
+		assertThat(response.getContentAsString()).isEqualTo("response /a");
+		assertThat(archive.getRecordedCount()).isEqualTo(1);
+		verify(delegate).getResponse(any(WebRequest.class));
+	}
+
+	@Test
+	public void getResponseReplaying() throws Exception {
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		new ArchiveWebConnection(delegate, recording).getResponse(request("http://example.com/a"));
+		recording.close();
+		WebConnection replayDelegate = mock(WebConnection.class);
+		ArchiveWebConnection connection = new ArchiveWebConnection(replayDelegate, WebResponseArchive.forReplay(file));
+
+		WebRequest request = request("http://example.com/a");
+		WebResponse response = connection.getResponse(request);
+
+		assertThat(response.getWebRequest()).isSameAs(request);
+		assertThat(response.getStatusCode()).isEqualTo(200);
+		assertThat(response.getContentType()).isEqualTo("text/plain");
+		assertThat(response.getContentAsString()).isEqualTo("response /a");
+		verifyZeroInteractions(replayDelegate);
+	}
+
+	@Test
+	public void getResponseReplayingMiss() throws Exception {
+		WebResponseArchive.forRecording(file).close();
+		WebResponseArchive archive = WebResponseArchive.forReplay(file);
+		ArchiveWebConnection connection = new ArchiveWebConnection(delegate, archive);
+
+		try {
+			connection.getResponse(request("http://example.com/missing"));
+			throw new AssertionError("Expected IOException");
+		}
+		catch (IOException success) {
+			assertThat(success.getMessage()).contains("GET http://example.com/missing");
+		}
+		assertThat(archive.getMissCount()).isEqualTo(1);
+		verifyZeroInteractions(delegate);
+	}
+
+	private static WebRequest request(String url) throws Exception {
+		return new WebRequest(new URL(url));
+	}
+}
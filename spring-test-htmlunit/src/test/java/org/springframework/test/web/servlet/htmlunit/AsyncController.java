@@ -0,0 +1,75 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
+
+@Controller
+public class AsyncController {
+
+	@RequestMapping("/async/callable")
+	@ResponseBody
+	public Callable<String> callable() {
+		return new Callable<String>() {
+			public String call() throws Exception {
+				return "callable";
+			}
+		};
+	}
+
+	@RequestMapping("/async/deferred")
+	@ResponseBody
+	public DeferredResult<String> deferred() {
+		final DeferredResult<String> result = new DeferredResult<String>();
+		new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e) {
+				}
+				result.setResult("deferred");
+			}
+		}.start();
+		return result;
+	}
+
+	@RequestMapping("/async/timeout")
+	@ResponseBody
+	public DeferredResult<String> timeout() {
+		return new DeferredResult<String>(null, "timeout");
+	}
+
+	@RequestMapping("/async/never")
+	@ResponseBody
+	public DeferredResult<String> never() {
+		return new DeferredResult<String>();
+	}
+
+	@RequestMapping("/async/forward")
+	public Callable<String> forward() {
+		return new Callable<String>() {
+			public String call() throws Exception {
+				return "forward:/forward/info";
+			}
+		};
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher;
+import org.springframework.test.web.servlet.htmlunit.matchers.WebRequestMatcher;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class CachingWebConnectionTests {
+	private static final String LAST_MODIFIED = "Thu, 01 Jan 2015 00:00:00 GMT";
+
+	private WebConnection delegate;
+
+	private CachingWebConnection connection;
+
+	private List<NameValuePair> responseHeaders;
+
+	private int responseCount;
+
+	@Before
+	public void setup() throws Exception {
+		delegate = mock(WebConnection.class);
+		responseHeaders = new ArrayList<NameValuePair>();
+		responseHeaders.add(new NameValuePair("Cache-Control", "max-age=60"));
+		responseHeaders.add(new NameValuePair("ETag", "\"abc\""));
+		responseHeaders.add(new NameValuePair("Last-Modified", LAST_MODIFIED));
+		when(delegate.getResponse(any(WebRequest.class))).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) throws Exception {
+				WebRequest request = (WebRequest) invocation.getArguments()[0];
+				responseCount++;
+				byte[] content = ("response " + responseCount).getBytes("UTF-8");
+				return new WebResponse(new WebResponseData(content, 200, "OK", responseHeaders), request, 0L);
+			}
+		});
+		connection = new CachingWebConnection(delegate, 2, new UrlRegexRequestMatcher(".*/cached/.*"));
+	}
+
+	// --- constructor
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullDelegate() {
+		new CachingWebConnection(null, 1, new UrlRegexRequestMatcher(".*"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorMaxEntriesZero() {
+		new CachingWebConnection(delegate, 0, new UrlRegexRequestMatcher(".*"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNoMatchers() {
+		new CachingWebConnection(delegate, 1, new WebRequestMatcher[0]);
+	}
+
+	// --- getResponse
+
+	@Test
+	public void getResponseCached() throws Exception {
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 1");
+
+		WebResponse response = connection.getResponse(request("http://localhost/cached/a"));
+
+		assertThat(response.getContentAsString()).isEqualTo("response 1");
+		assertThat(response.getResponseHeaderValue("ETag")).isEqualTo("\"abc\"");
+		assertThat(connection.getHitCount()).isEqualTo(1);
+		assertThat(connection.getMissCount()).isEqualTo(1);
+		verify(delegate).getResponse(any(WebRequest.class));
+	}
+
+	@Test
+	public void getResponseNotMatched() throws Exception {
+		getContent("http://localhost/other/a");
+
+		assertThat(getContent("http://localhost/other/a")).isEqualTo("response 2");
+		assertThat(connection.getMissCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void getResponsePost() throws Exception {
+		WebRequest request = request("http://localhost/cached/a");
+		request.setHttpMethod(HttpMethod.POST);
+		connection.getResponse(request);
+		connection.getResponse(request);
+
+		verify(delegate, times(2)).getResponse(request);
+		assertThat(connection.getSize()).isEqualTo(0);
+	}
+
+	@Test
+	public void getResponseNoStore() throws Exception {
+		responseHeaders.set(0, new NameValuePair("Cache-Control", "private, no-store"));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseNoFreshness() throws Exception {
+		responseHeaders.remove(0);
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseMaxAgeZero() throws Exception {
+		responseHeaders.set(0, new NameValuePair("Cache-Control", "max-age=0"));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseExpires() throws Exception {
+		HttpHeaders expires = new HttpHeaders();
+		expires.setExpires(System.currentTimeMillis() + 60000);
+		responseHeaders.set(0, new NameValuePair("Expires", expires.getFirst(HttpHeaders.EXPIRES)));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 1");
+	}
+
+	@Test
+	public void getResponseExpiresInvalid() throws Exception {
+		responseHeaders.set(0, new NameValuePair("Expires", "0"));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseExpiresInPast() throws Exception {
+		responseHeaders.set(0, new NameValuePair("Expires", LAST_MODIFIED));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseVary() throws Exception {
+		responseHeaders.add(new NameValuePair("Vary", "Accept"));
+		getContent("http://localhost/cached/a");
+
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseRequestNoCache() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("Cache-Control", "no-cache");
+
+		assertThat(connection.getResponse(request).getContentAsString()).isEqualTo("response 2");
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	@Test
+	public void getResponseLeastRecentlyUsedEvicted() throws Exception {
+		getContent("http://localhost/cached/a");
+		getContent("http://localhost/cached/b");
+		getContent("http://localhost/cached/a");
+		getContent("http://localhost/cached/c");
+
+		assertThat(connection.getSize()).isEqualTo(2);
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 1");
+		assertThat(getContent("http://localhost/cached/b")).isEqualTo("response 4");
+	}
+
+	@Test
+	public void clear() throws Exception {
+		getContent("http://localhost/cached/a");
+
+		connection.clear();
+
+		assertThat(connection.getSize()).isEqualTo(0);
+		assertThat(getContent("http://localhost/cached/a")).isEqualTo("response 2");
+	}
+
+	// --- conditional requests
+
+	@Test
+	public void getResponseIfNoneMatch() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-None-Match", "\"xyz\", \"abc\"");
+
+		WebResponse response = connection.getResponse(request);
+
+		assertThat(response.getStatusCode()).isEqualTo(304);
+		assertThat(response.getContentAsString()).isEqualTo("");
+		assertThat(response.getResponseHeaderValue("ETag")).isEqualTo("\"abc\"");
+		verify(delegate).getResponse(any(WebRequest.class));
+	}
+
+	@Test
+	public void getResponseIfNoneMatchDifferent() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-None-Match", "\"xyz\"");
+		request.setAdditionalHeader("If-Modified-Since", LAST_MODIFIED);
+
+		WebResponse response = connection.getResponse(request);
+
+		assertThat(response.getStatusCode()).isEqualTo(200);
+		assertThat(response.getContentAsString()).isEqualTo("response 1");
+	}
+
+	@Test
+	public void getResponseIfModifiedSince() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-Modified-Since", LAST_MODIFIED);
+
+		assertThat(connection.getResponse(request).getStatusCode()).isEqualTo(304);
+	}
+
+	@Test
+	public void getResponseIfModifiedSinceBefore() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-Modified-Since", "Wed, 31 Dec 2014 00:00:00 GMT");
+
+		assertThat(connection.getResponse(request).getStatusCode()).isEqualTo(200);
+	}
+
+	@Test
+	public void getResponseIfModifiedSinceInvalid() throws Exception {
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-Modified-Since", "invalid");
+
+		assertThat(connection.getResponse(request).getStatusCode()).isEqualTo(200);
+	}
+
+	@Test
+	public void getResponseIfModifiedSinceLastModifiedInvalid() throws Exception {
+		responseHeaders.set(2, new NameValuePair("Last-Modified", "invalid"));
+		getContent("http://localhost/cached/a");
+		WebRequest request = request("http://localhost/cached/a");
+		request.setAdditionalHeader("If-Modified-Since", LAST_MODIFIED);
+
+		assertThat(connection.getResponse(request).getStatusCode()).isEqualTo(200);
+	}
+
+	private String getContent(String url) throws IOException {
+		return connection.getResponse(request(url)).getContentAsString();
+	}
+
+	private static WebRequest request(String url) throws IOException {
+		return new WebRequest(new URL(url));
+	}
+}
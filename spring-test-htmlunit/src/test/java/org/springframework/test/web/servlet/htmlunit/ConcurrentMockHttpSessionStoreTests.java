@@ -0,0 +1,264 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ConcurrentMockHttpSessionStoreTests {
+	private ConcurrentMockHttpSessionStore store;
+
+	@Before
+	public void setup() {
+		store = new ConcurrentMockHttpSessionStore();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorInvalidConcurrencyLevel() {
+		new ConcurrentMockHttpSessionStore(0);
+	}
+
+	@Test
+	public void getSessionMissing() {
+		assertThat(store.getSession("missing")).isNull();
+	}
+
+	@Test
+	public void putSessionIfAbsent() {
+		MockHttpSession session = new MockHttpSession(null, "id");
+
+		assertThat(store.putSessionIfAbsent(session)).isNull();
+
+		assertThat(store.getSession("id")).isSameAs(session);
+		assertThat(store.getSessionCount()).isEqualTo(1);
+		assertThat(store.getCreateCount()).isEqualTo(1);
+		assertThat(store.getCreateConflictCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void putSessionIfAbsentExisting() {
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+
+		assertThat(store.putSessionIfAbsent(new MockHttpSession(null, "id"))).isSameAs(session);
+
+		assertThat(store.getSession("id")).isSameAs(session);
+		assertThat(store.getCreateCount()).isEqualTo(1);
+		assertThat(store.getCreateConflictCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void putSessionIfAbsentNull() {
+		store.putSessionIfAbsent(null);
+	}
+
+	@Test
+	public void removeSession() {
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+
+		assertThat(store.removeSession(session)).isTrue();
+
+		assertThat(store.getSession("id")).isNull();
+		assertThat(store.getSessionCount()).isEqualTo(0);
+		assertThat(store.getRemoveCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void removeSessionReplaced() {
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+
+		assertThat(store.removeSession(new MockHttpSession(null, "id"))).isFalse();
+
+		assertThat(store.getSession("id")).isSameAs(session);
+		assertThat(store.getRemoveCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void getSessionMaxInactiveIntervalExpired() {
+		store.setMaxInactiveInterval(60);
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+		lastAccessed(session, System.currentTimeMillis() - 61000L);
+
+		assertThat(store.getSession("id")).isNull();
+
+		assertThat(session.isInvalid()).isTrue();
+		assertThat(store.getSessionCount()).isEqualTo(0);
+		assertThat(store.getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getSessionMaxInactiveIntervalNotExpired() {
+		store.setMaxInactiveInterval(60);
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+		lastAccessed(session, System.currentTimeMillis() - 30000L);
+
+		assertThat(store.getSession("id")).isSameAs(session);
+		assertThat(store.getEvictionCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void getSessionMaxInactiveIntervalDefaultNeverExpires() {
+		MockHttpSession session = new MockHttpSession(null, "id");
+		store.putSessionIfAbsent(session);
+		lastAccessed(session, 0L);
+
+		assertThat(store.getSession("id")).isSameAs(session);
+	}
+
+	@Test
+	public void putSessionIfAbsentEvictsExpiredSessions() {
+		store.setMaxInactiveInterval(60);
+		MockHttpSession expired = new MockHttpSession(null, "expired");
+		store.putSessionIfAbsent(expired);
+		lastAccessed(expired, System.currentTimeMillis() - 61000L);
+
+		store.putSessionIfAbsent(new MockHttpSession(null, "id"));
+
+		assertThat(expired.isInvalid()).isTrue();
+		assertThat(store.getSessionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void putSessionIfAbsentMaxSessionsEvictsLeastRecentlyAccessed() {
+		final List<String> evicted = new ArrayList<String>();
+		store.setMaxSessions(2);
+		store.setEvictionListener(new MockHttpSessionEvictionListener() {
+			@Override
+			public void sessionEvicted(MockHttpSession session) {
+				evicted.add(session.getId() + "=" + session.getAttribute("name"));
+			}
+		});
+		long now = System.currentTimeMillis();
+		MockHttpSession first = new MockHttpSession(null, "first");
+		first.setAttribute("name", "value");
+		store.putSessionIfAbsent(first);
+		lastAccessed(first, now - 1000L);
+		MockHttpSession second = new MockHttpSession(null, "second");
+		store.putSessionIfAbsent(second);
+		lastAccessed(second, now - 2000L);
+
+		store.putSessionIfAbsent(new MockHttpSession(null, "third"));
+
+		assertThat(store.getSessionCount()).isEqualTo(2);
+		assertThat(store.getSession("second")).isNull();
+		assertThat(second.isInvalid()).isTrue();
+		assertThat(store.getSession("first")).isSameAs(first);
+		assertThat(store.getSession("third")).isNotNull();
+		assertThat(evicted).containsOnly("second=null");
+		assertThat(store.getEvictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void putSessionIfAbsentMaxSessionsEvictsBatch() {
+		store.setMaxSessions(20);
+		long now = System.currentTimeMillis();
+		List<MockHttpSession> added = new ArrayList<MockHttpSession>();
+		for (int i = 0; i < 20; i++) {
+			MockHttpSession session = new MockHttpSession(null, "id" + i);
+			store.putSessionIfAbsent(session);
+			lastAccessed(session, now - 1000L * (20 - i));
+			added.add(session);
+		}
+		assertThat(store.getEvictionCount()).isEqualTo(0);
+
+		store.putSessionIfAbsent(new MockHttpSession(null, "new"));
+
+		assertThat(store.getSessionCount()).isEqualTo(18);
+		assertThat(store.getEvictionCount()).isEqualTo(3);
+		assertThat(added.get(0).isInvalid()).isTrue();
+		assertThat(added.get(1).isInvalid()).isTrue();
+		assertThat(added.get(2).isInvalid()).isTrue();
+		assertThat(store.getSession("id3")).isSameAs(added.get(3));
+		assertThat(store.getSession("new")).isNotNull();
+
+		store.putSessionIfAbsent(new MockHttpSession(null, "other"));
+
+		assertThat(store.getSessionCount()).isEqualTo(19);
+		assertThat(store.getEvictionCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void evictionListenerCanReadAttributes() {
+		final List<Object> evicted = new ArrayList<Object>();
+		store.setMaxSessions(1);
+		store.setEvictionListener(new MockHttpSessionEvictionListener() {
+			@Override
+			public void sessionEvicted(MockHttpSession session) {
+				evicted.add(session.getAttribute("name"));
+			}
+		});
+		MockHttpSession first = new MockHttpSession(null, "first");
+		first.setAttribute("name", "value");
+		store.putSessionIfAbsent(first);
+		lastAccessed(first, 0L);
+
+		store.putSessionIfAbsent(new MockHttpSession(null, "second"));
+
+		assertThat(evicted).containsOnly("value");
+	}
+
+	@Test
+	public void putSessionIfAbsentConcurrent() throws Exception {
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<MockHttpSession>> results = new ArrayList<Future<MockHttpSession>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<MockHttpSession>() {
+					@Override
+					public MockHttpSession call() throws Exception {
+						start.await();
+						MockHttpSession session = new MockHttpSession(null, "id");
+						MockHttpSession existing = store.putSessionIfAbsent(session);
+						return existing == null ? session : existing;
+					}
+				}));
+			}
+			start.countDown();
+
+			for (Future<MockHttpSession> result : results) {
+				assertThat(result.get()).isSameAs(store.getSession("id"));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(store.getCreateCount()).isEqualTo(1);
+		assertThat(store.getCreateConflictCount()).isEqualTo(threads - 1);
+	}
+
+	private static void lastAccessed(MockHttpSession session, long lastAccessedTime) {
+		ReflectionTestUtils.setField(session, "lastAccessedTime", lastAccessedTime);
+	}
+}
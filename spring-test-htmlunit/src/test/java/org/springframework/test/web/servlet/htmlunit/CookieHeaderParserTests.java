@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.List;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CookieHeaderParserTests {
+
+	@Test
+	public void parseSingle() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=value");
+
+		assertCookies(cookies, "name", "value");
+	}
+
+	@Test
+	public void parseMulti() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=value; name2=value2;name3=value3");
+
+		assertCookies(cookies, "name", "value", "name2", "value2", "name3", "value3");
+	}
+
+	@Test
+	public void parseWhitespace() {
+		List<Cookie> cookies = CookieHeaderParser.parse("  name = value ;\tname2=value2\t");
+
+		assertCookies(cookies, "name", "value", "name2", "value2");
+	}
+
+	@Test
+	public void parseEmbeddedEquals() {
+		List<Cookie> cookies = CookieHeaderParser.parse("token=YWJj==; jwt=a.b=.c=; name=value");
+
+		assertCookies(cookies, "token", "YWJj==", "jwt", "a.b=.c=", "name", "value");
+	}
+
+	@Test
+	public void parseQuoted() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=\"a value\"; name2=value2");
+
+		assertCookies(cookies, "name", "a value", "name2", "value2");
+	}
+
+	@Test
+	public void parseQuotedSemicolon() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=\"a value; with=semicolon\"; name2=value2");
+
+		assertCookies(cookies, "name", "\"a value", "with", "semicolon\"", "name2", "value2");
+	}
+
+	@Test
+	public void parseEmptyValue() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=; name2=\"\"");
+
+		assertCookies(cookies, "name", "", "name2", "");
+	}
+
+	@Test
+	public void parseEmptyPairs() {
+		List<Cookie> cookies = CookieHeaderParser.parse(";; name=value; ;");
+
+		assertCookies(cookies, "name", "value");
+	}
+
+	@Test
+	public void parseEmptyName() {
+		List<Cookie> cookies = CookieHeaderParser.parse("=value; name=value");
+
+		assertCookies(cookies, "name", "value");
+	}
+
+	@Test
+	public void parseEmpty() {
+		assertThat(CookieHeaderParser.parse("")).isEmpty();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void parseMissingValue() {
+		CookieHeaderParser.parse("name=value; novalue");
+	}
+
+	@Test
+	public void parseUnterminatedQuote() {
+		List<Cookie> cookies = CookieHeaderParser.parse("name=\"value; name2=\"; name3=value\"");
+
+		assertCookies(cookies, "name", "\"value", "name2", "\"", "name3", "value\"");
+	}
+
+	private static void assertCookies(List<Cookie> cookies, String... namesAndValues) {
+		assertThat(cookies).hasSize(namesAndValues.length / 2);
+		for (int i = 0; i < cookies.size(); i++) {
+			assertThat(cookies.get(i).getName()).isEqualTo(namesAndValues[2 * i]);
+			assertThat(cookies.get(i).getValue()).isEqualTo(namesAndValues[2 * i + 1]);
+		}
+	}
+}
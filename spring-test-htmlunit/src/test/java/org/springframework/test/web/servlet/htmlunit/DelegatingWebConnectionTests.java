@@ -24,6 +24,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.stereotype.Controller;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.htmlunit.matchers.HostRequestMatcher;
 import org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher;
 import org.springframework.test.web.servlet.htmlunit.matchers.WebRequestMatcher;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -105,6 +106,242 @@ public class DelegatingWebConnectionTests {
 		verify(connection2).getResponse(request);
 	}
 
+	@Test
+	public void getResponseHostMatches() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("example.com"), connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection2));
+		when(connection2.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(connection1,defaultConnection);
+	}
+
+	@Test
+	public void getResponseHostAndPortMatches() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost:8080"), connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost:80"), connection2));
+		when(connection2.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(connection1,defaultConnection);
+	}
+
+	@Test
+	public void getResponseHostFirstMatchWins() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection1),
+				new DelegateWebConnection(matcher2, connection2));
+		when(connection1.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(matcher2,connection2,defaultConnection);
+	}
+
+	@Test
+	public void getResponseHostAfterMatcherThatMatches() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(matcher1, connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection2));
+		when(matcher1.matches(request)).thenReturn(true);
+		when(connection1.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(connection2,defaultConnection);
+	}
+
+	@Test
+	public void getResponseHostAfterMatcherThatDoesNotMatch() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(matcher1, connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection2));
+		when(connection2.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verify(matcher1).matches(request);
+		verifyNoMoreInteractions(connection1,defaultConnection);
+	}
+
+	@Test
+	public void getResponseUrlRegexMatches() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new UrlRegexRequestMatcher(".*?//example.com/.*"), connection1),
+				new DelegateWebConnection(new UrlRegexRequestMatcher(".*?//localhost/.*"), connection2));
+		when(connection2.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(connection1,defaultConnection);
+	}
+
+	@Test
+	public void getResponseNoHostOrUrlRegexMatches() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("example.com", "localhost:8080"), connection1),
+				new DelegateWebConnection(new UrlRegexRequestMatcher(".*?//example.com/.*"), connection2));
+		when(defaultConnection.getResponse(request)).thenReturn(expectedResponse);
+
+		WebResponse response = webConnection.getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		verifyNoMoreInteractions(connection1,connection2);
+	}
+
+	// --- origin cache
+
+	@Test
+	public void originCacheDisabledByDefault() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection1));
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(0);
+		assertThat(webConnection.getOriginCacheMissCount()).isEqualTo(0);
+		verify(connection1, times(2)).getResponse(request);
+	}
+
+	@Test
+	public void originCacheHit() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("example.com"), connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection2));
+		webConnection.setOriginCacheEnabled(true);
+		WebRequest otherPath = new WebRequest(new URL("http://localhost/other.css"));
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(otherPath);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(1);
+		assertThat(webConnection.getOriginCacheMissCount()).isEqualTo(1);
+		verify(connection2).getResponse(request);
+		verify(connection2).getResponse(otherPath);
+		verifyNoMoreInteractions(connection1,defaultConnection);
+	}
+
+	@Test
+	public void originCacheDifferentPort() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost:80"), connection1));
+		webConnection.setOriginCacheEnabled(true);
+		WebRequest otherPort = new WebRequest(new URL("http://localhost:8080/"));
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(otherPort);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(0);
+		assertThat(webConnection.getOriginCacheMissCount()).isEqualTo(2);
+		verify(connection1).getResponse(request);
+		verify(defaultConnection).getResponse(otherPort);
+	}
+
+	@Test
+	public void originCacheDefaultConnection() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("example.com"), connection1));
+		webConnection.setOriginCacheEnabled(true);
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(1);
+		verify(defaultConnection, times(2)).getResponse(request);
+	}
+
+	@Test
+	public void originCacheDefaultConnectionNotCachedWithOtherMatcher() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("example.com"), connection1),
+				new DelegateWebConnection(matcher2, connection2));
+		webConnection.setOriginCacheEnabled(true);
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(0);
+		assertThat(webConnection.getOriginCacheMissCount()).isEqualTo(2);
+		verify(matcher2, times(2)).matches(request);
+	}
+
+	@Test
+	public void originCacheNotUsedAfterOtherMatcher() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(matcher1, connection1),
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection2));
+		webConnection.setOriginCacheEnabled(true);
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(0);
+		verify(matcher1, times(2)).matches(request);
+		verify(connection2, times(2)).getResponse(request);
+	}
+
+	@Test
+	public void originCacheDisable() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection1));
+		webConnection.setOriginCacheEnabled(true);
+		webConnection.getResponse(request);
+
+		webConnection.setOriginCacheEnabled(false);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(0);
+		assertThat(webConnection.getOriginCacheMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void metricsRoutes() throws Exception {
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		webConnection.setMetrics(metrics);
+		when(matcher2.matches(request)).thenReturn(true);
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+		when(matcher2.matches(request)).thenReturn(false);
+		webConnection.getResponse(request);
+
+		assertThat(metrics.getRouteCount(0)).isEqualTo(0);
+		assertThat(metrics.getRouteCount(1)).isEqualTo(2);
+		assertThat(metrics.getDefaultRouteCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void metricsRoutesOriginCache() throws Exception {
+		webConnection = new DelegatingWebConnection(defaultConnection,
+				new DelegateWebConnection(new HostRequestMatcher("localhost"), connection1));
+		webConnection.setOriginCacheEnabled(true);
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		webConnection.setMetrics(metrics);
+
+		webConnection.getResponse(request);
+		webConnection.getResponse(request);
+
+		assertThat(webConnection.getOriginCacheHitCount()).isEqualTo(1);
+		assertThat(metrics.getRouteCount(0)).isEqualTo(2);
+		verify(connection1, times(2)).getResponse(request);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setMetricsNull() {
+		webConnection.setMetrics(null);
+	}
+
 	@Test
 	public void classlevelJavadoc() throws Exception {
 		WebClient webClient = new WebClient();
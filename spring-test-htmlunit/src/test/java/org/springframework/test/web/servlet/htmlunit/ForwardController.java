@@ -15,8 +15,12 @@
  */
 package org.springframework.test.web.servlet.htmlunit;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.util.WebUtils;
 
 /**
  * @author Rob Winch
@@ -28,4 +32,27 @@ public class ForwardController {
 	public String forward() {
 		return "forward:/";
 	}
+
+	@RequestMapping("/forward/loop")
+	public String loop() {
+		return "forward:/forward/loop";
+	}
+
+	@RequestMapping("/forward/chain")
+	public String chain() {
+		return "forward:/forward/next?name=forwarded";
+	}
+
+	@RequestMapping("/forward/next")
+	public String next() {
+		return "forward:/forward/info";
+	}
+
+	@RequestMapping("/forward/info")
+	@ResponseBody
+	public String info(HttpServletRequest request) {
+		return request.getAttribute(MockMvcWebConnection.FORWARD_COUNT_ATTRIBUTE) + " " + request.getRequestURI()
+				+ " " + request.getAttribute(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE) + " "
+				+ request.getParameter("name");
+	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.util.WebUtils;
+
+public class ForwardRequestBuilderTests {
+	private MockServletContext servletContext;
+
+	private MockHttpServletRequest request;
+
+	@Before
+	public void setup() {
+		servletContext = new MockServletContext();
+		request = new MockHttpServletRequest(servletContext, "GET", "/app/original/path");
+		request.setContextPath("/app");
+		request.setServletPath("/original");
+		request.setPathInfo("/path");
+		request.setQueryString("a=1");
+		request.addParameter("a", "1");
+		request.addHeader("Accept", "text/html");
+	}
+
+	// --- constructor
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullRequest() {
+		new ForwardRequestBuilder(null, "/forward", 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorEmptyForwardUrl() {
+		new ForwardRequestBuilder(request, "", 1);
+	}
+
+	// --- buildRequest
+
+	@Test
+	public void buildRequestReusesRequest() {
+		MockHttpServletRequest result = new ForwardRequestBuilder(request, "/forward", 1).buildRequest(servletContext);
+
+		assertThat(result).isSameAs(request);
+		assertThat(result.getHeader("Accept")).isEqualTo("text/html");
+		assertThat(result.getParameter("a")).isEqualTo("1");
+	}
+
+	@Test
+	public void buildRequestPath() {
+		new ForwardRequestBuilder(request, "/forward", 1).buildRequest(servletContext);
+
+		assertThat(request.getRequestURI()).isEqualTo("/app/forward");
+		assertThat(request.getContextPath()).isEqualTo("/app");
+		assertThat(request.getServletPath()).isEqualTo("/forward");
+		assertThat(request.getPathInfo()).isNull();
+		assertThat(request.getQueryString()).isEqualTo("a=1");
+	}
+
+	@Test
+	public void buildRequestForwardAttributes() {
+		new ForwardRequestBuilder(request, "/forward", 1).buildRequest(servletContext);
+		new ForwardRequestBuilder(request, "/second", 2).buildRequest(servletContext);
+
+		assertThat(request.getAttribute(WebUtils.FORWARD_REQUEST_URI_ATTRIBUTE)).isEqualTo("/app/original/path");
+		assertThat(request.getAttribute(WebUtils.FORWARD_CONTEXT_PATH_ATTRIBUTE)).isEqualTo("/app");
+		assertThat(request.getAttribute(WebUtils.FORWARD_SERVLET_PATH_ATTRIBUTE)).isEqualTo("/original");
+		assertThat(request.getAttribute(WebUtils.FORWARD_PATH_INFO_ATTRIBUTE)).isEqualTo("/path");
+		assertThat(request.getAttribute(WebUtils.FORWARD_QUERY_STRING_ATTRIBUTE)).isEqualTo("a=1");
+		assertThat(request.getAttribute(MockMvcWebConnection.FORWARD_COUNT_ATTRIBUTE)).isEqualTo(2);
+		assertThat(request.getRequestURI()).isEqualTo("/app/second");
+	}
+
+	@Test
+	public void buildRequestQuery() {
+		new ForwardRequestBuilder(request, "/forward?a=2&b=x%20y", 1).buildRequest(servletContext);
+
+		assertThat(request.getRequestURI()).isEqualTo("/app/forward");
+		assertThat(request.getServletPath()).isEqualTo("/forward");
+		assertThat(request.getQueryString()).isEqualTo("a=2&b=x%20y");
+		assertThat(request.getParameterValues("a")).isEqualTo(new String[] { "2", "1" });
+		assertThat(request.getParameter("b")).isEqualTo("x y");
+	}
+}
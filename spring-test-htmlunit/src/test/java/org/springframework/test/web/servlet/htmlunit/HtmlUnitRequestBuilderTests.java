@@ -15,6 +15,7 @@ package org.springframework.test.web.servlet.htmlunit;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -32,18 +33,24 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.mock.web.MockHttpServletRequest;
-import org.springframework.mock.web.MockHttpSession;
 import org.springframework.mock.web.MockServletContext;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.htmlunit.HtmlUnitRequestBuilder;
 
 import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.FormEncodingType;
 import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
@@ -61,15 +68,18 @@ public class HtmlUnitRequestBuilderTests {
 
 	private ServletContext servletContext;
 
-	private Map<String, MockHttpSession> sessions;
+	private MockHttpSessionStore sessions;
 
 	private CookieManager cookieManager;
 
 	private HtmlUnitRequestBuilder requestBuilder;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Before
 	public void setUp() throws Exception {
-		sessions = new HashMap<String, MockHttpSession>();
+		sessions = new ConcurrentMockHttpSessionStore();
 		cookieManager = new CookieManager();
 		webRequest = new WebRequest(new URL("http://example.com:80/test/this/here"));
 		webRequest.setHttpMethod(HttpMethod.GET);
@@ -150,6 +160,71 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(actualRequest.getHeader("Content-Type")).isEqualTo(contentType);
 	}
 
+	@Test
+	public void buildRequestMultipart() throws Exception {
+		File upload = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), upload);
+		webRequest.setHttpMethod(HttpMethod.POST);
+		webRequest.setEncodingType(FormEncodingType.MULTIPART);
+		webRequest.setRequestParameters(Arrays.asList(new NameValuePair("description", "a file"),
+				new KeyDataPair("file", upload, "text/plain", "UTF-8")));
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest).isInstanceOf(MultipartHttpServletRequest.class);
+		MultipartHttpServletRequest multipartRequest = (MultipartHttpServletRequest) actualRequest;
+		assertThat(actualRequest.getContentType()).isEqualTo("multipart/form-data");
+		assertThat(actualRequest.getParameter("description")).isEqualTo("a file");
+		MultipartFile file = multipartRequest.getFile("file");
+		assertThat(file.getOriginalFilename()).isEqualTo("upload.txt");
+		assertThat(file.getSize()).isEqualTo(7);
+		assertThat(IOUtils.toString(file.getInputStream(), "UTF-8")).isEqualTo("content");
+		assertThat(multipartRequest.getFileMap().keySet()).containsOnly("file");
+		assertThat(multipartRequest.getMultipartContentType("file")).isEqualTo("text/plain");
+		assertThat(multipartRequest.getMultipartContentType("description")).isNull();
+	}
+
+	@Test
+	public void buildRequestMultipartFileNameParameter() throws Exception {
+		webRequest.setHttpMethod(HttpMethod.POST);
+		webRequest.setEncodingType(FormEncodingType.MULTIPART);
+		webRequest.setRequestParameters(Arrays.<NameValuePair> asList(new NameValuePair("description", "a file"),
+				new KeyDataPair("file", folder.newFile("upload.txt"), "text/plain", "UTF-8")));
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest.getParameterMap().keySet()).containsOnly("description", "file");
+		assertThat(actualRequest.getParameter("file")).isEqualTo("upload.txt");
+	}
+
+	@Test
+	public void buildRequestMultipartMultipleFiles() throws Exception {
+		webRequest.setHttpMethod(HttpMethod.POST);
+		webRequest.setEncodingType(FormEncodingType.MULTIPART);
+		webRequest.setRequestParameters(Arrays.<NameValuePair> asList(
+				new KeyDataPair("file", folder.newFile("a.txt"), "text/plain", "UTF-8"),
+				new KeyDataPair("file", folder.newFile("b.txt"), "text/plain", "UTF-8")));
+
+		MultipartHttpServletRequest actualRequest = (MultipartHttpServletRequest) requestBuilder.buildRequest(servletContext);
+
+		List<MultipartFile> files = actualRequest.getFiles("file");
+		assertThat(files).hasSize(2);
+		assertThat(files.get(0).getOriginalFilename()).isEqualTo("a.txt");
+		assertThat(files.get(1).getOriginalFilename()).isEqualTo("b.txt");
+		assertThat(actualRequest.getFiles("missing")).isEmpty();
+	}
+
+	@Test
+	public void buildRequestNotMultipartWhenUrlEncoded() throws Exception {
+		webRequest.setHttpMethod(HttpMethod.POST);
+		webRequest.setRequestParameters(Arrays.asList(new NameValuePair("name", "value")));
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest instanceof MultipartHttpServletRequest).isFalse();
+		assertThat(actualRequest.getParameter("name")).isEqualTo("value");
+	}
+
 	@Test
 	public void buildRequestContextPathUsesFirstSegmentByDefault() {
 		String contextPath = requestBuilder.buildRequest(servletContext).getContextPath();
@@ -221,6 +296,19 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(cookies[0].getValue()).isEqualTo("value");
 	}
 
+	@Test
+	public void buildRequestCookiesValueWithEquals() {
+		webRequest.setAdditionalHeader("Cookie", "token=YWJjZA==; name=value");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		Cookie[] cookies = actualRequest.getCookies();
+		assertThat(cookies.length).isEqualTo(2);
+		assertThat(cookies[0].getName()).isEqualTo("token");
+		assertThat(cookies[0].getValue()).isEqualTo("YWJjZA==");
+		assertThat(cookies[1].getName()).isEqualTo("name");
+	}
+
 	@Test
 	public void buildRequestCookiesMulti() {
 		webRequest.setAdditionalHeader("Cookie", "name=value; name2=value2");
@@ -319,6 +407,26 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(Collections.list(actualRequest.getLocales())).isEqualTo(expected);
 	}
 
+	@Test
+	public void buildRequestLocaleMultiOrderedByQuality() {
+		webRequest.setAdditionalHeader("Accept-Language", "en;q=0.7, zh-Hant-TW, da;q=0.9");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		List<Locale> expected = Arrays.asList(Locale.TAIWAN, new Locale("da", "", "0.9"), new Locale("en", "",
+				"0.7"), Locale.ENGLISH);
+		assertThat(Collections.list(actualRequest.getLocales())).isEqualTo(expected);
+	}
+
+	@Test
+	public void buildRequestLocaleWildcard() {
+		webRequest.setAdditionalHeader("Accept-Language", "*");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest.getLocale()).isEqualTo(Locale.getDefault());
+	}
+
 	@Test
 	public void buildRequestLocaleName() {
 		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
@@ -372,6 +480,26 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(actualRequest.getParameter("name")).isEqualTo("value");
 	}
 
+	@Test
+	public void buildRequestParameterAddedAfterBuild() throws Exception {
+		webRequest.setUrl(new URL("http://example.com/example/?name=value"));
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+		actualRequest.addParameter("name", "added");
+
+		assertThat(actualRequest.getParameterValues("name")).isEqualTo(new String[] { "value", "added" });
+	}
+
+	@Test
+	public void buildRequestParameterRemovedAfterBuild() throws Exception {
+		webRequest.setUrl(new URL("http://example.com/example/?name=value"));
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+		actualRequest.removeParameter("name");
+
+		assertThat(actualRequest.getParameterMap()).isEmpty();
+	}
+
 	@Test
 	public void buildRequestParameterMapQueryMulti() throws Exception {
 		webRequest.setUrl(new URL("http://example.com/example/?name=value&param2=value+2"));
@@ -572,6 +700,38 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(actualRequest.getSession()).isSameAs(newSession);
 	}
 
+	@Test
+	public void buildRequestHeaderAddedAfterBuild() throws Exception {
+		webRequest.setAdditionalHeader("Accept", "text/html");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+		actualRequest.addHeader("Accept", "application/json");
+
+		assertThat(Collections.list(actualRequest.getHeaders("Accept"))).isEqualTo(
+				Arrays.asList("text/html", "application/json"));
+	}
+
+	@Test
+	public void buildRequestLocaleAddedAfterBuild() throws Exception {
+		webRequest.setAdditionalHeader("Accept-Language", "da");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+		actualRequest.addPreferredLocale(Locale.FRENCH);
+
+		assertThat(Collections.list(actualRequest.getLocales())).isEqualTo(
+				Arrays.asList(Locale.FRENCH, new Locale("da"), Locale.ENGLISH));
+	}
+
+	@Test
+	public void buildRequestRequestedSessionIdFromCookie() throws Exception {
+		webRequest.setAdditionalHeader("Cookie", "JSESSIONID=session-id");
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest.getRequestedSessionId()).isEqualTo("session-id");
+		assertThat(actualRequest.getSession(false).getId()).isEqualTo("session-id");
+	}
+
 	@Test
 	public void buildRequestSessionWithExistingSession() throws Exception {
 		String sessionId = "session-id";
@@ -645,7 +805,7 @@ public class HtmlUnitRequestBuilderTests {
 		HttpSession sessionToRemove = actualRequest.getSession();
 		sessionToRemove.invalidate();
 
-		assertThat(!sessions.containsKey(sessionToRemove.getId()));
+		assertThat(sessions.getSession(sessionToRemove.getId())).isNull();
 		assertSingleSessionCookie("JSESSIONID=" + sessionToRemove.getId()
 				+ "; Expires=Thu, 01-Jan-1970 00:00:01 GMT; Path=/test; Domain=example.com");
 
@@ -655,7 +815,54 @@ public class HtmlUnitRequestBuilderTests {
 		actualRequest = requestBuilder.buildRequest(servletContext);
 
 		assertThat(actualRequest.getSession().isNew()).isTrue();
-		assertThat(!sessions.containsKey(sessionToRemove.getId()));
+		assertThat(sessions.getSession(sessionToRemove.getId())).isNull();
+	}
+
+	@Test
+	public void getResolvedSessionDoesNotAccessSession() throws Exception {
+		String sessionId = "session-id";
+		webRequest.setAdditionalHeader("Cookie", "JSESSIONID=" + sessionId);
+		HttpSession session = requestBuilder.buildRequest(servletContext).getSession();
+		ReflectionTestUtils.setField(session, "lastAccessedTime", 1000L);
+		requestBuilder = new HtmlUnitRequestBuilder(sessions, cookieManager, webRequest);
+
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(HtmlUnitRequestBuilder.getResolvedSession(actualRequest)).isNull();
+		assertThat(session.getLastAccessedTime()).isEqualTo(1000L);
+		assertThat(actualRequest.getSession(false)).isSameAs(session);
+		assertThat(HtmlUnitRequestBuilder.getResolvedSession(actualRequest)).isSameAs(session);
+	}
+
+	// --- timings
+
+	@Test
+	public void buildRequestTimingsNotStarted() {
+		Map<String, Object> pathVariables = new HashMap<String, Object>();
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		actualRequest.setAttribute("org.springframework.web.servlet.DispatcherServlet.CONTEXT", new Object());
+		actualRequest.setAttribute("org.springframework.web.servlet.View.pathVariables", pathVariables);
+
+		assertThat(actualRequest.getAttribute("org.springframework.web.servlet.View.pathVariables")).isSameAs(pathVariables);
+		assertThat(requestBuilder.getBuildEndTime()).isEqualTo(0);
+		assertThat(requestBuilder.getDispatchStartTime()).isEqualTo(0);
+		assertThat(requestBuilder.getViewStartTime()).isEqualTo(0);
+	}
+
+	@Test
+	public void buildRequestTimingsStarted() {
+		Map<String, Object> pathVariables = new HashMap<String, Object>();
+		requestBuilder.startTimings();
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		actualRequest.setAttribute("org.springframework.web.servlet.DispatcherServlet.CONTEXT", new Object());
+		actualRequest.setAttribute("org.springframework.web.servlet.View.pathVariables", pathVariables);
+
+		assertThat(actualRequest.getAttribute("org.springframework.web.servlet.View.pathVariables")).isEqualTo(pathVariables);
+		assertThat(requestBuilder.getBuildEndTime()).isNotEqualTo(0);
+		assertThat(requestBuilder.getDispatchStartTime()).isNotEqualTo(0);
+		assertThat(requestBuilder.getViewStartTime()).isNotEqualTo(0);
 	}
 
 	// --- setContextPath
@@ -762,6 +969,31 @@ public class HtmlUnitRequestBuilderTests {
 		assertThat(mockMvc.perform(requestBuilder).andReturn().getRequest().getAttribute(attrName)).isEqualTo(attrValue);
 	}
 
+	@Test
+	public void mergeParentTemplates() throws Exception {
+		CountingRequestBuilder parent = new CountingRequestBuilder(get("/").header("PARENT", "VALUE"));
+		requestBuilder.setParentTemplates(new ParentRequestTemplate.Cache());
+		requestBuilder.merge(parent);
+
+		requestBuilder.buildRequest(servletContext);
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest.getHeader("PARENT")).isEqualTo("VALUE");
+		assertThat(parent.buildCount).isEqualTo(1);
+	}
+
+	@Test
+	public void mergeWithoutParentTemplates() throws Exception {
+		CountingRequestBuilder parent = new CountingRequestBuilder(get("/").header("PARENT", "VALUE"));
+		requestBuilder.merge(parent);
+
+		requestBuilder.buildRequest(servletContext);
+		MockHttpServletRequest actualRequest = requestBuilder.buildRequest(servletContext);
+
+		assertThat(actualRequest.getHeader("PARENT")).isEqualTo("VALUE");
+		assertThat(parent.buildCount).isEqualTo(2);
+	}
+
 
 	private void assertSingleSessionCookie(String expected) {
 		com.gargoylesoftware.htmlunit.util.Cookie jsessionidCookie = cookieManager.getCookie("JSESSIONID");
@@ -780,4 +1012,19 @@ public class HtmlUnitRequestBuilderTests {
 	private String getContextPath() {
 		return (String) ReflectionTestUtils.getField(requestBuilder, "contextPath");
 	}
+
+	static class CountingRequestBuilder implements RequestBuilder {
+		private final RequestBuilder delegate;
+
+		int buildCount;
+
+		CountingRequestBuilder(RequestBuilder delegate) {
+			this.delegate = delegate;
+		}
+
+		public MockHttpServletRequest buildRequest(ServletContext servletContext) {
+			buildCount++;
+			return delegate.buildRequest(servletContext);
+		}
+	}
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+
+public class KeyDataPairMultipartFileTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void file() throws Exception {
+		File file = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), file);
+
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(new KeyDataPair("file", file, "text/plain", "UTF-8"));
+
+		assertThat(multipartFile.getName()).isEqualTo("file");
+		assertThat(multipartFile.getOriginalFilename()).isEqualTo("upload.txt");
+		assertThat(multipartFile.getContentType()).isEqualTo("text/plain");
+		assertThat(multipartFile.getSize()).isEqualTo(7);
+		assertThat(multipartFile.isEmpty()).isFalse();
+		assertThat(multipartFile.getBytes()).isEqualTo("content".getBytes("UTF-8"));
+		assertThat(FileCopyUtils.copyToByteArray(multipartFile.getInputStream())).isEqualTo("content".getBytes("UTF-8"));
+	}
+
+	@Test
+	public void fileReadWhenAccessed() throws Exception {
+		File file = folder.newFile("upload.txt");
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(new KeyDataPair("file", file, "text/plain", "UTF-8"));
+
+		FileCopyUtils.copy("changed".getBytes("UTF-8"), file);
+
+		assertThat(multipartFile.getBytes()).isEqualTo("changed".getBytes("UTF-8"));
+	}
+
+	@Test
+	public void data() throws Exception {
+		File file = folder.newFile("upload.txt");
+		KeyDataPair pair = new KeyDataPair("file", file, "text/plain", "UTF-8");
+		pair.setData("data".getBytes("UTF-8"));
+
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(pair);
+
+		assertThat(multipartFile.getSize()).isEqualTo(4);
+		assertThat(multipartFile.getBytes()).isEqualTo("data".getBytes("UTF-8"));
+		assertThat(FileCopyUtils.copyToByteArray(multipartFile.getInputStream())).isEqualTo("data".getBytes("UTF-8"));
+	}
+
+	@Test
+	public void defaultContentType() throws Exception {
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(new KeyDataPair("file", folder.newFile(), null, "UTF-8"));
+
+		assertThat(multipartFile.getContentType()).isEqualTo("application/octet-stream");
+	}
+
+	@Test
+	public void transferTo() throws Exception {
+		File file = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), file);
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(new KeyDataPair("file", file, "text/plain", "UTF-8"));
+		File dest = new File(folder.getRoot(), "dest.txt");
+
+		multipartFile.transferTo(dest);
+
+		assertThat(FileCopyUtils.copyToByteArray(dest)).isEqualTo("content".getBytes("UTF-8"));
+	}
+
+	@Test
+	public void emptyFile() throws Exception {
+		KeyDataPairMultipartFile multipartFile = new KeyDataPairMultipartFile(new KeyDataPair("file", folder.newFile(), "text/plain", "UTF-8"));
+
+		assertThat(multipartFile.isEmpty()).isTrue();
+		assertThat(multipartFile.getBytes()).isEmpty();
+	}
+}
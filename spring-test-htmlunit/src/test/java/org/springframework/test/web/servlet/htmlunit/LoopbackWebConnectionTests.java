@@ -0,0 +1,317 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import com.gargoylesoftware.htmlunit.CookieManager;
+import com.gargoylesoftware.htmlunit.FormEncodingType;
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class LoopbackWebConnectionTests {
+	HttpServer server;
+
+	String baseUrl;
+
+	LoopbackConnectionPool pool;
+
+	LoopbackWebConnection connection;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setup() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new EchoHandler());
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		pool = new LoopbackConnectionPool(2);
+		connection = pool.createConnection();
+	}
+
+	@After
+	public void cleanup() {
+		pool.close();
+		server.stop(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullPool() {
+		new LoopbackWebConnection(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullCookieManager() {
+		new LoopbackWebConnection(pool, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxInMemoryNegative() {
+		connection.setMaxInMemory(-1);
+	}
+
+	@Test
+	public void get() throws IOException {
+		WebResponse response = connection.getResponse(new WebRequest(new URL(baseUrl + "/path?a=b")));
+
+		assertThat(response.getStatusCode()).isEqualTo(200);
+		assertThat(response.getContentAsString()).isEqualTo("GET /path?a=b ");
+		assertThat(response.getResponseHeaderValue("X-Echo")).isEqualTo("true");
+	}
+
+	@Test
+	public void getParameters() throws IOException {
+		WebRequest request = new WebRequest(new URL(baseUrl + "/path"));
+		request.setRequestParameters(Arrays.asList(new NameValuePair("a", "b c")));
+
+		assertThat(connection.getResponse(request).getContentAsString()).isEqualTo("GET /path?a=b+c ");
+	}
+
+	@Test
+	public void postForm() throws IOException {
+		WebRequest request = new WebRequest(new URL(baseUrl + "/form"), HttpMethod.POST);
+		request.setRequestParameters(Arrays.asList(new NameValuePair("a", "b"), new NameValuePair("c", "d")));
+
+		assertThat(connection.getResponse(request).getContentAsString()).isEqualTo("POST /form a=b&c=d");
+	}
+
+	@Test
+	public void postBody() throws IOException {
+		WebRequest request = new WebRequest(new URL(baseUrl + "/body"), HttpMethod.POST);
+		request.setAdditionalHeader("Content-Type", "application/json");
+		request.setRequestBody("{}");
+
+		WebResponse response = connection.getResponse(request);
+
+		assertThat(response.getContentAsString()).isEqualTo("POST /body {}");
+		assertThat(response.getResponseHeaderValue("X-Content-Type")).isEqualTo("application/json");
+	}
+
+	@Test
+	public void postMultipart() throws IOException {
+		WebRequest request = new WebRequest(new URL(baseUrl + "/upload"), HttpMethod.POST);
+		request.setEncodingType(FormEncodingType.MULTIPART);
+		File upload = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), upload);
+		KeyDataPair file = new KeyDataPair("file", upload, "text/plain", "UTF-8");
+		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+		parameters.add(new NameValuePair("name", "value"));
+		parameters.add(file);
+		request.setRequestParameters(parameters);
+
+		WebResponse response = connection.getResponse(request);
+
+		assertThat(response.getResponseHeaderValue("X-Content-Type")).startsWith("multipart/form-data; boundary=");
+		assertThat(response.getContentAsString()).contains("name=\"name\"").contains("value")
+				.contains("filename=\"upload.txt\"").contains("content");
+	}
+
+	@Test
+	public void cookies() throws IOException {
+		LoopbackWebConnection otherConnection = pool.createConnection();
+
+		connection.getResponse(new WebRequest(new URL(baseUrl + "/login")));
+
+		assertThat(getCookie(connection)).isEqualTo("user=rob");
+		assertThat(getCookie(otherConnection)).isNull();
+	}
+
+	@Test
+	public void cookiesCookieManager() throws IOException {
+		CookieManager cookieManager = new CookieManager();
+		connection = pool.createConnection(cookieManager);
+
+		connection.getResponse(new WebRequest(new URL(baseUrl + "/login")));
+
+		assertThat(cookieManager.getCookie("user").getValue()).isEqualTo("rob");
+		cookieManager.addCookie(new Cookie("127.0.0.1", "added", "value"));
+		assertThat(getCookie(connection)).contains("user=rob").contains("added=value");
+	}
+
+	@Test
+	public void cookiesDisabled() throws IOException {
+		CookieManager cookieManager = new CookieManager();
+		cookieManager.addCookie(new Cookie("127.0.0.1", "added", "value"));
+		cookieManager.setCookiesEnabled(false);
+		connection = pool.createConnection(cookieManager);
+
+		connection.getResponse(new WebRequest(new URL(baseUrl + "/login")));
+
+		assertThat(getCookie(connection)).isNull();
+		cookieManager.setCookiesEnabled(true);
+		assertThat(cookieManager.getCookie("user")).isNull();
+	}
+
+	@Test
+	public void deleteParameters() throws IOException {
+		WebRequest request = new WebRequest(new URL(baseUrl + "/path"), HttpMethod.DELETE);
+		request.setRequestParameters(Arrays.asList(new NameValuePair("a", "b")));
+
+		assertThat(connection.getResponse(request).getContentAsString()).isEqualTo("DELETE /path?a=b ");
+	}
+
+	// --- pool
+
+	@Test(expected = IllegalArgumentException.class)
+	public void poolMaxConnectionsZero() {
+		new LoopbackConnectionPool(0);
+	}
+
+	@Test
+	public void poolReusesConnections() throws IOException {
+		LoopbackWebConnection otherConnection = pool.createConnection();
+
+		for (int i = 0; i < 5; i++) {
+			connection.getResponse(new WebRequest(new URL(baseUrl + "/" + i)));
+			otherConnection.getResponse(new WebRequest(new URL(baseUrl + "/" + i)));
+		}
+
+		assertThat(pool.getRequestCount()).isEqualTo(10);
+		assertThat(pool.getConnectCount()).isEqualTo(1);
+		assertThat(pool.getAvailableCount()).isEqualTo(1);
+		assertThat(pool.getLeasedCount()).isEqualTo(0);
+		assertThat(pool.getPendingCount()).isEqualTo(0);
+		assertThat(pool.getMaxConnections()).isEqualTo(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void poolTimeoutNegative() {
+		new LoopbackConnectionPool(1, -1);
+	}
+
+	@Test
+	public void poolTimeoutDefault() {
+		assertThat(pool.getTimeout()).isEqualTo(LoopbackConnectionPool.DEFAULT_TIMEOUT);
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void poolSocketTimeout() throws IOException {
+		final CountDownLatch release = new CountDownLatch(1);
+		server.createContext("/hang", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		pool.close();
+		pool = new LoopbackConnectionPool(1, 100);
+
+		try {
+			pool.createConnection().getResponse(new WebRequest(new URL(baseUrl + "/hang")));
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
+	@Test(expected = ConnectionPoolTimeoutException.class)
+	public void poolConnectionRequestTimeout() throws IOException {
+		pool.close();
+		pool = new LoopbackConnectionPool(1, 100);
+		// the unconsumed response keeps the only connection leased
+		CloseableHttpResponse leased = pool.execute(new HttpGet(baseUrl + "/leased"), HttpClientContext.create());
+
+		try {
+			pool.createConnection().getResponse(new WebRequest(new URL(baseUrl + "/waiting")));
+		}
+		finally {
+			leased.close();
+		}
+	}
+
+	@Test(expected = ConnectionPoolTimeoutException.class)
+	public void poolConnectionRequestTimeoutCookiesDisabled() throws IOException {
+		pool.close();
+		pool = new LoopbackConnectionPool(1, 100);
+		CookieManager cookieManager = new CookieManager();
+		cookieManager.setCookiesEnabled(false);
+		CloseableHttpResponse leased = pool.execute(new HttpGet(baseUrl + "/leased"), HttpClientContext.create());
+
+		try {
+			pool.createConnection(cookieManager).getResponse(new WebRequest(new URL(baseUrl + "/waiting")));
+		}
+		finally {
+			leased.close();
+		}
+	}
+
+	private String getCookie(LoopbackWebConnection connection) throws IOException {
+		return connection.getResponse(new WebRequest(new URL(baseUrl + "/cookie"))).getResponseHeaderValue(
+				"X-Cookie");
+	}
+
+	static class EchoHandler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			String uri = exchange.getRequestURI().toString();
+			String body = new String(FileCopyUtils.copyToByteArray(exchange.getRequestBody()), "UTF-8");
+			exchange.getResponseHeaders().add("X-Echo", "true");
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			if (contentType != null) {
+				exchange.getResponseHeaders().add("X-Content-Type", contentType);
+			}
+			String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+			if (cookie != null) {
+				exchange.getResponseHeaders().add("X-Cookie", cookie);
+			}
+			if ("/login".equals(uri)) {
+				exchange.getResponseHeaders().add("Set-Cookie", "user=rob; Path=/");
+			}
+			byte[] content = (exchange.getRequestMethod() + " " + uri + " " + body).getBytes("UTF-8");
+			exchange.sendResponseHeaders(200, content.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(content);
+			out.close();
+		}
+	}
+}
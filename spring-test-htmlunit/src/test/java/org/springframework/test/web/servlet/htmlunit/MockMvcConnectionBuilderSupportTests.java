@@ -1,18 +1,32 @@
 package org.springframework.test.web.servlet.htmlunit;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import com.gargoylesoftware.htmlunit.CookieManager;
 import com.gargoylesoftware.htmlunit.WebConnection;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.sun.net.httpserver.HttpServer;
 import static org.fest.assertions.Assertions.assertThat;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -20,7 +34,9 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.htmlunit.matchers.UrlRegexRequestMatcher;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.FileCopyUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.WebApplicationContext;
@@ -42,6 +58,9 @@ public class MockMvcConnectionBuilderSupportTests {
 
 	WebConnection connection;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Before
 	public void setup() {
 		delegateConnection = mock(WebConnection.class);
@@ -96,6 +115,160 @@ public class MockMvcConnectionBuilderSupportTests {
 		assertMvcProcessed("http://other.com/");
 	}
 
+	@Test
+	public void sessionStore() throws Exception {
+		ConcurrentMockHttpSessionStore sessionStore = new ConcurrentMockHttpSessionStore();
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.sessionStore(sessionStore)
+				.createConnection(delegateConnection);
+
+		getWebResponse("http://localhost/session");
+
+		assertThat(sessionStore.getSessionCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sessionStoreNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.sessionStore(null);
+	}
+
+	@Test
+	public void maxInMemory() throws Exception {
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.contextPath("/abc")
+				.maxInMemory(1)
+				.createConnection(delegateConnection);
+
+		WebResponse response = getWebResponse("http://localhost/abc/def");
+
+		assertThat(response.getContentAsStream()).isInstanceOf(FileInputStream.class);
+		response.cleanUp();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxInMemoryNegative() {
+		new MockMvcWebConnectionBuilderSupport(context){}.maxInMemory(-1);
+	}
+
+	@Test
+	public void cacheRoutingByOrigin() throws Exception {
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.cacheRoutingByOrigin()
+				.createConnection(delegateConnection);
+
+		assertMvcProcessed("http://localhost/");
+		assertMvcProcessed("http://localhost/abc");
+		assertDelegateProcessed("http://example.com/");
+
+		assertThat(((DelegatingWebConnection) connection).getOriginCacheHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void connectionExecutor() throws Exception {
+		WebConnectionExecutor connectionExecutor = new WebConnectionExecutor();
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.connectionExecutor(connectionExecutor)
+				.createConnection(delegateConnection);
+
+		assertMvcProcessed("http://localhost/");
+		assertDelegateProcessed("http://example.com/");
+		assertThat(connectionExecutor.awaitIdle(0, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void connectionExecutorNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.connectionExecutor(null);
+	}
+
+	@Test
+	public void useStaticResources() throws Exception {
+		File script = folder.newFile("app.js");
+		FileCopyUtils.copy("var a;".getBytes("UTF-8"), script);
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.useStaticResources("/resources/", "file:" + folder.getRoot().getPath() + "/")
+				.createConnection(delegateConnection);
+
+		WebResponse response = getWebResponse("http://localhost/resources/app.js");
+
+		assertThat(response.getContentType()).isEqualTo("application/javascript");
+		assertThat(response.getContentAsString()).isEqualTo("var a;");
+		assertThat(getWebResponse("http://localhost/resources/other.js").getContentAsString()).isEqualTo("");
+		assertDelegateProcessed("http://example.com/resources/app.js");
+	}
+
+	@Test
+	public void useStaticResourcesContextPath() throws Exception {
+		FileCopyUtils.copy("var a;".getBytes("UTF-8"), folder.newFile("app.js"));
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.contextPath("/app")
+				.useStaticResources("/resources/", "file:" + folder.getRoot().getPath() + "/")
+				.createConnection(delegateConnection);
+
+		assertThat(getWebResponse("http://localhost/app/resources/app.js").getContentAsString()).isEqualTo("var a;");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void useStaticResourcesInvalidPrefix() {
+		new MockMvcWebConnectionBuilderSupport(context){}.useStaticResources("resources", "classpath:/static/");
+	}
+
+	@Test
+	public void cacheResponses() throws Exception {
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.cacheResponses(10, new UrlRegexRequestMatcher(".*/cached"))
+				.createConnection(delegateConnection);
+
+		String content = getWebResponse("http://localhost/cached").getContentAsString();
+
+		assertThat(getWebResponse("http://localhost/cached").getContentAsString()).isEqualTo(content);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void cacheResponsesNoMatchers() {
+		new MockMvcWebConnectionBuilderSupport(context){}.cacheResponses(10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxForwardsNegative() {
+		new MockMvcWebConnectionBuilderSupport(context){}.maxForwards(-1);
+	}
+
+	@Test
+	public void timingsListener() throws Exception {
+		MockMvcWebConnectionTests.RecordingTimingsListener listener = new MockMvcWebConnectionTests.RecordingTimingsListener();
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.timingsListener(listener)
+				.createConnection(delegateConnection);
+
+		getWebResponse("http://localhost/abc");
+
+		assertThat(listener.timings).hasSize(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void timingsListenerNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.timingsListener(null);
+	}
+
+	@Test
+	public void metrics() throws Exception {
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.useMockMvcForHosts("localhost")
+				.metrics(metrics)
+				.createConnection(delegateConnection);
+
+		getWebResponse("http://localhost/abc");
+
+		assertThat(metrics.getRequestCount()).isEqualTo(1);
+		assertThat(metrics.getRouteCount(0)).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void metricsNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.metrics(null);
+	}
+
 	@Test
 	public void defaultContextPathEmpty() throws Exception {
 		connection = new MockMvcWebConnectionBuilderSupport(context){}
@@ -113,6 +286,89 @@ public class MockMvcConnectionBuilderSupportTests {
 		assertThat(getWebResponse("http://localhost/abc/def").getContentAsString()).isEqualTo("/abc");
 	}
 
+	@Test
+	public void useLoopbackConnections() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new LoopbackWebConnectionTests.EchoHandler());
+		server.start();
+		LoopbackConnectionPool pool = new LoopbackConnectionPool();
+		try {
+			connection = new MockMvcWebConnectionBuilderSupport(context){}
+					.useLoopbackConnections(pool)
+					.createConnection(delegateConnection);
+			String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stub";
+
+			assertThat(getWebResponse(url).getContentAsString()).isEqualTo("GET /stub ");
+			assertMvcProcessed("http://localhost/");
+			assertDelegateProcessed("http://example.com/");
+			assertThat(pool.getRequestCount()).isEqualTo(1);
+		}
+		finally {
+			pool.close();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void useLoopbackConnectionsCookieManager() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new LoopbackWebConnectionTests.EchoHandler());
+		server.start();
+		LoopbackConnectionPool pool = new LoopbackConnectionPool();
+		CookieManager cookieManager = new CookieManager();
+		try {
+			connection = new MockMvcWebConnectionBuilderSupport(context){}
+					.useLoopbackConnections(pool)
+					.createConnection(delegateConnection, cookieManager);
+
+			getWebResponse("http://127.0.0.1:" + server.getAddress().getPort() + "/login");
+
+			assertThat(cookieManager.getCookie("user").getValue()).isEqualTo("rob");
+		}
+		finally {
+			pool.close();
+			server.stop(0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void createConnectionNullCookieManager() {
+		new MockMvcWebConnectionBuilderSupport(context){}.createConnection(delegateConnection, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void useLoopbackConnectionsNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.useLoopbackConnections(null);
+	}
+
+	@Test
+	public void archiveResponses() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		WebRequest request = new WebRequest(new URL("http://example.com/"));
+		recording.record(request, new WebResponse(new WebResponseData("recorded".getBytes("UTF-8"), 200, "OK",
+				new ArrayList<NameValuePair>()), request, 0L));
+		recording.close();
+		connection = new MockMvcWebConnectionBuilderSupport(context){}
+				.archiveResponses(WebResponseArchive.forReplay(file))
+				.createConnection(delegateConnection);
+
+		assertThat(getWebResponse("http://example.com/").getContentAsString()).isEqualTo("recorded");
+		assertMvcProcessed("http://localhost/");
+		try {
+			getWebResponse("http://other.com/");
+			throw new AssertionError("Expected IOException");
+		}
+		catch (IOException success) {
+		}
+		verifyZeroInteractions(delegateConnection);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void archiveResponsesNull() {
+		new MockMvcWebConnectionBuilderSupport(context){}.archiveResponses(null);
+	}
+
 	private void assertMvcProcessed(String url) throws Exception {
 		assertThat(getWebResponse(url)).isNotNull();
 	}
@@ -134,6 +390,17 @@ public class MockMvcConnectionBuilderSupportTests {
 			public String contextPath(HttpServletRequest request) {
 				return request.getContextPath();
 			}
+
+			@RequestMapping("/session")
+			public String session(HttpSession session) {
+				return session.getId();
+			}
+
+			@RequestMapping("/cached")
+			public String cached(HttpServletResponse response) {
+				response.setHeader("Cache-Control", "max-age=60");
+				return String.valueOf(System.nanoTime());
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.util.Cookie;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MockMvcWebClientPoolTests {
+	MockMvc mockMvc;
+
+	MockMvcWebClientPool pool;
+
+	@Before
+	public void setup() {
+		mockMvc = MockMvcBuilders.standaloneSetup(new HelloController(), new SessionController()).build();
+		pool = new MockMvcWebClientPool(MockMvcWebClientBuilder.mockMvcSetup(mockMvc), 1);
+	}
+
+	@After
+	public void cleanup() {
+		pool.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullBuilder() {
+		new MockMvcWebClientPool(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorMaxIdleZero() {
+		new MockMvcWebClientPool(MockMvcWebClientBuilder.mockMvcSetup(mockMvc), 0);
+	}
+
+	@Test
+	public void forContextClosedWithContext() {
+		AnnotationConfigWebApplicationContext context = new AnnotationConfigWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.refresh();
+		MockMvcWebClientPool contextPool = MockMvcWebClientPool.forContext(context);
+		contextPool.release(contextPool.checkout());
+		assertThat(MockMvcWebClientPool.forContext(context)).isSameAs(contextPool);
+
+		context.close();
+
+		assertThat(contextPool.getIdleCount()).isEqualTo(0);
+		try {
+			contextPool.checkout();
+			fail("Expected IllegalStateException");
+		}
+		catch (IllegalStateException success) {
+		}
+	}
+
+	@Test
+	public void checkoutCreatesConfiguredClient() throws IOException {
+		WebClient webClient = pool.checkout();
+
+		assertThat(getContent(webClient, "http://localhost/a")).isEqualTo("hello");
+		assertThat(pool.getCreatedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void releaseReusesClient() {
+		WebClient webClient = pool.checkout();
+		pool.release(webClient);
+
+		assertThat(pool.getIdleCount()).isEqualTo(1);
+		assertThat(pool.checkout()).isSameAs(webClient);
+		assertThat(pool.getCreatedCount()).isEqualTo(1);
+		assertThat(pool.getIdleCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void releaseResetsSession() throws IOException {
+		WebClient webClient = pool.checkout();
+		String sessionId = getContent(webClient, "http://localhost/session");
+		assertThat(getContent(webClient, "http://localhost/session")).isEqualTo(sessionId);
+
+		pool.release(webClient);
+		webClient = pool.checkout();
+
+		assertThat(getContent(webClient, "http://localhost/session")).isNotEqualTo(sessionId);
+	}
+
+	@Test
+	public void releaseResetsCookies() throws IOException {
+		WebClient webClient = pool.checkout();
+		webClient.getCookieManager().addCookie(new Cookie("localhost", "name", "value"));
+
+		pool.release(webClient);
+
+		assertThat(pool.checkout().getCookieManager().getCookies()).isEmpty();
+	}
+
+	@Test
+	public void releaseResetsWindows() throws IOException {
+		WebClient webClient = pool.checkout();
+		webClient.getPage("http://localhost/a");
+		webClient.getPage("http://localhost/session");
+		WebWindow window = webClient.getCurrentWindow();
+		assertThat(window.getHistory().getLength()).isEqualTo(2);
+
+		pool.release(webClient);
+		webClient = pool.checkout();
+
+		assertThat(webClient.getTopLevelWindows()).hasSize(1);
+		assertThat(webClient.getCurrentWindow()).isNotSameAs(window);
+		assertThat(webClient.getCurrentWindow().getHistory().getLength()).isEqualTo(0);
+		assertThat(getContent(webClient, "http://localhost/a")).isEqualTo("hello");
+	}
+
+	@Test
+	public void releaseMoreThanMaxIdle() {
+		WebClient webClient1 = pool.checkout();
+		WebClient webClient2 = pool.checkout();
+
+		pool.release(webClient1);
+		pool.release(webClient2);
+
+		assertThat(pool.getCreatedCount()).isEqualTo(2);
+		assertThat(pool.getIdleCount()).isEqualTo(1);
+		assertThat(pool.checkout()).isSameAs(webClient1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseNotFromPool() {
+		pool.release(new WebClient());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseTwice() {
+		WebClient webClient = pool.checkout();
+		pool.release(webClient);
+		pool.release(webClient);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseNull() {
+		pool.release(null);
+	}
+
+	@Test
+	public void closeDiscardsIdleClients() {
+		pool.release(pool.checkout());
+
+		pool.close();
+
+		assertThat(pool.getIdleCount()).isEqualTo(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void checkoutAfterClose() {
+		pool.close();
+
+		pool.checkout();
+	}
+
+	private static String getContent(WebClient webClient, String url) throws IOException {
+		Page page = webClient.getPage(url);
+		return page.getWebResponse().getContentAsString();
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.lang.reflect.Method;
+
+import javax.servlet.http.HttpSession;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.AttributeAccessorSupport;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.annotation.DirtiesContext.HierarchyMode;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestExecutionListeners.MergeMode;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import com.gargoylesoftware.htmlunit.Page;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration
+@WebAppConfiguration
+@TestExecutionListeners(listeners = MockMvcWebClientTestExecutionListener.class, mergeMode = MergeMode.MERGE_WITH_DEFAULTS)
+public class MockMvcWebClientTestExecutionListenerTests {
+	@Autowired
+	WebApplicationContext context;
+
+	WebClient webClient;
+
+	WebClient webClientInBefore;
+
+	@Before
+	public void setup() {
+		webClientInBefore = webClient;
+	}
+
+	@Test
+	public void webClientAssigned() throws Exception {
+		assertThat(webClient).isNotNull();
+		assertThat(webClientInBefore).isSameAs(webClient);
+
+		Page page = webClient.getPage("http://localhost/test");
+
+		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("mvc");
+	}
+
+	@Test
+	public void webClientFromPool() {
+		MockMvcWebClientPool pool = MockMvcWebClientPool.forContext(context);
+
+		assertThat(pool).isSameAs(MockMvcWebClientPool.forContext(context));
+		assertThat(pool.getCreatedCount()).isGreaterThan(0);
+		assertThat(webClient.getCookieManager().getCookies()).isEmpty();
+	}
+
+	@Test
+	public void webClientSessionIsolated() throws Exception {
+		String sessionId = webClient.getPage("http://localhost/session").getWebResponse().getContentAsString();
+
+		assertThat(sessionId).isNotEqualTo(Config.ContextPathController.lastSessionId);
+		Config.ContextPathController.lastSessionId = sessionId;
+	}
+
+	@Test
+	public void webClientSessionIsolatedAgain() throws Exception {
+		webClientSessionIsolated();
+	}
+
+	@Test
+	public void afterTestMethodReleasesToCheckoutPool() throws Exception {
+		GenericWebApplicationContext otherContext = new GenericWebApplicationContext(new MockServletContext());
+		otherContext.refresh();
+		WebClientHolder holder = new WebClientHolder();
+		StubTestContext testContext = new StubTestContext(otherContext, holder);
+		MockMvcWebClientTestExecutionListener listener = new MockMvcWebClientTestExecutionListener();
+		listener.beforeTestMethod(testContext);
+		MockMvcWebClientPool pool = MockMvcWebClientPool.forContext(otherContext);
+		assertThat(holder.webClient).isNotNull();
+
+		otherContext.close();
+		listener.afterTestMethod(testContext);
+
+		assertThat(holder.webClient).isNull();
+		assertThat(MockMvcWebClientTestExecutionListener.getWebClient(testContext)).isNull();
+		assertThat(pool.getIdleCount()).isEqualTo(0);
+	}
+
+	static class WebClientHolder {
+		WebClient webClient;
+	}
+
+	@SuppressWarnings("serial")
+	static class StubTestContext extends AttributeAccessorSupport implements TestContext {
+		private final ApplicationContext applicationContext;
+
+		private final Object testInstance;
+
+		StubTestContext(ApplicationContext applicationContext, Object testInstance) {
+			this.applicationContext = applicationContext;
+			this.testInstance = testInstance;
+		}
+
+		public ApplicationContext getApplicationContext() {
+			return applicationContext;
+		}
+
+		public Class<?> getTestClass() {
+			return testInstance.getClass();
+		}
+
+		public Object getTestInstance() {
+			return testInstance;
+		}
+
+		public Method getTestMethod() {
+			return null;
+		}
+
+		public Throwable getTestException() {
+			return null;
+		}
+
+		public void markApplicationContextDirty(HierarchyMode hierarchyMode) {
+		}
+
+		public void updateState(Object testInstance, Method testMethod, Throwable testException) {
+		}
+	}
+
+	@Configuration
+	@EnableWebMvc
+	static class Config {
+		@RestController
+		static class ContextPathController {
+			static String lastSessionId;
+
+			@RequestMapping("/session")
+			public String session(HttpSession session) {
+				return session.getId();
+			}
+
+			@RequestMapping
+			public String contextPath() {
+				return "mvc";
+			}
+		}
+	}
+}
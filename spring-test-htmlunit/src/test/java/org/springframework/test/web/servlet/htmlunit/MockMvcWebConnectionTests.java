@@ -15,16 +15,45 @@
  */
 package org.springframework.test.web.servlet.htmlunit;
 
+import com.gargoylesoftware.htmlunit.FormEncodingType;
+import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.util.KeyDataPair;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
 
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * @author Rob Winch
@@ -34,10 +63,14 @@ public class MockMvcWebConnectionTests {
 
 	WebClient webClient;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Before
 	public void setup() {
 		mockMvc = MockMvcBuilders
-							.standaloneSetup(new HelloController(), new ForwardController())
+							.standaloneSetup(new HelloController(), new ForwardController(), new SessionController(),
+									new AsyncController(), new UploadController(), new TimingController())
 							.build();
 
 		webClient = new WebClient();
@@ -79,6 +112,452 @@ public class MockMvcWebConnectionTests {
 		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("hello");
 	}
 
+	@Test
+	public void forwardChain() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc, ""));
+
+		Page page = webClient.getPage("http://localhost/forward/chain?name=original");
+
+		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("2 /forward/info /forward/chain forwarded");
+	}
+
+	@Test(expected = IOException.class)
+	public void forwardLoop() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc, ""));
+
+		webClient.getPage("http://localhost/forward/loop");
+	}
+
+	@Test
+	public void multipartUpload() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc, ""));
+		File upload = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), upload);
+		WebRequest request = new WebRequest(new URL("http://localhost/upload"), HttpMethod.POST);
+		request.setEncodingType(FormEncodingType.MULTIPART);
+		request.setRequestParameters(Arrays.asList(new NameValuePair("description", "a file"),
+				new KeyDataPair("file", upload, "text/plain", "UTF-8")));
+
+		Page page = webClient.getPage(request);
+
+		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("a file upload.txt text/plain content");
+	}
+
+	@Test
+	public void maxForwards() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		connection.setMaxForwards(1);
+		webClient.setWebConnection(connection);
+
+		assertThat(getContent(webClient, "http://localhost/forward")).isEqualTo("hello");
+		try {
+			webClient.getPage("http://localhost/forward/chain");
+			fail("Expected IOException");
+		}
+		catch (IOException expected) {
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxForwardsNegative() {
+		new MockMvcWebConnection(mockMvc).setMaxForwards(-1);
+	}
+
+	@Test
+	public void sessionStore() throws IOException {
+		ConcurrentMockHttpSessionStore sessionStore = new ConcurrentMockHttpSessionStore();
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc, "", sessionStore));
+
+		webClient.getPage("http://localhost/session");
+		webClient.getPage("http://localhost/session");
+
+		assertThat(sessionStore.getSessionCount()).isEqualTo(1);
+		assertThat(sessionStore.getCreateCount()).isEqualTo(1);
+	}
+
+	// --- async
+
+	@Test
+	public void asyncCallable() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc));
+
+		assertThat(getContent(webClient, "http://localhost/async/callable")).isEqualTo("callable");
+	}
+
+	@Test
+	public void asyncDeferredResult() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc));
+
+		assertThat(getContent(webClient, "http://localhost/async/deferred")).isEqualTo("deferred");
+	}
+
+	@Test
+	public void asyncForward() throws IOException {
+		webClient.setWebConnection(new MockMvcWebConnection(mockMvc));
+
+		assertThat(getContent(webClient, "http://localhost/async/forward")).isEqualTo(
+				"1 /forward/info /async/forward null");
+	}
+
+	@Test
+	public void asyncTimeoutResult() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		connection.setAsyncTimeout(10);
+		webClient.setWebConnection(connection);
+
+		assertThat(getContent(webClient, "http://localhost/async/timeout")).isEqualTo("timeout");
+	}
+
+	@Test
+	public void asyncTimeout() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		connection.setAsyncTimeout(10);
+		webClient.setWebConnection(connection);
+		webClient.getOptions().setThrowExceptionOnFailingStatusCode(false);
+
+		Page page = webClient.getPage("http://localhost/async/never");
+
+		assertThat(page.getWebResponse().getStatusCode()).isEqualTo(503);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void asyncTimeoutNegative() {
+		new MockMvcWebConnection(mockMvc).setAsyncTimeout(-1);
+	}
+
+	// --- forClient
+
+	@Test
+	public void forClientSharesSessionStore() throws IOException {
+		ConcurrentMockHttpSessionStore sessionStore = new ConcurrentMockHttpSessionStore();
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "", sessionStore);
+		webClient.setWebConnection(connection.forClient());
+
+		webClient.getPage("http://localhost/session");
+
+		assertThat(sessionStore.getSessionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void forClientIsolatesSessions() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		WebClient otherClient = new WebClient();
+		webClient.setWebConnection(connection.forClient());
+		otherClient.setWebConnection(connection.forClient());
+
+		String sessionId = getContent(webClient, "http://localhost/session");
+		String otherSessionId = getContent(otherClient, "http://localhost/session");
+
+		assertThat(getContent(webClient, "http://localhost/session")).isEqualTo(sessionId);
+		assertThat(getContent(otherClient, "http://localhost/session")).isEqualTo(otherSessionId);
+		assertThat(otherSessionId).isNotEqualTo(sessionId);
+	}
+
+	@Test
+	public void forClientConcurrent() throws Exception {
+		final int clientCount = 16;
+		final int requestsPerClient = 25;
+		ConcurrentMockHttpSessionStore sessionStore = new ConcurrentMockHttpSessionStore();
+		final MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "", sessionStore);
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(clientCount);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < clientCount; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						WebClient client = new WebClient();
+						client.setWebConnection(connection.forClient());
+						start.await();
+						String sessionId = getContent(client, "http://localhost/session");
+						for (int i = 1; i < requestsPerClient; i++) {
+							assertThat(getContent(client, "http://localhost/session")).isEqualTo(sessionId);
+							assertThat(getContent(client, "http://localhost/forward")).isEqualTo("hello");
+						}
+						client.closeAllWindows();
+						return sessionId;
+					}
+				}));
+			}
+			start.countDown();
+
+			Set<String> sessionIds = new HashSet<String>();
+			for (Future<String> result : results) {
+				sessionIds.add(result.get(30, TimeUnit.SECONDS));
+			}
+
+			assertThat(sessionIds).hasSize(clientCount);
+			assertThat(sessionStore.getSessionCount()).isEqualTo(clientCount);
+			assertThat(sessionStore.getCreateConflictCount()).isEqualTo(0);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static String getContent(WebClient client, String url) throws IOException {
+		Page page = client.getPage(url);
+		return page.getWebResponse().getContentAsString();
+	}
+
+	@Test
+	public void timingsListener() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection);
+
+		Page page = webClient.getPage("http://localhost/a");
+
+		assertThat(listener.timings).hasSize(1);
+		RequestTimings timings = listener.timings.get(0);
+		assertThat(listener.webResponses.get(0)).isSameAs(page.getWebResponse());
+		assertThat(timings.getForwardCount()).isEqualTo(0);
+		assertThat(timings.getForwardNanos()).isGreaterThanOrEqualTo(0);
+		assertThat(timings.getHandlerNanos()).isGreaterThan(0);
+		assertThat(timings.getTotalNanos()).isEqualTo(timings.getBuildNanos() + timings.getFilterNanos()
+				+ timings.getHandlerNanos() + timings.getViewNanos() + timings.getForwardNanos()
+				+ timings.getConversionNanos());
+	}
+
+	@Test
+	public void timingsListenerForwards() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection);
+
+		webClient.getPage("http://localhost/forward/chain");
+
+		RequestTimings timings = listener.timings.get(0);
+		assertThat(timings.getForwardCount()).isEqualTo(2);
+		assertThat(timings.getForwardNanos()).isGreaterThan(0);
+	}
+
+	@Test
+	public void timingsListenerPathVariablesView() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection);
+
+		Page page = webClient.getPage("http://localhost/timing/view/a/b");
+
+		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("rendered a b");
+		RequestTimings timings = listener.timings.get(0);
+		assertThat(timings.getHandlerNanos()).isGreaterThanOrEqualTo(
+				TimeUnit.MILLISECONDS.toNanos(TimingController.HANDLER_MILLIS));
+		assertThat(timings.getViewNanos()).isGreaterThanOrEqualTo(
+				TimeUnit.MILLISECONDS.toNanos(TimingController.VIEW_MILLIS));
+		assertThat(timings.getViewNanos()).isLessThan(TimeUnit.MILLISECONDS.toNanos(TimingController.HANDLER_MILLIS));
+	}
+
+	@Test
+	public void timingsListenerPathVariablesResponseBody() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection);
+
+		webClient.getPage("http://localhost/timing/body/a");
+
+		RequestTimings timings = listener.timings.get(0);
+		assertThat(timings.getHandlerNanos()).isGreaterThanOrEqualTo(
+				TimeUnit.MILLISECONDS.toNanos(TimingController.HANDLER_MILLIS));
+		assertThat(timings.getViewNanos()).isEqualTo(0);
+	}
+
+	@Test
+	public void timingsListenerFilterForward() throws IOException {
+		MockMvc forwardingMockMvc = MockMvcBuilders.standaloneSetup(new TimingController())
+				.addFilter(new ForwardingFilter("/timing/body/forwarded"), "/forwarding").build();
+		MockMvcWebConnection connection = new MockMvcWebConnection(forwardingMockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection);
+
+		Page page = webClient.getPage("http://localhost/forwarding");
+
+		assertThat(page.getWebResponse().getContentAsString()).isEqualTo("forwarded");
+		RequestTimings timings = listener.timings.get(0);
+		assertThat(timings.getForwardCount()).isEqualTo(1);
+		assertThat(timings.getFilterNanos()).isGreaterThanOrEqualTo(0);
+		assertThat(timings.getHandlerNanos()).isEqualTo(0);
+		assertThat(timings.getViewNanos()).isEqualTo(0);
+		assertThat(timings.getForwardNanos()).isGreaterThanOrEqualTo(
+				TimeUnit.MILLISECONDS.toNanos(TimingController.HANDLER_MILLIS));
+	}
+
+	@Test
+	public void forClientSharesTimingsListeners() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		RecordingTimingsListener listener = new RecordingTimingsListener();
+		connection.addTimingsListener(listener);
+		webClient.setWebConnection(connection.forClient());
+
+		webClient.getPage("http://localhost/a");
+
+		assertThat(listener.timings).hasSize(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addTimingsListenerNull() {
+		new MockMvcWebConnection(mockMvc).addTimingsListener(null);
+	}
+
+	@Test
+	public void metrics() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		connection.setMetrics(metrics);
+		webClient.setWebConnection(connection);
+
+		String sessionId = getContent(webClient, "http://localhost/session");
+		getContent(webClient, "http://localhost/session");
+		webClient.getPage("http://localhost/forward/chain");
+
+		assertThat(metrics.getRequestCount()).isEqualTo(3);
+		assertThat(metrics.getForwardCount()).isEqualTo(2);
+		assertThat(metrics.getSessionCount()).isEqualTo(1);
+		assertThat(metrics.getBytesOut()).isGreaterThanOrEqualTo(2 * sessionId.length());
+	}
+
+	@Test
+	public void metricsMultipartBytesIn() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		connection.setMetrics(metrics);
+		webClient.setWebConnection(connection);
+		File upload = folder.newFile("upload.txt");
+		FileCopyUtils.copy("content".getBytes("UTF-8"), upload);
+		WebRequest request = new WebRequest(new URL("http://localhost/upload"), HttpMethod.POST);
+		request.setEncodingType(FormEncodingType.MULTIPART);
+		request.setRequestParameters(Arrays.asList(new NameValuePair("description", "a file"),
+				new KeyDataPair("file", upload, "text/plain", "UTF-8")));
+
+		webClient.getPage(request);
+
+		assertThat(metrics.getBytesIn()).isEqualTo(7);
+	}
+
+	@Test
+	public void forClientSharesMetrics() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "");
+		SimpleWebConnectionMetrics metrics = new SimpleWebConnectionMetrics();
+		connection.setMetrics(metrics);
+		webClient.setWebConnection(connection.forClient());
+
+		webClient.getPage("http://localhost/a");
+
+		assertThat(metrics.getRequestCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setMetricsNull() {
+		new MockMvcWebConnection(mockMvc).setMetrics(null);
+	}
+
+	// --- snapshot
+
+	@Test
+	public void snapshotRestoresSession() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		webClient.setWebConnection(connection);
+		assertThat(getContent(webClient, "http://localhost/session/count")).isEqualTo("1");
+		MockHttpSessionSnapshot snapshot = connection.snapshot();
+
+		MockMvcWebConnection restored = connection.forClient();
+		restored.restore(snapshot);
+		WebClient otherClient = new WebClient();
+		otherClient.setWebConnection(restored);
+
+		assertThat(snapshot.getSessionCount()).isEqualTo(1);
+		assertThat(getContent(otherClient, "http://localhost/session/count")).isEqualTo("2");
+		assertThat(getContent(otherClient, "http://localhost/session")).isNotEqualTo(
+				getContent(webClient, "http://localhost/session"));
+	}
+
+	@Test
+	public void snapshotCopiesAttributes() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		webClient.setWebConnection(connection);
+		getContent(webClient, "http://localhost/session/count");
+		MockHttpSessionSnapshot snapshot = connection.snapshot();
+		WebClient client1 = new WebClient();
+		client1.setWebConnection(connection.forClient());
+		((MockMvcWebConnection) client1.getWebConnection()).restore(snapshot);
+		WebClient client2 = new WebClient();
+		client2.setWebConnection(connection.forClient());
+		((MockMvcWebConnection) client2.getWebConnection()).restore(snapshot);
+
+		assertThat(getContent(client1, "http://localhost/session/count")).isEqualTo("2");
+		assertThat(getContent(client1, "http://localhost/session/count")).isEqualTo("3");
+		assertThat(getContent(client2, "http://localhost/session/count")).isEqualTo("2");
+		assertThat(getContent(webClient, "http://localhost/session/count")).isEqualTo("2");
+	}
+
+	@Test
+	public void snapshotIgnoresLaterChanges() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+		webClient.setWebConnection(connection);
+		getContent(webClient, "http://localhost/session/count");
+		MockHttpSessionSnapshot snapshot = connection.snapshot();
+		getContent(webClient, "http://localhost/session/count");
+
+		MockMvcWebConnection restored = connection.forClient();
+		restored.restore(snapshot);
+		webClient.setWebConnection(restored);
+
+		assertThat(getContent(webClient, "http://localhost/session/count")).isEqualTo("2");
+	}
+
+	@Test
+	public void snapshotRestoredSessionInvalidate() throws IOException {
+		ConcurrentMockHttpSessionStore sessionStore = new ConcurrentMockHttpSessionStore();
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc, "", sessionStore);
+		webClient.setWebConnection(connection);
+		getContent(webClient, "http://localhost/session/count");
+		MockHttpSessionSnapshot snapshot = connection.snapshot();
+		MockMvcWebConnection restored = connection.forClient();
+		restored.restore(snapshot);
+		webClient.setWebConnection(restored);
+		assertThat(sessionStore.getSessionCount()).isEqualTo(2);
+
+		getContent(webClient, "http://localhost/session/invalidate");
+
+		assertThat(sessionStore.getSessionCount()).isEqualTo(1);
+		assertThat(getContent(webClient, "http://localhost/session/count")).isEqualTo("1");
+	}
+
+	@Test
+	public void snapshotEmpty() throws IOException {
+		MockMvcWebConnection connection = new MockMvcWebConnection(mockMvc);
+
+		MockHttpSessionSnapshot snapshot = connection.snapshot();
+		MockMvcWebConnection restored = connection.forClient();
+		restored.restore(snapshot);
+		webClient.setWebConnection(restored);
+
+		assertThat(snapshot.getSessionCount()).isEqualTo(0);
+		assertThat(getContent(webClient, "http://localhost/session/count")).isEqualTo("1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void restoreNull() {
+		new MockMvcWebConnection(mockMvc).restore(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sessionStoreNull() throws IOException {
+		new MockMvcWebConnection(mockMvc, "", null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxInMemoryNegative() {
+		new MockMvcWebConnection(mockMvc).setMaxInMemory(-1);
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void contextPathDoesNotStartWithSlash() throws IOException {
 		new MockMvcWebConnection(mockMvc, "context");
@@ -88,4 +567,29 @@ public class MockMvcWebConnectionTests {
 	public void contextPathEndsWithSlash() throws IOException {
 		new MockMvcWebConnection(mockMvc, "/context/");
 	}
-}
\ No newline at end of file
+
+	static class ForwardingFilter extends OncePerRequestFilter {
+		private final String path;
+
+		ForwardingFilter(String path) {
+			this.path = path;
+		}
+
+		@Override
+		protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+				throws ServletException, IOException {
+			request.getRequestDispatcher(path).forward(request, response);
+		}
+	}
+
+	static class RecordingTimingsListener implements RequestTimingsListener {
+		final List<WebResponse> webResponses = new ArrayList<WebResponse>();
+
+		final List<RequestTimings> timings = new ArrayList<RequestTimings>();
+
+		public void requestTimed(WebRequest webRequest, WebResponse webResponse, RequestTimings timings) {
+			this.webResponses.add(webResponse);
+			this.timings.add(timings);
+		}
+	}
+}
@@ -14,6 +14,8 @@ package org.springframework.test.web.servlet.htmlunit;
 
 import static org.fest.assertions.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.net.URL;
 import java.util.List;
 
@@ -69,6 +71,29 @@ public class MockWebResponseBuilderTests {
 		assertThat(webResponse.getContentAsString()).isEqualTo("expected content");
 	}
 
+	@Test
+	public void buildContentMaxInMemoryExceeded() throws Exception {
+		httpServletResponse.getWriter().write("expected content");
+		responseBuilder.setMaxInMemory(4);
+
+		WebResponse webResponse = responseBuilder.build();
+
+		assertThat(webResponse.getContentAsStream()).isInstanceOf(FileInputStream.class);
+		assertThat(webResponse.getContentAsString()).isEqualTo("expected content");
+		webResponse.cleanUp();
+	}
+
+	@Test
+	public void buildContentMaxInMemoryNotExceeded() throws Exception {
+		httpServletResponse.getWriter().write("expected content");
+		responseBuilder.setMaxInMemory(16);
+
+		WebResponse webResponse = responseBuilder.build();
+
+		assertThat(webResponse.getContentAsStream()).isInstanceOf(ByteArrayInputStream.class);
+		assertThat(webResponse.getContentAsString()).isEqualTo("expected content");
+	}
+
 	@Test
 	public void buildContentCharset() throws Exception {
 		httpServletResponse.addHeader("Content-Type", "text/html; charset=UTF-8");
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.Collections;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.htmlunit.HtmlUnitRequestBuilderTests.CountingRequestBuilder;
+
+public class ParentRequestTemplateTests {
+	private ServletContext servletContext;
+
+	private CountingRequestBuilder parent;
+
+	@Before
+	public void setup() {
+		servletContext = new MockServletContext();
+		parent = new CountingRequestBuilder(get("/").header("header", "a", "b").param("param", "c")
+				.cookie(new Cookie("cookie", "d")).requestAttr("attr", "e").sessionAttr("sessionAttr", "f"));
+	}
+
+	@Test
+	public void applyTo() {
+		MockHttpServletRequest request = new MockHttpServletRequest(servletContext);
+
+		ParentRequestTemplate.create(parent, servletContext).applyTo(request);
+
+		assertThat(Collections.list(request.getHeaders("header"))).containsOnly("a", "b");
+		assertThat(request.getParameterValues("param")).containsOnly("c");
+		assertThat(request.getCookies()[0].getValue()).isEqualTo("d");
+		assertThat(request.getAttribute("attr")).isEqualTo("e");
+		assertThat(request.getSession().getAttribute("sessionAttr")).isEqualTo("f");
+	}
+
+	@Test
+	public void applyToDoesNotShareState() {
+		ParentRequestTemplate template = ParentRequestTemplate.create(parent, servletContext);
+		MockHttpServletRequest first = new MockHttpServletRequest(servletContext);
+		template.applyTo(first);
+		first.getCookies()[0] = new Cookie("other", "value");
+		first.getParameterValues("param")[0] = "other";
+		first.addParameter("param", "other");
+
+		MockHttpServletRequest second = new MockHttpServletRequest(servletContext);
+		template.applyTo(second);
+
+		assertThat(second.getCookies()[0].getName()).isEqualTo("cookie");
+		assertThat(second.getParameterValues("param")).containsOnly("c");
+	}
+
+	// --- Cache
+
+	@Test
+	public void cacheBuildsOnce() {
+		ParentRequestTemplate.Cache cache = new ParentRequestTemplate.Cache();
+
+		ParentRequestTemplate template = cache.get(parent, servletContext);
+
+		assertThat(cache.get(parent, servletContext)).isSameAs(template);
+		assertThat(parent.buildCount).isEqualTo(1);
+	}
+
+	@Test
+	public void cacheDifferentParent() {
+		ParentRequestTemplate.Cache cache = new ParentRequestTemplate.Cache();
+		CountingRequestBuilder otherParent = new CountingRequestBuilder(get("/"));
+
+		cache.get(parent, servletContext);
+		cache.get(otherParent, servletContext);
+		cache.get(parent, servletContext);
+
+		assertThat(parent.buildCount).isEqualTo(2);
+		assertThat(otherParent.buildCount).isEqualTo(1);
+	}
+
+	@Test
+	public void cacheDifferentServletContext() {
+		ParentRequestTemplate.Cache cache = new ParentRequestTemplate.Cache();
+
+		cache.get(parent, servletContext);
+		cache.get(parent, new MockServletContext());
+
+		assertThat(parent.buildCount).isEqualTo(2);
+	}
+}
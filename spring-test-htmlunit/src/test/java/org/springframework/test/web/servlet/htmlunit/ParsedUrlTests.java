@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.util.MultiValueMap;
+
+public class ParsedUrlTests {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullUrl() {
+		new ParsedUrl(null);
+	}
+
+	@Test
+	public void components() throws Exception {
+		URL url = new URL("https://example.com:8443/app/a%20b?name=value");
+
+		ParsedUrl parsed = new ParsedUrl(url);
+
+		assertThat(parsed.getUrl()).isSameAs(url);
+		assertThat(parsed.getScheme()).isEqualTo("https");
+		assertThat(parsed.getHost()).isEqualTo("example.com");
+		assertThat(parsed.getPort()).isEqualTo(8443);
+		assertThat(parsed.getPath()).isEqualTo("/app/a%20b");
+		assertThat(parsed.getQuery()).isEqualTo("name=value");
+	}
+
+	@Test
+	public void portDefault() throws Exception {
+		assertThat(new ParsedUrl(new URL("http://example.com/")).getPort()).isEqualTo(-1);
+	}
+
+	@Test
+	public void queryNone() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/"));
+
+		assertThat(parsed.getQuery()).isNull();
+		assertThat(parsed.getQueryParams()).isEmpty();
+	}
+
+	@Test
+	public void queryEmpty() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?"));
+
+		assertThat(parsed.getQuery()).isNull();
+		assertThat(parsed.getQueryParams()).isEmpty();
+	}
+
+	// --- getPathSegments
+
+	@Test
+	public void getPathSegments() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/app//a/b/"));
+
+		assertThat(parsed.getPathSegments()).isEqualTo(Arrays.asList("app", "a", "b"));
+	}
+
+	@Test
+	public void getPathSegmentsRoot() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/"));
+
+		assertThat(parsed.getPathSegments()).isEqualTo(Collections.emptyList());
+	}
+
+	// --- getQueryParams
+
+	@Test
+	public void getQueryParams() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?a=1&b=2&a=3"));
+
+		MultiValueMap<String, String> params = parsed.getQueryParams();
+
+		assertThat(new ArrayList<String>(params.keySet())).isEqualTo(Arrays.asList("a", "b"));
+		assertThat(params.get("a")).isEqualTo(Arrays.asList("1", "3"));
+		assertThat(params.get("b")).isEqualTo(Arrays.asList("2"));
+	}
+
+	@Test
+	public void getQueryParamsNotDecoded() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?a%20b=c%26d"));
+
+		assertThat(parsed.getQueryParams().getFirst("a%20b")).isEqualTo("c%26d");
+	}
+
+	@Test
+	public void getQueryParamsValueContainsEquals() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?a=b=c"));
+
+		assertThat(parsed.getQueryParams().getFirst("a")).isEqualTo("b=c");
+	}
+
+	@Test
+	public void getQueryParamsNoValue() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?a&b="));
+
+		assertThat(parsed.getQueryParams().getFirst("a")).isEqualTo("");
+		assertThat(parsed.getQueryParams().getFirst("b")).isEqualTo("");
+	}
+
+	@Test
+	public void getQueryParamsEmptyPairsIgnored() throws Exception {
+		ParsedUrl parsed = new ParsedUrl(new URL("http://example.com/?&&=x&a=1&"));
+
+		assertThat(new ArrayList<String>(parsed.getQueryParams().keySet())).isEqualTo(Arrays.asList("a"));
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RequestTimingsTests {
+
+	@Test
+	public void getters() {
+		RequestTimings timings = new RequestTimings(1, 2, 3, 4, 5, 6, 7, 28);
+
+		assertThat(timings.getBuildNanos()).isEqualTo(1);
+		assertThat(timings.getFilterNanos()).isEqualTo(2);
+		assertThat(timings.getHandlerNanos()).isEqualTo(3);
+		assertThat(timings.getViewNanos()).isEqualTo(4);
+		assertThat(timings.getForwardNanos()).isEqualTo(5);
+		assertThat(timings.getForwardCount()).isEqualTo(6);
+		assertThat(timings.getConversionNanos()).isEqualTo(7);
+		assertThat(timings.getTotalNanos()).isEqualTo(28);
+	}
+
+	@Test
+	public void toStringInMicros() {
+		RequestTimings timings = new RequestTimings(1000, 2000, 3000, 4000, 5000, 1, 6000, 21000);
+
+		assertThat(timings.toString()).isEqualTo(
+				"RequestTimings [total=21us, build=1us, filter=2us, handler=3us, view=4us, forward=5us (1), conversion=6us]");
+	}
+}
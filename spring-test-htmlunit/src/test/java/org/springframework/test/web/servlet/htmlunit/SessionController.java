@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpSession;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+public class SessionController {
+
+	@RequestMapping("/session")
+	@ResponseBody
+	public String session(HttpSession session) {
+		return session.getId();
+	}
+
+	@RequestMapping("/session/count")
+	@ResponseBody
+	public String count(HttpSession session) {
+		AtomicInteger count = (AtomicInteger) session.getAttribute("count");
+		if (count == null) {
+			count = new AtomicInteger();
+			session.setAttribute("count", count);
+		}
+		return String.valueOf(count.incrementAndGet());
+	}
+
+	@RequestMapping("/session/invalidate")
+	@ResponseBody
+	public String invalidate(HttpSession session) {
+		session.invalidate();
+		return "invalidated";
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SimpleWebConnectionMetricsTests {
+	SimpleWebConnectionMetrics metrics;
+
+	@Before
+	public void setup() {
+		metrics = new SimpleWebConnectionMetrics();
+	}
+
+	@Test
+	public void requestProcessed() {
+		metrics.requestProcessed(null, null, 0, 1, 10, 100);
+		metrics.requestProcessed(null, null, 0, 2, 20, 200);
+
+		assertThat(metrics.getRequestCount()).isEqualTo(2);
+		assertThat(metrics.getForwardCount()).isEqualTo(3);
+		assertThat(metrics.getBytesIn()).isEqualTo(30);
+		assertThat(metrics.getBytesOut()).isEqualTo(300);
+	}
+
+	@Test
+	public void sessionCreated() {
+		metrics.sessionCreated(null);
+
+		assertThat(metrics.getSessionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void requestRouted() {
+		metrics.requestRouted(null, 0, 0);
+		metrics.requestRouted(null, 0, 0);
+		metrics.requestRouted(null, WebConnectionMetrics.DEFAULT_ROUTE, 0);
+
+		assertThat(metrics.getRouteCount(0)).isEqualTo(2);
+		assertThat(metrics.getRouteCount(1)).isEqualTo(0);
+		assertThat(metrics.getDefaultRouteCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void latencyHistogram() {
+		metrics.requestProcessed(null, null, TimeUnit.MILLISECONDS.toNanos(1), 0, 0, 0);
+		metrics.requestProcessed(null, null, TimeUnit.MILLISECONDS.toNanos(7), 0, 0, 0);
+		metrics.requestProcessed(null, null, TimeUnit.MILLISECONDS.toNanos(10), 0, 0, 0);
+		metrics.requestProcessed(null, null, TimeUnit.SECONDS.toNanos(60), 0, 0, 0);
+
+		Map<Long, Long> histogram = metrics.getLatencyHistogram();
+
+		assertThat(histogram.get(1L)).isEqualTo(1);
+		assertThat(histogram.get(2L)).isEqualTo(0);
+		assertThat(histogram.get(10L)).isEqualTo(2);
+		assertThat(histogram.get(Long.MAX_VALUE)).isEqualTo(1);
+		assertThat(metrics.getRouteLatencyHistogram().get(1L)).isEqualTo(0);
+	}
+
+	@Test
+	public void routeLatencyHistogram() {
+		metrics.requestRouted(null, 0, TimeUnit.MILLISECONDS.toNanos(3));
+
+		assertThat(metrics.getRouteLatencyHistogram().get(5L)).isEqualTo(1);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void latencyHistogramUnmodifiable() {
+		metrics.getLatencyHistogram().clear();
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileCopyUtils;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class StaticResourceWebConnectionTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private WebConnection delegate;
+
+	private StaticResourceWebConnection connection;
+
+	@Before
+	public void setup() throws Exception {
+		delegate = mock(WebConnection.class);
+		connection = new StaticResourceWebConnection(delegate);
+
+		File css = new File(folder.newFolder("css"), "app.css");
+		FileCopyUtils.copy("body {}".getBytes("UTF-8"), css);
+		connection.addResourceLocations("/resources/", new FileSystemResource(folder.getRoot().getPath() + "/"));
+	}
+
+	// --- constructor
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullDelegate() {
+		new StaticResourceWebConnection(null);
+	}
+
+	// --- addResourceLocations
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addResourceLocationsNoLeadingSlash() {
+		connection.addResourceLocations("resources/", new FileSystemResource(folder.getRoot()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addResourceLocationsNoTrailingSlash() {
+		connection.addResourceLocations("/resources", new FileSystemResource(folder.getRoot()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void addResourceLocationsEmpty() {
+		connection.addResourceLocations("/resources/");
+	}
+
+	// --- getResponse
+
+	@Test
+	public void getResponse() throws Exception {
+		WebResponse response = connection.getResponse(request("http://localhost/resources/css/app.css"));
+
+		assertThat(response.getStatusCode()).isEqualTo(200);
+		assertThat(response.getContentType()).isEqualTo("text/css");
+		assertThat(response.getResponseHeaderValue("Content-Length")).isEqualTo("7");
+		assertThat(response.getContentAsString()).isEqualTo("body {}");
+		verifyZeroInteractions(delegate);
+	}
+
+	@Test
+	public void getResponseCached() throws Exception {
+		connection.getResponse(request("http://localhost/resources/css/app.css"));
+		new File(folder.getRoot(), "css/app.css").delete();
+
+		WebResponse response = connection.getResponse(request("http://localhost/resources/css/app.css"));
+
+		assertThat(response.getContentAsString()).isEqualTo("body {}");
+	}
+
+	@Test
+	public void getResponseNotFound() throws Exception {
+		assertDelegated("http://localhost/resources/css/missing.css");
+	}
+
+	@Test
+	public void getResponseOtherPrefix() throws Exception {
+		assertDelegated("http://localhost/css/app.css");
+	}
+
+	@Test
+	public void getResponseDirectory() throws Exception {
+		assertDelegated("http://localhost/resources/css/");
+	}
+
+	@Test
+	public void getResponseParentDirectory() throws Exception {
+		File secret = new File(folder.getRoot().getParentFile(), folder.getRoot().getName() + ".txt");
+		FileCopyUtils.copy("secret".getBytes("UTF-8"), secret);
+		try {
+			assertDelegated("http://localhost/resources/%2E%2E/" + secret.getName());
+		}
+		finally {
+			secret.delete();
+		}
+	}
+
+	@Test
+	public void getResponsePost() throws Exception {
+		WebRequest request = request("http://localhost/resources/css/app.css");
+		request.setHttpMethod(HttpMethod.POST);
+		WebResponse expected = response(request);
+		when(delegate.getResponse(request)).thenReturn(expected);
+
+		assertThat(connection.getResponse(request)).isSameAs(expected);
+	}
+
+	@Test
+	public void getResponseContentTypeGuessed() throws Exception {
+		FileCopyUtils.copy(new byte[0], new File(folder.getRoot(), "image.PNG"));
+		FileCopyUtils.copy(new byte[0], new File(folder.getRoot(), "data.unknown"));
+
+		assertThat(connection.getResponse(request("http://localhost/resources/image.PNG")).getContentType())
+				.isEqualTo("image/png");
+		assertThat(connection.getResponse(request("http://localhost/resources/data.unknown")).getContentType())
+				.isEqualTo("application/octet-stream");
+	}
+
+	@Test
+	public void getResponseOtherPrefixNotCached() throws Exception {
+		assertDelegated("http://localhost/messages/123");
+
+		assertThat(cachedPaths()).isEqualTo(0);
+	}
+
+	@Test
+	public void getResponseCacheBounded() throws Exception {
+		for (int i = 0; i < StaticResourceWebConnection.MAX_CACHED_PATHS + 10; i++) {
+			connection.getResponse(request("http://localhost/resources/missing" + i + ".css"));
+		}
+
+		assertThat(cachedPaths()).isEqualTo(StaticResourceWebConnection.MAX_CACHED_PATHS);
+		assertThat(connection.getResponse(request("http://localhost/resources/css/app.css")).getContentAsString())
+				.isEqualTo("body {}");
+	}
+
+	// --- setContextPath
+
+	@Test
+	public void getResponseContextPath() throws Exception {
+		connection.setContextPath("/app");
+
+		WebResponse response = connection.getResponse(request("http://localhost/app/resources/css/app.css"));
+
+		assertThat(response.getContentAsString()).isEqualTo("body {}");
+		assertDelegated("http://localhost/resources/css/app.css");
+	}
+
+	@Test
+	public void getResponseContextPathNull() throws Exception {
+		connection.setContextPath(null);
+
+		WebResponse response = connection.getResponse(request("http://localhost/any/resources/css/app.css"));
+
+		assertThat(response.getContentAsString()).isEqualTo("body {}");
+		assertDelegated("http://localhost/resources");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void setContextPathTrailingSlash() {
+		connection.setContextPath("/app/");
+	}
+
+	private int cachedPaths() {
+		return ((Map<?, ?>) ReflectionTestUtils.getField(connection, "resources")).size();
+	}
+
+	private void assertDelegated(String url) throws Exception {
+		WebRequest request = request(url);
+		WebResponse expected = response(request);
+		when(delegate.getResponse(request)).thenReturn(expected);
+
+		assertThat(connection.getResponse(request)).isSameAs(expected);
+		verify(delegate).getResponse(request);
+	}
+
+	private static WebRequest request(String url) throws Exception {
+		return new WebRequest(new URL(url));
+	}
+
+	private static WebResponse response(WebRequest request) throws Exception {
+		WebResponseData data = new WebResponseData(new byte[0], 404, "", Collections.<NameValuePair>emptyList());
+		return new WebResponse(data, request, 0L);
+	}
+}
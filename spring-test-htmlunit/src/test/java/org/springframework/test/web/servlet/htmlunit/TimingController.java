@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.view.AbstractView;
+
+/**
+ * Handlers that take a known amount of time in the handler and the view.
+ */
+@Controller
+public class TimingController {
+	static final long HANDLER_MILLIS = 50;
+
+	static final long VIEW_MILLIS = 30;
+
+	@RequestMapping("/timing/view/{first}/{second}")
+	public ModelAndView view(@PathVariable String first, @PathVariable String second) throws InterruptedException {
+		Thread.sleep(HANDLER_MILLIS);
+		return new ModelAndView(new SleepingView());
+	}
+
+	@RequestMapping("/timing/body/{first}")
+	@ResponseBody
+	public String body(@PathVariable String first) throws InterruptedException {
+		Thread.sleep(HANDLER_MILLIS);
+		return first;
+	}
+
+	static class SleepingView extends AbstractView {
+		@Override
+		protected void renderMergedOutputModel(Map<String, Object> model, HttpServletRequest request,
+				HttpServletResponse response) throws Exception {
+			Thread.sleep(VIEW_MILLIS);
+			response.getWriter().write("rendered " + model.get("first") + " " + model.get("second"));
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2002-2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.gargoylesoftware.htmlunit.WebConnection;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class WebConnectionExecutorTests {
+	private WebConnection delegate;
+
+	private WebRequest request;
+
+	private WebResponse expectedResponse;
+
+	@Before
+	public void setup() throws Exception {
+		delegate = mock(WebConnection.class);
+		request = new WebRequest(new URL("http://localhost/"));
+		WebResponseData data = new WebResponseData("".getBytes("UTF-8"), 200, "", Collections.<NameValuePair>emptyList());
+		expectedResponse = new WebResponse(data, request, 100L);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorMaxConcurrentCallsZero() {
+		new WebConnectionExecutor(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decorateNull() {
+		new WebConnectionExecutor().decorate(null);
+	}
+
+	@Test
+	public void getResponseCallingThread() throws Exception {
+		assertCallingThread(new WebConnectionExecutor());
+	}
+
+	@Test
+	public void getResponseBoundedCallingThread() throws Exception {
+		assertCallingThread(new WebConnectionExecutor(1));
+	}
+
+	@Test
+	public void getResponseIOExceptionReleasesPermit() throws Exception {
+		when(delegate.getResponse(request)).thenThrow(new IOException()).thenReturn(expectedResponse);
+		WebConnectionExecutor connectionExecutor = new WebConnectionExecutor(1);
+		WebConnection connection = connectionExecutor.decorate(delegate);
+
+		try {
+			connection.getResponse(request);
+			fail("Expected IOException");
+		}
+		catch (IOException success) {
+		}
+
+		assertThat(connection.getResponse(request)).isSameAs(expectedResponse);
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getResponseRuntimeException() throws Exception {
+		when(delegate.getResponse(request)).thenThrow(new IllegalStateException());
+
+		new WebConnectionExecutor(1).decorate(delegate).getResponse(request);
+	}
+
+	@Test
+	public void getResponseBoundedWaits() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		when(delegate.getResponse(request)).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) throws Exception {
+				maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+				started.countDown();
+				release.await();
+				running.decrementAndGet();
+				return expectedResponse;
+			}
+		});
+		WebConnectionExecutor connectionExecutor = new WebConnectionExecutor(1);
+		WebConnection connection = connectionExecutor.decorate(delegate);
+		Thread first = client(connection);
+		first.start();
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		Thread second = client(connection);
+		second.start();
+
+		while (connectionExecutor.getInFlightCount() < 2) {
+			Thread.sleep(5);
+		}
+		assertThat(running.get()).isEqualTo(1);
+
+		release.countDown();
+		first.join();
+		second.join();
+
+		assertThat(maxRunning.get()).isEqualTo(1);
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void getResponseInterruptedWhileWaiting() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(delegate.getResponse(request)).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) throws Exception {
+				started.countDown();
+				release.await();
+				return expectedResponse;
+			}
+		});
+		WebConnectionExecutor connectionExecutor = new WebConnectionExecutor(1);
+		WebConnection connection = connectionExecutor.decorate(delegate);
+		Thread first = client(connection);
+		first.start();
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		Thread.currentThread().interrupt();
+		try {
+			connection.getResponse(request);
+			fail("Expected InterruptedIOException");
+		}
+		catch (InterruptedIOException success) {
+			assertThat(Thread.interrupted()).isTrue();
+		}
+
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(1);
+		release.countDown();
+		first.join();
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void awaitIdle() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(delegate.getResponse(request)).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) throws Exception {
+				started.countDown();
+				release.await();
+				return expectedResponse;
+			}
+		});
+		WebConnectionExecutor connectionExecutor = new WebConnectionExecutor(2);
+		Thread client = client(connectionExecutor.decorate(delegate));
+		client.start();
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(1);
+		assertThat(connectionExecutor.awaitIdle(10, TimeUnit.MILLISECONDS)).isFalse();
+
+		release.countDown();
+
+		assertThat(connectionExecutor.awaitIdle(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(0);
+		client.join();
+	}
+
+	@Test
+	public void awaitIdleNothingInFlight() throws Exception {
+		assertThat(new WebConnectionExecutor().awaitIdle(0, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private void assertCallingThread(WebConnectionExecutor connectionExecutor) throws Exception {
+		final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		when(delegate.getResponse(request)).thenAnswer(new Answer<WebResponse>() {
+			@Override
+			public WebResponse answer(InvocationOnMock invocation) {
+				thread.set(Thread.currentThread());
+				return expectedResponse;
+			}
+		});
+
+		WebResponse response = connectionExecutor.decorate(delegate).getResponse(request);
+
+		assertThat(response).isSameAs(expectedResponse);
+		assertThat(thread.get()).isSameAs(Thread.currentThread());
+		assertThat(connectionExecutor.getInFlightCount()).isEqualTo(0);
+	}
+
+	private Thread client(final WebConnection connection) {
+		return new Thread() {
+			@Override
+			public void run() {
+				try {
+					connection.getResponse(request);
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseData;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+public class WebResponseArchiveTests {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// --- factory methods
+
+	@Test(expected = IllegalArgumentException.class)
+	public void forRecordingNull() throws Exception {
+		WebResponseArchive.forRecording(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void forReplayNull() throws Exception {
+		WebResponseArchive.forReplay(null);
+	}
+
+	@Test(expected = IOException.class)
+	public void forReplayNotAnArchive() throws Exception {
+		File file = folder.newFile();
+		FileCopyUtils.copy("not an archive".getBytes("UTF-8"), file);
+
+		WebResponseArchive.forReplay(file);
+	}
+
+	@Test
+	public void forReplayEmpty() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive.forRecording(file).close();
+
+		WebResponseArchive archive = WebResponseArchive.forReplay(file);
+
+		assertThat(archive.isRecording()).isFalse();
+		assertThat(archive.getSize()).isEqualTo(0);
+		assertThat(archive.replay(request("http://example.com/"))).isNull();
+		assertThat(archive.getMissCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IOException.class)
+	public void forReplayTruncated() throws Exception {
+		byte[] recorded = recordOne();
+		File file = folder.newFile();
+		FileCopyUtils.copy(Arrays.copyOf(recorded, recorded.length - 3), file);
+
+		WebResponseArchive.forReplay(file);
+	}
+
+	@Test(expected = IOException.class)
+	public void forReplayNegativeLength() throws Exception {
+		byte[] recorded = recordOne();
+		// the length of the key of the first response
+		Arrays.fill(recorded, 8, 12, (byte) 0xFF);
+		File file = folder.newFile();
+		FileCopyUtils.copy(recorded, file);
+
+		WebResponseArchive.forReplay(file);
+	}
+
+	@Test(expected = IOException.class)
+	public void forReplayLengthBeyondEnd() throws Exception {
+		byte[] recorded = recordOne();
+		recorded[8] = 0x7F;
+		File file = folder.newFile();
+		FileCopyUtils.copy(recorded, file);
+
+		WebResponseArchive.forReplay(file);
+	}
+
+	// --- record / replay
+
+	@Test
+	public void replay() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		List<NameValuePair> headers = new ArrayList<NameValuePair>();
+		headers.add(new NameValuePair("Content-Type", "text/css"));
+		headers.add(new NameValuePair("X-Test", "a"));
+		headers.add(new NameValuePair("X-Test", "b"));
+		recording.record(request("http://example.com/a.css"), response("http://example.com/a.css", 200, "body {}", headers));
+		recording.record(request("http://example.com/missing"), response("http://example.com/missing", 404, "", new ArrayList<NameValuePair>()));
+		recording.close();
+		assertThat(recording.isRecording()).isTrue();
+		assertThat(recording.getRecordedCount()).isEqualTo(2);
+
+		WebResponseArchive archive = WebResponseArchive.forReplay(file);
+		WebResponseData css = archive.replay(request("http://example.com/a.css"));
+		WebResponseData missing = archive.replay(request("http://example.com/missing"));
+
+		assertThat(archive.getSize()).isEqualTo(2);
+		assertThat(archive.getHitCount()).isEqualTo(2);
+		assertThat(css.getStatusCode()).isEqualTo(200);
+		assertThat(css.getStatusMessage()).isEqualTo("OK");
+		assertThat(css.getResponseHeaders()).isEqualTo(headers);
+		assertThat(content(css)).isEqualTo("body {}");
+		assertThat(content(css)).isEqualTo("body {}");
+		assertThat(missing.getStatusCode()).isEqualTo(404);
+		assertThat(missing.getBody()).isEmpty();
+	}
+
+	@Test
+	public void replayLastRecorded() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		recording.record(request("http://example.com/"), response("http://example.com/", 200, "first", new ArrayList<NameValuePair>()));
+		recording.record(request("http://example.com/"), response("http://example.com/", 200, "second", new ArrayList<NameValuePair>()));
+		recording.close();
+
+		WebResponseArchive archive = WebResponseArchive.forReplay(file);
+
+		assertThat(archive.getSize()).isEqualTo(1);
+		assertThat(content(archive.replay(request("http://example.com/")))).isEqualTo("second");
+	}
+
+	@Test
+	public void recordDoesNotStoreContentEncoding() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		List<NameValuePair> headers = new ArrayList<NameValuePair>();
+		headers.add(new NameValuePair("Content-Length", "4"));
+		headers.add(new NameValuePair("Content-Encoding", "identity"));
+		headers.add(new NameValuePair("Content-Type", "text/plain"));
+		recording.record(request("http://example.com/"), response("http://example.com/", 200, "text", headers));
+		recording.close();
+
+		WebResponseData data = WebResponseArchive.forReplay(file).replay(request("http://example.com/"));
+
+		assertThat(data.getResponseHeaders()).containsOnly(new NameValuePair("Content-Type", "text/plain"));
+	}
+
+	@Test
+	public void replayDistinguishesRequestContent() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		WebRequest first = request("http://example.com/search");
+		first.setHttpMethod(HttpMethod.POST);
+		first.setRequestParameters(Collections.singletonList(new NameValuePair("q", "first")));
+		WebRequest second = request("http://example.com/search");
+		second.setHttpMethod(HttpMethod.POST);
+		second.setRequestParameters(Collections.singletonList(new NameValuePair("q", "second")));
+		recording.record(first, response("http://example.com/search", 200, "first", new ArrayList<NameValuePair>()));
+		recording.record(second, response("http://example.com/search", 200, "second", new ArrayList<NameValuePair>()));
+		recording.close();
+
+		WebResponseArchive archive = WebResponseArchive.forReplay(file);
+
+		assertThat(content(archive.replay(first))).isEqualTo("first");
+		assertThat(content(archive.replay(second))).isEqualTo("second");
+		assertThat(archive.replay(request("http://example.com/search"))).isNull();
+	}
+
+	@Test
+	public void replaySerializable() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		recording.record(request("http://example.com/"), response("http://example.com/", 200, "content", new ArrayList<NameValuePair>()));
+		recording.close();
+		WebResponseData data = WebResponseArchive.forReplay(file).replay(request("http://example.com/"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(data);
+		out.close();
+		WebResponseData copy = (WebResponseData) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertThat(content(copy)).isEqualTo("content");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void recordWhenReplaying() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive.forRecording(file).close();
+
+		WebResponseArchive.forReplay(file).record(request("http://example.com/"),
+				response("http://example.com/", 200, "", new ArrayList<NameValuePair>()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void replayWhenRecording() throws Exception {
+		WebResponseArchive archive = WebResponseArchive.forRecording(folder.newFile());
+		try {
+			archive.replay(request("http://example.com/"));
+		}
+		finally {
+			archive.close();
+		}
+	}
+
+	private byte[] recordOne() throws Exception {
+		File file = folder.newFile();
+		WebResponseArchive recording = WebResponseArchive.forRecording(file);
+		recording.record(request("http://example.com/"), response("http://example.com/", 200, "body", new ArrayList<NameValuePair>()));
+		recording.close();
+		return FileCopyUtils.copyToByteArray(file);
+	}
+
+	private static WebRequest request(String url) throws Exception {
+		return new WebRequest(new URL(url));
+	}
+
+	private static WebResponse response(String url, int status, String content, List<NameValuePair> headers) throws Exception {
+		WebResponseData data = new WebResponseData(content.getBytes("UTF-8"), status, status == 200 ? "OK" : "Not Found", headers);
+		return new WebResponse(data, request(url), 0L);
+	}
+
+	private static String content(WebResponseData data) throws Exception {
+		return new String(FileCopyUtils.copyToByteArray(data.getInputStream()), "UTF-8");
+	}
+}
@@ -72,4 +72,16 @@ public class HostRequestMatcherTests {
 		matches = matcher.matches(new WebRequest(new URL("http://localhost:9090/jquery-1.11.0.min.js")));
 		assertThat(matches).isFalse();
 	}
+
+	@Test
+	public void getHosts() {
+		HostRequestMatcher matcher = new HostRequestMatcher("localhost", "example.com:443");
+
+		assertThat(matcher.getHosts()).containsOnly("localhost", "example.com:443");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void getHostsUnmodifiable() {
+		new HostRequestMatcher("localhost").getHosts().add("example.com");
+	}
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.net.URL;
+import java.util.regex.Pattern;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -38,4 +39,11 @@ public class UrlRegexRequestMatcherTests {
 		matches = cdnMatcher.matches(new WebRequest(new URL("http://localhost/jquery-1.11.0.min.js")));
 		assertThat(matches).isFalse();
 	}
+
+	@Test
+	public void getPattern() {
+		Pattern pattern = Pattern.compile(".*?//code.jquery.com/.*");
+
+		assertThat(new UrlRegexRequestMatcher(pattern).getPattern()).isSameAs(pattern);
+	}
 }
\ No newline at end of file
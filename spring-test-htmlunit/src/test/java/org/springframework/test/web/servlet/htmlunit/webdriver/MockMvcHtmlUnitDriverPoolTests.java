@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.springframework.test.web.servlet.htmlunit.webdriver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.htmlunit.HelloController;
+import org.springframework.test.web.servlet.htmlunit.SessionController;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MockMvcHtmlUnitDriverPoolTests {
+	MockMvc mockMvc;
+
+	MockMvcHtmlUnitDriverPool pool;
+
+	@Before
+	public void setup() {
+		mockMvc = MockMvcBuilders.standaloneSetup(new HelloController(), new SessionController()).build();
+		pool = MockMvcHtmlUnitDriverBuilder.mockMvcSetup(mockMvc).createDriverPool(1);
+	}
+
+	@After
+	public void cleanup() {
+		pool.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorNullBuilder() {
+		new MockMvcHtmlUnitDriverPool(null, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void createDriverPoolMaxIdleZero() {
+		MockMvcHtmlUnitDriverBuilder.mockMvcSetup(mockMvc).createDriverPool(0);
+	}
+
+	@Test
+	public void checkoutCreatesConfiguredDriver() {
+		HtmlUnitDriver driver = pool.checkout();
+
+		driver.get("http://localhost/a");
+
+		assertThat(driver.getPageSource()).contains("hello");
+		assertThat(driver.isJavascriptEnabled()).isTrue();
+		assertThat(pool.getCreatedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void releaseReusesDriver() {
+		HtmlUnitDriver driver = pool.checkout();
+		pool.release(driver);
+
+		assertThat(pool.getIdleCount()).isEqualTo(1);
+		assertThat(pool.checkout()).isSameAs(driver);
+		assertThat(pool.getCreatedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void releaseResetsSession() {
+		HtmlUnitDriver driver = pool.checkout();
+		driver.get("http://localhost/session");
+		String sessionId = driver.getPageSource();
+		driver.get("http://localhost/session");
+		assertThat(driver.getPageSource()).isEqualTo(sessionId);
+
+		pool.release(driver);
+		driver = pool.checkout();
+		driver.get("http://localhost/session");
+
+		assertThat(driver.getPageSource()).isNotEqualTo(sessionId);
+	}
+
+	@Test
+	public void releaseResetsCookies() {
+		HtmlUnitDriver driver = pool.checkout();
+		driver.get("http://localhost/a");
+		driver.manage().addCookie(new Cookie("name", "value"));
+
+		pool.release(driver);
+		driver = pool.checkout();
+		driver.get("http://localhost/a");
+
+		assertThat(driver.manage().getCookies()).isEmpty();
+	}
+
+	@Test
+	public void releaseResetsWindows() {
+		HtmlUnitDriver driver = pool.checkout();
+		driver.get("http://localhost/a");
+		String windowHandle = driver.getWindowHandle();
+
+		pool.release(driver);
+		driver = pool.checkout();
+
+		assertThat(driver.getWindowHandles()).hasSize(1);
+		assertThat(driver.getWindowHandle()).isNotEqualTo(windowHandle);
+		driver.get("http://localhost/a");
+		assertThat(driver.getPageSource()).contains("hello");
+	}
+
+	@Test
+	public void releaseMoreThanMaxIdle() {
+		HtmlUnitDriver driver1 = pool.checkout();
+		HtmlUnitDriver driver2 = pool.checkout();
+
+		pool.release(driver1);
+		pool.release(driver2);
+
+		assertThat(pool.getCreatedCount()).isEqualTo(2);
+		assertThat(pool.getIdleCount()).isEqualTo(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseNotFromPool() {
+		pool.release(new WebConnectionHtmlUnitDriver());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void releaseTwice() {
+		HtmlUnitDriver driver = pool.checkout();
+		pool.release(driver);
+		pool.release(driver);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void checkoutAfterClose() {
+		pool.close();
+
+		pool.checkout();
+	}
+}